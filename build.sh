@@ -0,0 +1,19 @@
+#!/bin/sh
+# Compiles the game into build/moosegame.jar, then does a short training run that
+# records every class loaded up to the first frame into build/moosegame.jsa
+# (application class data sharing, needs JDK 13 or newer). run.sh maps that
+# archive in at startup instead of loading and verifying those classes again.
+#
+# The training run opens the game window, so it needs a display (xvfb-run works).
+set -e
+cd "$(dirname "$0")"
+
+rm -rf build
+mkdir -p build/classes
+javac -d build/classes $(find src -name '*.java')
+jar --create --file build/moosegame.jar --main-class game.MooseGame \
+    -C build/classes . -C resources .
+
+java -XX:ArchiveClassesAtExit=build/moosegame.jsa \
+    -Dmoosegame.exitAfterFirstFrame=true \
+    -jar build/moosegame.jar
@@ -0,0 +1,6 @@
+#!/bin/sh
+# Starts the game using the class data sharing archive made by build.sh.
+# If the archive is missing or stale the JVM ignores it and starts normally.
+# Pass -Dmoosegame.startupReport=true to print time to first frame.
+cd "$(dirname "$0")"
+exec java -XX:SharedArchiveFile=build/moosegame.jsa -Xshare:auto "$@" -jar build/moosegame.jar
@@ -5,6 +5,7 @@ import game.MooseGame;
 
 import java.awt.Graphics;
 import java.awt.Rectangle;
+import java.nio.ByteBuffer;
 
 /**
  * Class provides rendering of graphics, get and set methods, point values for gameplay.
@@ -26,6 +27,9 @@ public class Actor {
 
     public boolean isActive = false;
 
+    // Every sprite an actor can show, so snapshots can store a sprite as one byte
+    private static final String[] SNAPSHOT_SPRITES = {"player_bluecar.png", "player_truck.png", "player_atv.png"};
+
     /**
      * Constructs a new Actor
      *
@@ -39,6 +43,15 @@ public class Actor {
         time = 0;
     }
 
+    /**
+     * Gets the sprite currently shown.
+     *
+     * @return sprite name, or null if the actor has no sprite
+     */
+    public String getSprite() {
+        return sprites == null ? null : sprites[frame];
+    }
+
     /**
      * Sets the speed of an Actor.
      *
@@ -195,6 +208,58 @@ public class Actor {
         return new Rectangle(posX, posY, width, height);
     }
 
+    /**
+     * Writes position, motion, size, animation and sprite to a snapshot.
+     *
+     * @param out snapshot buffer
+     */
+    public void writeState(ByteBuffer out) {
+        out.putShort((short) posX);
+        out.putShort((short) posY);
+        out.putShort((short) vx);
+        out.putShort((short) vy);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        out.putShort((short) frame);
+        out.putShort((short) actorSpeed);
+        out.putInt(time);
+        out.put((byte) (isActive ? 1 : 0));
+
+        int sprite = -1;
+        if (sprites != null) {
+            for (int i = 0; i < SNAPSHOT_SPRITES.length; i++) {
+                if (SNAPSHOT_SPRITES[i].equals(sprites[0])) {
+                    sprite = i;
+                    break;
+                }
+            }
+        }
+        out.put((byte) sprite);
+    }
+
+    /**
+     * Reads state written by writeState.
+     *
+     * @param in snapshot buffer
+     */
+    public void readState(ByteBuffer in) {
+        posX = in.getShort();
+        posY = in.getShort();
+        vx = in.getShort();
+        vy = in.getShort();
+        width = in.getShort();
+        height = in.getShort();
+        frame = in.getShort();
+        actorSpeed = in.getShort();
+        time = in.getInt();
+        isActive = in.get() != 0;
+
+        int sprite = in.get();
+        if (sprite >= 0 && (sprites == null || !SNAPSHOT_SPRITES[sprite].equals(sprites[0]))) {
+            sprites = new String[]{SNAPSHOT_SPRITES[sprite]};
+        }
+    }
+
     /**
      * Removes actor from game window.
      */
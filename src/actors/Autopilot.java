@@ -0,0 +1,203 @@
+package actors;
+
+import game.MooseGame;
+
+import java.util.Arrays;
+
+/**
+ * Steers the player by searching a cost field of where obstacles and pickups will be, for
+ * unattended soak and performance runs.
+ * <p>
+ * The road is cut into columns one player move apart, starting from the player's position, and
+ * the field has one row per update for HORIZON updates. Every live entity is moved along its
+ * velocity to mark the cells where its box would overlap the player's: crash cells for obstacles
+ * and a reward in the first such cell for pickups. Working back from the horizon, each cell's
+ * value is its own reward or crash cost plus the best of the three cells reachable from it, so
+ * the first move of the best path is read off the three cells next to the player. Crashes cost
+ * more the sooner they are, so when no path is clear the bot still chooses the latest crash.
+ * A plan costs a few thousand cell updates and does not allocate once the arrays have grown.
+ */
+public class Autopilot {
+
+    private static final int HORIZON = 45;
+    // Range of x the player may be planned at, inside the edges where the player is damaged
+    private static final int ROAD_LEFT = 80;
+    private static final int ROAD_RIGHT = MooseGame.WIDTH - 130;
+    // Extra space kept around obstacle boxes
+    private static final int MARGIN = 4;
+    private static final int CRASH_COST = 1000;
+    private static final int CRASH_COST_PER_STEP = 20;
+    private static final int COIN_REWARD = 30;
+    private static final int POWERUP_REWARD = 40;
+    // Columns from the centre of the road cost this much each at the horizon
+    private static final int CENTRE_COST = 1;
+
+    private final EntityWorld world;
+    private SpawnTable table;
+
+    private int columns = 0;
+    private int[] value = new int[0];
+    private int[] reward = new int[0];
+    private boolean[] crash = new boolean[0];
+    private int ticksToCrash = Integer.MAX_VALUE;
+
+    /**
+     * Constructs an Autopilot.
+     *
+     * @param world entities to avoid and collect
+     * @param table archetypes, for which entities are obstacles and what pickups do
+     */
+    public Autopilot(EntityWorld world, SpawnTable table) {
+        this.world = world;
+        this.table = table;
+    }
+
+    /**
+     * Changes the table.
+     *
+     * @param table archetypes
+     */
+    public void setTable(SpawnTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Plans the player's path and returns its first move.
+     *
+     * @param player player to steer
+     * @param steps  game ticks per update
+     * @return Player.INPUT_LEFT, Player.INPUT_RIGHT or 0
+     */
+    public int plan(Player player, int steps) {
+        int move = player.actorSpeed * steps;
+        int x = player.getX();
+        int start = Math.max(0, (x - ROAD_LEFT) / move);
+        int left = x - start * move;
+        columns = start + Math.max(0, (ROAD_RIGHT - x) / move) + 1;
+        int cells = columns * (HORIZON + 2);
+        if (value.length < cells) {
+            value = new int[cells];
+            reward = new int[cells];
+            crash = new boolean[cells];
+        }
+        Arrays.fill(reward, 0, cells, 0);
+        Arrays.fill(crash, 0, cells, false);
+
+        markEntities(player, left, move, steps);
+
+        // Terminal row: prefer ending near the centre of the road
+        int centre = (MooseGame.WIDTH - player.getWidth()) / 2;
+        int last = (HORIZON + 1) * columns;
+        for (int c = 0; c < columns; c++) {
+            value[last + c] = -CENTRE_COST * Math.abs(left + c * move - centre) / move;
+        }
+        for (int t = HORIZON; t >= 1; t--) {
+            int row = t * columns;
+            for (int c = 0; c < columns; c++) {
+                int cell = row + c;
+                int v = reward[cell] + best(t + 1, c);
+                if (crash[cell]) {
+                    v -= CRASH_COST + (HORIZON - t) * CRASH_COST_PER_STEP;
+                }
+                value[cell] = v;
+            }
+        }
+
+        int next = start;
+        if (start > 0 && value[columns + start - 1] > value[columns + next]) {
+            next = start - 1;
+        }
+        if (start + 1 < columns && value[columns + start + 1] > value[columns + next]) {
+            next = start + 1;
+        }
+
+        // Follow the chosen path to the first crash on it
+        ticksToCrash = Integer.MAX_VALUE;
+        for (int t = 1, c = next; t <= HORIZON; t++) {
+            if (crash[t * columns + c]) {
+                ticksToCrash = t * steps;
+                break;
+            }
+            c = bestColumn(t + 1, c);
+        }
+
+        return next < start ? Player.INPUT_LEFT : next > start ? Player.INPUT_RIGHT : 0;
+    }
+
+    /**
+     * Gets how soon the path chosen by the last plan runs into an obstacle.
+     *
+     * @return game ticks until the crash, or Integer.MAX_VALUE if the path is clear to the horizon
+     */
+    public int getTicksToCrash() {
+        return ticksToCrash;
+    }
+
+    /**
+     * Marks the cells where each live entity would overlap the player.
+     */
+    private void markEntities(Player player, int left, int move, int steps) {
+        int top = player.getY();
+        int bottom = top + player.getHeight();
+        int width = player.getWidth();
+        for (int e = 0; e < world.size(); e++) {
+            if (!world.alive[e]) {
+                continue;
+            }
+            int archetype = world.archetype[e];
+            boolean obstacle = table.kind[archetype] == EntityWorld.OBSTACLE;
+            int effect = table.effect[archetype];
+            int margin = obstacle ? MARGIN : 0;
+            int gain = effect == SpawnTable.EFFECT_COIN ? COIN_REWARD
+                    : effect != SpawnTable.EFFECT_NONE ? POWERUP_REWARD : 0;
+
+            for (int t = 1; t <= HORIZON; t++) {
+                int ticks = t * steps;
+                int y = world.posY[e] + world.vy[e] * ticks;
+                if (y >= bottom + margin) {
+                    break;
+                }
+                if (y + world.height[e] + margin <= top) {
+                    continue;
+                }
+                int x = world.posX[e] + world.vx[e] * ticks;
+                // Columns whose player box overlaps the entity box
+                int from = Math.max(0, Math.floorDiv(x - margin - width - left, move) + 1);
+                int to = Math.min(columns - 1, Math.floorDiv(x + world.width[e] + margin - 1 - left, move));
+                int row = t * columns;
+                for (int c = from; c <= to; c++) {
+                    if (obstacle) {
+                        crash[row + c] = true;
+                    } else {
+                        reward[row + c] += gain;
+                    }
+                }
+                if (!obstacle) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the best value reachable in one move from a column.
+     */
+    private int best(int t, int c) {
+        return value[t * columns + bestColumn(t, c)];
+    }
+
+    /**
+     * Gets the column with the best value reachable in one move from a column, staying put on ties.
+     */
+    private int bestColumn(int t, int c) {
+        int row = t * columns;
+        int best = c;
+        if (c > 0 && value[row + c - 1] > value[row + best]) {
+            best = c - 1;
+        }
+        if (c + 1 < columns && value[row + c + 1] > value[row + best]) {
+            best = c + 1;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,188 @@
+package actors;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ramps difficulty during a game while keeping the number of entities within a budget.
+ * <p>
+ * Obstacle streams spawn faster as game time passes, and moving obstacles get faster as the score
+ * rises. Every spawn must also fit the entity budget: at most a set number of live obstacles and
+ * pickups, and at most MAX_SPAWNS_PER_TICK spawns in one tick. A spawn that does not fit waits
+ * until one does. The budget is fixed for a whole game so that replays reproduce it; the game
+ * window chooses it from measured frame times before each game.
+ * <p>
+ * Rates and speeds are in thousandths, so RATE_ONE is the table's own rate.
+ */
+public class DifficultyDirector {
+
+    public static final int RATE_ONE = 1000;
+    public static final int DEFAULT_ENTITY_BUDGET = 48;
+    public static final int MIN_ENTITY_BUDGET = 24;
+    public static final int MAX_ENTITY_BUDGET = 512;
+
+    private static final int MAX_SPAWNS_PER_TICK = 2;
+    // Obstacle spawn rate gains 0.8% per second of game time, up to three times the table's rate
+    private static final int RATE_PER_SECOND = 8;
+    private static final int MAX_RATE = 3 * RATE_ONE;
+    // Moving obstacles gain 0.3% speed per point, up to 1.6 times the table's speed
+    private static final int SPEED_PER_POINT = 3;
+    private static final int MAX_SPEED = 1600;
+
+    private EntityWorld world;
+    private int[] kind;
+    private int[] layer;
+    private boolean[] obstacleStream;
+
+    private int entityBudget = DEFAULT_ENTITY_BUDGET;
+    private int maxObstacles;
+    private int maxPickups;
+
+    private int gameMillis = 0;
+    private int rate = RATE_ONE;
+    private int speed = RATE_ONE;
+    private int liveObstacles = 0;
+    private int livePickups = 0;
+    private int spawnsThisTick = 0;
+
+    /**
+     * Constructs a DifficultyDirector with the default entity budget.
+     *
+     * @param world entities to count
+     * @param table archetypes and streams
+     */
+    public DifficultyDirector(EntityWorld world, SpawnTable table) {
+        this.world = world;
+        setTable(table);
+        setEntityBudget(DEFAULT_ENTITY_BUDGET);
+    }
+
+    /**
+     * Changes the table. Streams that only spawn obstacles are the ones that ramp up.
+     *
+     * @param table archetypes and streams
+     */
+    public void setTable(SpawnTable table) {
+        kind = table.kind;
+        layer = table.layer;
+        obstacleStream = new boolean[table.getStreamCount()];
+        for (int s = 0; s < obstacleStream.length; s++) {
+            obstacleStream[s] = true;
+            for (int i = 0; i < table.entryCount[s]; i++) {
+                if (kind[table.entryArchetype[table.entryOffset[s] + i]] != EntityWorld.OBSTACLE) {
+                    obstacleStream[s] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the most entities that may be alive at once, three quarters of them obstacles.
+     *
+     * @param budget live entity limit, clamped between MIN_ENTITY_BUDGET and MAX_ENTITY_BUDGET
+     */
+    public void setEntityBudget(int budget) {
+        entityBudget = Math.max(MIN_ENTITY_BUDGET, Math.min(MAX_ENTITY_BUDGET, budget));
+        maxObstacles = entityBudget * 3 / 4;
+        maxPickups = entityBudget - maxObstacles;
+    }
+
+    /**
+     * Gets the live entity limit.
+     *
+     * @return entity budget
+     */
+    public int getEntityBudget() {
+        return entityBudget;
+    }
+
+    /**
+     * Returns to the starting difficulty for a new game. The entity budget is kept.
+     */
+    public void reset() {
+        gameMillis = 0;
+        rate = RATE_ONE;
+        speed = RATE_ONE;
+    }
+
+    /**
+     * Advances the ramp and counts the live entities. Called once per tick before spawning.
+     *
+     * @param elapsed game time since the last tick in milliseconds
+     * @param score   current score
+     */
+    public void update(int elapsed, int score) {
+        gameMillis += elapsed;
+        rate = Math.min(MAX_RATE, RATE_ONE + gameMillis / 1000 * RATE_PER_SECOND);
+        speed = Math.min(MAX_SPEED, RATE_ONE + score * SPEED_PER_POINT);
+        liveObstacles = world.countAlive(EntityWorld.OBSTACLE);
+        livePickups = world.countAlive(EntityWorld.PICKUP);
+        spawnsThisTick = 0;
+    }
+
+    /**
+     * Gets how fast a stream counts down to its next spawn.
+     *
+     * @param stream stream
+     * @return rate in thousandths of the table's rate
+     */
+    public int getSpawnRate(int stream) {
+        return obstacleStream[stream] ? rate : RATE_ONE;
+    }
+
+    /**
+     * Checks whether a spawn fits the entity budget, and counts it if it does.
+     *
+     * @param archetype archetype to spawn
+     * @return whether it may spawn this tick
+     */
+    public boolean admit(int archetype) {
+        if (spawnsThisTick >= MAX_SPAWNS_PER_TICK) {
+            return false;
+        }
+        if (kind[archetype] == EntityWorld.OBSTACLE) {
+            if (liveObstacles >= maxObstacles) {
+                return false;
+            }
+            liveObstacles++;
+        } else {
+            if (livePickups >= maxPickups) {
+                return false;
+            }
+            livePickups++;
+        }
+        spawnsThisTick++;
+        return true;
+    }
+
+    /**
+     * Scales a spawn speed by the current ramp. Only the moving layer speeds up, since ground
+     * obstacles must keep pace with the road.
+     *
+     * @param archetype archetype being spawned
+     * @param velocity  speed from the table
+     * @return speed to spawn with
+     */
+    public int scaleSpeed(int archetype, int velocity) {
+        return layer[archetype] == SpawnTable.LAYER_MOVING ? velocity * speed / RATE_ONE : velocity;
+    }
+
+    /**
+     * Writes the game time and budget to a snapshot.
+     *
+     * @param out snapshot buffer
+     */
+    public void writeState(ByteBuffer out) {
+        out.putInt(gameMillis);
+        out.putShort((short) entityBudget);
+    }
+
+    /**
+     * Reads state written by writeState.
+     *
+     * @param in snapshot buffer
+     */
+    public void readState(ByteBuffer in) {
+        gameMillis = in.getInt();
+        setEntityBudget(in.getShort());
+    }
+}
@@ -0,0 +1,546 @@
+package actors;
+
+import game.MooseGame;
+import game.ResourceLoader;
+import game.SpriteMask;
+
+import java.awt.Graphics;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores every obstacle and pickup as rows of parallel component arrays and runs the systems that
+ * move, collide, expire and paint them.
+ * <p>
+ * An entity is an index. Its archetype (moose, vehicle, coin, ...) selects per-type components from
+ * the SpawnTable: whether it is an obstacle or a pickup, what collecting it does and which paint
+ * layer it is drawn in. Systems loop over the arrays in spawn order with no per-type classes or
+ * virtual calls, so a new entity type is a new archetype in spawns.txt rather than a new class.
+ * Removal keeps spawn order, which collisions and replays depend on.
+ * <p>
+ * Collisions are pixel-accurate by default, comparing the alpha masks of the sprites once their
+ * bounds overlap. The archetype boxes are used when pixel collision is turned off.
+ */
+public class EntityWorld {
+
+    // Collision kinds
+    public static final int OBSTACLE = 0;
+    public static final int PICKUP = 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int SWEEP_SAMPLE_PIXELS = 2;
+
+    private MooseGame canvas;
+    private SpawnTable table;
+    // Per-archetype components from the table
+    private int[] kind;
+    private int[] layer;
+    private int count = 0;
+    private double impactTime = 0;
+    private boolean pixelCollision = true;
+    // Collision masks by sprite id, looked up when first needed
+    private SpriteMask[] masks;
+
+    // Per-entity components, indexed by entity
+    int[] archetype = new int[INITIAL_CAPACITY];
+    int[] sprite = new int[INITIAL_CAPACITY];
+    int[] posX = new int[INITIAL_CAPACITY];
+    int[] posY = new int[INITIAL_CAPACITY];
+    int[] vx = new int[INITIAL_CAPACITY];
+    int[] vy = new int[INITIAL_CAPACITY];
+    int[] width = new int[INITIAL_CAPACITY];
+    int[] height = new int[INITIAL_CAPACITY];
+    boolean[] alive = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * Constructs an empty EntityWorld.
+     *
+     * @param canvas game window, or null without a window
+     * @param table  archetypes
+     */
+    public EntityWorld(MooseGame canvas, SpawnTable table) {
+        this.canvas = canvas;
+        setTable(table);
+    }
+
+    /**
+     * Changes the archetype table. Existing entities must use the same archetype numbers.
+     *
+     * @param table archetypes
+     */
+    public void setTable(SpawnTable table) {
+        this.table = table;
+        kind = table.kind;
+        layer = table.layer;
+        refreshMasks();
+    }
+
+    /**
+     * Chooses between pixel-accurate collisions and the archetypes' boxes.
+     *
+     * @param pixelCollision whether to compare sprite masks
+     */
+    public void setPixelCollision(boolean pixelCollision) {
+        this.pixelCollision = pixelCollision;
+    }
+
+    /**
+     * Forgets the collision masks, so sprites reloaded since are used from now on.
+     */
+    public void refreshMasks() {
+        if (masks != null && masks.length == table.sprites.length) {
+            Arrays.fill(masks, null);
+        } else {
+            masks = new SpriteMask[table.sprites.length];
+        }
+    }
+
+    /**
+     * Gets the collision mask of an actor's current sprite.
+     *
+     * @param actor actor to check entities against
+     * @return mask, or null to use boxes when pixel collision is off or the actor has no sprite
+     */
+    public SpriteMask getMask(Actor actor) {
+        String sprite = actor.getSprite();
+        return pixelCollision && sprite != null ? ResourceLoader.getInstance().getMask(sprite) : null;
+    }
+
+    /**
+     * Gets the collision mask of a sprite.
+     *
+     * @param sprite sprite id in the SpawnTable
+     * @return mask, or null if the sprite could not be loaded
+     */
+    private SpriteMask getMask(int sprite) {
+        if (masks[sprite] == null) {
+            masks[sprite] = ResourceLoader.getInstance().getMask(table.sprites[sprite]);
+        }
+        return masks[sprite];
+    }
+
+    /**
+     * Gets the number of entities, including any despawned this tick.
+     *
+     * @return entity count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Counts the live entities of one kind.
+     *
+     * @param kind OBSTACLE or PICKUP
+     * @return live entity count
+     */
+    public int countAlive(int kind) {
+        int alive = 0;
+        for (int e = 0; e < count; e++) {
+            if (this.alive[e] && this.kind[archetype[e]] == kind) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Checks whether the next spawn fits in the component arrays without growing them.
+     *
+     * @return whether a free row is left
+     */
+    public boolean hasFreeRow() {
+        return count < archetype.length;
+    }
+
+    /**
+     * Adds an entity.
+     *
+     * @param type   archetype
+     * @param sprite sprite id in the SpawnTable
+     * @param x      left edge
+     * @param y      top edge
+     * @param w      width
+     * @param h      height
+     * @param dx     horizontal speed per tick
+     * @param dy     vertical speed per tick
+     * @return new entity
+     */
+    public int spawn(int type, int sprite, int x, int y, int w, int h, int dx, int dy) {
+        if (count == archetype.length) {
+            grow(count * 2);
+        }
+        int e = count++;
+        archetype[e] = type;
+        this.sprite[e] = sprite;
+        posX[e] = x;
+        posY[e] = y;
+        width[e] = w;
+        height[e] = h;
+        vx[e] = dx;
+        vy[e] = dy;
+        alive[e] = true;
+        return e;
+    }
+
+    /**
+     * Removes every entity of one kind.
+     *
+     * @param kind OBSTACLE or PICKUP
+     */
+    public void clear(int kind) {
+        for (int e = 0; e < count; e++) {
+            if (this.kind[archetype[e]] == kind) {
+                alive[e] = false;
+            }
+        }
+        removeExpired();
+    }
+
+    /**
+     * Movement system: moves every live entity by its velocity.
+     */
+    public void move() {
+        move(1);
+    }
+
+    /**
+     * Movement system: moves every live entity by its velocity for several ticks at once.
+     *
+     * @param steps ticks to move for
+     */
+    public void move(int steps) {
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                posX[e] += vx[e] * steps;
+                posY[e] += vy[e] * steps;
+            }
+        }
+    }
+
+    /**
+     * Lifetime system: removes despawned entities and those that have left the bottom of the screen,
+     * keeping the rest in spawn order.
+     */
+    public void removeExpired() {
+        removeExpired(0);
+    }
+
+    /**
+     * Lifetime system: removes despawned entities and those that were already below the screen a
+     * number of ticks ago, so continuous collision still sees the path they took to get there.
+     *
+     * @param steps ticks the next collision check sweeps over
+     */
+    public void removeExpired(int steps) {
+        int kept = 0;
+        for (int e = 0; e < count; e++) {
+            if (alive[e] && posY[e] - vy[e] * steps <= MooseGame.HEIGHT) {
+                if (kept != e) {
+                    copy(e, kept);
+                }
+                kept++;
+            }
+        }
+        count = kept;
+    }
+
+    /**
+     * Collision system: finds the first live entity of a kind overlapping a box, at or after an index.
+     * With a mask, the entity's sprite must cover a solid pixel of the mask instead: sprite bounds
+     * are the broad phase and the masks of the two sprites are the narrow phase.
+     *
+     * @param kind  OBSTACLE or PICKUP
+     * @param from  first entity to check
+     * @param x     left edge of the box
+     * @param y     top edge of the box
+     * @param w     width of the box
+     * @param h     height of the box
+     * @param mask  sprite at the top left of the box, or null to use the box
+     * @return overlapping entity, or -1 if there is none
+     */
+    public int findOverlap(int kind, int from, int x, int y, int w, int h, SpriteMask mask) {
+        for (int e = from; e < count; e++) {
+            if (alive[e] && this.kind[archetype[e]] == kind) {
+                SpriteMask entityMask = mask != null ? getMask(sprite[e]) : null;
+                if (entityMask == null) {
+                    if (posX[e] < x + w && x < posX[e] + width[e] && posY[e] < y + h && y < posY[e] + height[e]) {
+                        return e;
+                    }
+                } else if (entityMask.overlaps(posX[e], posY[e], mask, x, y)) {
+                    return e;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Continuous collision system: finds the first live entity of a kind, at or after an index,
+     * that touched a moving box at any time during the last few ticks. Both the box and the
+     * entities are swept along a straight line from where they were to where they are now, so a
+     * fast entity cannot pass through the box between two ticks. The time of impact of the
+     * result is available from getImpactTime.
+     * <p>
+     * With a mask, the swept sprite bounds are the broad phase, and the masks are then compared at
+     * points along the part of the sweep where the bounds overlap, SWEEP_SAMPLE_PIXELS apart.
+     *
+     * @param kind  OBSTACLE or PICKUP
+     * @param from  first entity to check
+     * @param x     left edge of the box now
+     * @param y     top edge of the box now
+     * @param w     width of the box
+     * @param h     height of the box
+     * @param mask  sprite at the top left of the box, or null to use the box
+     * @param dx    horizontal distance the box moved over those ticks
+     * @param steps ticks the entities moved over
+     * @return hit entity, or -1 if there is none
+     */
+    public int findSweptHit(int kind, int from, int x, int y, int w, int h, SpriteMask mask, int dx, int steps) {
+        for (int e = from; e < count; e++) {
+            if (alive[e] && this.kind[archetype[e]] == kind) {
+                SpriteMask entityMask = mask != null ? getMask(sprite[e]) : null;
+                int boxW = entityMask != null ? mask.getWidth() : w;
+                int boxH = entityMask != null ? mask.getHeight() : h;
+                int entityW = entityMask != null ? entityMask.getWidth() : width[e];
+                int entityH = entityMask != null ? entityMask.getHeight() : height[e];
+
+                // Entity motion relative to the box, from where both started
+                int startX = posX[e] - vx[e] * steps;
+                int startY = posY[e] - vy[e] * steps;
+                int rx = vx[e] * steps - dx;
+                int ry = vy[e] * steps;
+                double enter = Math.max(entryTime(startX, entityW, x - dx, boxW, rx),
+                        entryTime(startY, entityH, y, boxH, ry));
+                double exit = Math.min(exitTime(startX, entityW, x - dx, boxW, rx),
+                        exitTime(startY, entityH, y, boxH, ry));
+                if (enter >= exit || enter >= 1 || exit <= 0) {
+                    continue;
+                }
+
+                double first = Math.max(0, enter);
+                if (entityMask == null) {
+                    impactTime = first;
+                    return e;
+                }
+                double last = Math.min(1, exit);
+                int distance = Math.max(Math.abs(rx), Math.abs(ry));
+                int samples = Math.max(1, (int) Math.ceil(distance * (last - first) / SWEEP_SAMPLE_PIXELS));
+                for (int i = 0; i <= samples; i++) {
+                    double t = first + (last - first) * i / samples;
+                    if (entityMask.overlaps(startX + (int) Math.round(vx[e] * steps * t),
+                            startY + (int) Math.round(ry * t), mask, x - dx + (int) Math.round(dx * t), y)) {
+                        impactTime = t;
+                        return e;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets when the last hit found by findSweptHit happened.
+     *
+     * @return fraction of the swept ticks, from 0 at their start to 1 now
+     */
+    public double getImpactTime() {
+        return impactTime;
+    }
+
+    /**
+     * Finds when a moving span starts to overlap a fixed one along one axis.
+     *
+     * @return time as a fraction of the motion, infinite if it never does
+     */
+    private static double entryTime(int start, int size, int other, int otherSize, int motion) {
+        if (motion == 0) {
+            return start < other + otherSize && other < start + size ? Double.NEGATIVE_INFINITY
+                    : Double.POSITIVE_INFINITY;
+        }
+        return Math.min((double) (other - size - start) / motion, (double) (other + otherSize - start) / motion);
+    }
+
+    /**
+     * Finds when a moving span stops overlapping a fixed one along one axis.
+     *
+     * @return time as a fraction of the motion, infinite if it never does
+     */
+    private static double exitTime(int start, int size, int other, int otherSize, int motion) {
+        if (motion == 0) {
+            return start < other + otherSize && other < start + size ? Double.POSITIVE_INFINITY
+                    : Double.NEGATIVE_INFINITY;
+        }
+        return Math.max((double) (other - size - start) / motion, (double) (other + otherSize - start) / motion);
+    }
+
+    /**
+     * Marks an entity for removal at the next lifetime pass.
+     *
+     * @param e entity
+     */
+    public void despawn(int e) {
+        alive[e] = false;
+    }
+
+    /**
+     * Gets an entity's archetype.
+     *
+     * @param e entity
+     * @return archetype
+     */
+    public int getArchetype(int e) {
+        return archetype[e];
+    }
+
+    /**
+     * Render system: draws live entities one paint layer at a time, ground layer first.
+     *
+     * @param g Graphics object to paint on
+     */
+    public void paint(Graphics g) {
+        ResourceLoader resources = ResourceLoader.getInstance();
+        for (int l = 0; l < SpawnTable.LAYER_COUNT; l++) {
+            for (int e = 0; e < count; e++) {
+                if (alive[e] && layer[archetype[e]] == l) {
+                    g.drawImage(resources.getSprite(table.sprites[sprite[e]]), posX[e], posY[e], canvas);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every entity to a snapshot.
+     *
+     * @param out snapshot buffer
+     */
+    public void writeState(ByteBuffer out) {
+        out.putShort((short) count);
+        for (int e = 0; e < count; e++) {
+            out.put((byte) archetype[e]);
+            out.put((byte) (alive[e] ? sprite[e] : -1 - sprite[e]));
+            out.putShort((short) posX[e]);
+            out.putShort((short) posY[e]);
+            out.putShort((short) vx[e]);
+            out.putShort((short) vy[e]);
+            out.putShort((short) width[e]);
+            out.putShort((short) height[e]);
+        }
+    }
+
+    /**
+     * Writes what a spectator needs to draw the live entities: archetypes, sprites, positions and
+     * velocities, each as its own run so that unchanged values line up between ticks. Velocities
+     * are clamped to a byte.
+     *
+     * @param out view buffer
+     */
+    public void writeView(ByteBuffer out) {
+        out.putShort((short) countAlive());
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                out.put((byte) archetype[e]);
+            }
+        }
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                out.put((byte) sprite[e]);
+            }
+        }
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                out.putShort((short) posX[e]);
+            }
+        }
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                out.putShort((short) posY[e]);
+            }
+        }
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                out.put((byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, vx[e])));
+            }
+        }
+        for (int e = 0; e < count; e++) {
+            if (alive[e]) {
+                out.put((byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, vy[e])));
+            }
+        }
+    }
+
+    /**
+     * Counts the live entities of both kinds.
+     */
+    private int countAlive() {
+        int alive = 0;
+        for (int e = 0; e < count; e++) {
+            if (this.alive[e]) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Replaces every entity with those in a snapshot written by writeState.
+     *
+     * @param in snapshot buffer
+     */
+    public void readState(ByteBuffer in) {
+        count = 0;
+        int entities = in.getShort();
+        for (int i = 0; i < entities; i++) {
+            int type = in.get();
+            int spriteAndAlive = in.get();
+            int x = in.getShort();
+            int y = in.getShort();
+            int dx = in.getShort();
+            int dy = in.getShort();
+            int w = in.getShort();
+            int h = in.getShort();
+            int e = spawn(type, spriteAndAlive < 0 ? -1 - spriteAndAlive : spriteAndAlive, x, y, w, h, dx, dy);
+            alive[e] = spriteAndAlive >= 0;
+        }
+    }
+
+    /**
+     * Gets the name of an entity's archetype.
+     *
+     * @param e entity
+     * @return archetype name from the SpawnTable
+     */
+    public String getArchetypeName(int e) {
+        return table.archetypeNames[archetype[e]];
+    }
+
+    /**
+     * Copies every component of one entity over another.
+     */
+    private void copy(int from, int to) {
+        archetype[to] = archetype[from];
+        sprite[to] = sprite[from];
+        posX[to] = posX[from];
+        posY[to] = posY[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        width[to] = width[from];
+        height[to] = height[from];
+        alive[to] = alive[from];
+    }
+
+    /**
+     * Enlarges every component array.
+     */
+    private void grow(int capacity) {
+        archetype = Arrays.copyOf(archetype, capacity);
+        sprite = Arrays.copyOf(sprite, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+    }
+}
@@ -0,0 +1,155 @@
+package actors;
+
+import game.MooseGame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes what an agent sees of the obstacles and pickups, either as a feature row per entity or
+ * as an occupancy raster of the field.
+ * <p>
+ * Features are floats: one-hot obstacle, coin and powerup, then x, y, width and height as fractions
+ * of the field and the velocity in pixels per tick. Only the entities nearest the player fit in the
+ * slots given, nearest first, and unused slots are zero. The raster divides the field into
+ * size by size cells and writes one byte plane each for obstacles, pickups and the player, 1 where
+ * a box covers part of a cell and 0 elsewhere. Both write at absolute offsets, so several encoders
+ * can fill one buffer from different threads, and neither allocates once its arrays have grown.
+ */
+public class ObservationEncoder {
+
+    public static final int ENTITY_FEATURES = 9;
+    public static final int RASTER_PLANES = 3;
+
+    private final EntityWorld world;
+    private SpawnTable table;
+
+    // Nearest entities found so far and their squared distances, kept sorted
+    private int[] nearest = new int[0];
+    private long[] distance = new long[0];
+
+    /**
+     * Constructs an ObservationEncoder.
+     *
+     * @param world entities to describe
+     * @param table archetypes, for which entities are obstacles, coins and powerups
+     */
+    public ObservationEncoder(EntityWorld world, SpawnTable table) {
+        this.world = world;
+        this.table = table;
+    }
+
+    /**
+     * Changes the table.
+     *
+     * @param table archetypes
+     */
+    public void setTable(SpawnTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Writes the features of the entities nearest the player.
+     *
+     * @param out    buffer to write to
+     * @param offset byte offset of the first slot
+     * @param slots  entity rows to write
+     * @param player player whose centre distances are measured from
+     */
+    public void writeFeatures(ByteBuffer out, int offset, int slots, Player player) {
+        if (nearest.length < slots) {
+            nearest = new int[slots];
+            distance = new long[slots];
+        }
+        int found = findNearest(slots, player.getX() + player.getWidth() / 2, player.getY() + player.getHeight() / 2);
+
+        for (int i = 0; i < slots; i++) {
+            int at = offset + i * ENTITY_FEATURES * Float.BYTES;
+            if (i >= found) {
+                for (int f = 0; f < ENTITY_FEATURES; f++) {
+                    out.putFloat(at + f * Float.BYTES, 0);
+                }
+                continue;
+            }
+            int e = nearest[i];
+            int archetype = world.archetype[e];
+            boolean obstacle = table.kind[archetype] == EntityWorld.OBSTACLE;
+            boolean coin = !obstacle && table.effect[archetype] == SpawnTable.EFFECT_COIN;
+            out.putFloat(at, obstacle ? 1 : 0);
+            out.putFloat(at + Float.BYTES, coin ? 1 : 0);
+            out.putFloat(at + 2 * Float.BYTES, obstacle || coin ? 0 : 1);
+            out.putFloat(at + 3 * Float.BYTES, world.posX[e] / (float) MooseGame.WIDTH);
+            out.putFloat(at + 4 * Float.BYTES, world.posY[e] / (float) MooseGame.HEIGHT);
+            out.putFloat(at + 5 * Float.BYTES, world.width[e] / (float) MooseGame.WIDTH);
+            out.putFloat(at + 6 * Float.BYTES, world.height[e] / (float) MooseGame.HEIGHT);
+            out.putFloat(at + 7 * Float.BYTES, world.vx[e]);
+            out.putFloat(at + 8 * Float.BYTES, world.vy[e]);
+        }
+    }
+
+    /**
+     * Finds the live entities whose centres are nearest a point, by insertion into the sorted
+     * nearest array.
+     *
+     * @return number found, at most slots
+     */
+    private int findNearest(int slots, int x, int y) {
+        int found = 0;
+        for (int e = 0; e < world.size(); e++) {
+            if (!world.alive[e]) {
+                continue;
+            }
+            long dx = world.posX[e] + world.width[e] / 2 - x;
+            long dy = world.posY[e] + world.height[e] / 2 - y;
+            long d = dx * dx + dy * dy;
+            if (found == slots && d >= distance[slots - 1]) {
+                continue;
+            }
+            int i = found < slots ? found++ : slots - 1;
+            while (i > 0 && distance[i - 1] > d) {
+                nearest[i] = nearest[i - 1];
+                distance[i] = distance[i - 1];
+                i--;
+            }
+            nearest[i] = e;
+            distance[i] = d;
+        }
+        return found;
+    }
+
+    /**
+     * Writes the obstacle, pickup and player planes of the occupancy raster.
+     *
+     * @param out    buffer to write to
+     * @param offset byte offset of the first plane
+     * @param size   cells along each side
+     * @param player player for the last plane
+     */
+    public void writeRaster(ByteBuffer out, int offset, int size, Player player) {
+        int plane = size * size;
+        for (int i = 0; i < RASTER_PLANES * plane; i++) {
+            out.put(offset + i, (byte) 0);
+        }
+        for (int e = 0; e < world.size(); e++) {
+            if (world.alive[e]) {
+                int p = table.kind[world.archetype[e]] == EntityWorld.OBSTACLE ? 0 : 1;
+                mark(out, offset + p * plane, size, world.posX[e], world.posY[e], world.width[e], world.height[e]);
+            }
+        }
+        mark(out, offset + 2 * plane, size, player.getX(), player.getY(), player.getWidth(), player.getHeight());
+    }
+
+    /**
+     * Sets the cells of one plane that a box covers, clipped to the field.
+     */
+    private static void mark(ByteBuffer out, int offset, int size, int x, int y, int w, int h) {
+        int left = Math.max(0, Math.floorDiv(x * size, MooseGame.WIDTH));
+        int right = Math.min(size - 1, Math.floorDiv((x + w - 1) * size, MooseGame.WIDTH));
+        int top = Math.max(0, Math.floorDiv(y * size, MooseGame.HEIGHT));
+        int bottom = Math.min(size - 1, Math.floorDiv((y + h - 1) * size, MooseGame.HEIGHT));
+        for (int row = top; row <= bottom; row++) {
+            for (int col = left; col <= right; col++) {
+                out.put(offset + row * size + col, (byte) 1);
+            }
+        }
+    }
+}
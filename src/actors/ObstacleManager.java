@@ -1,205 +1,94 @@
 package actors;
 
-import game.MooseGame;
-import game.MooseGame;
-
-import java.awt.*;
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import game.EventBus;
+import game.FlightEvents;
+import game.SpriteMask;
 
 /**
- * Spawns, renders graphics for, and removes obstacles during gameplay.
+ * Checks the player against the obstacles in the EntityWorld during gameplay.
  */
 public class ObstacleManager {
 
-    private static ArrayList<Obstacle> activeObstacles = new ArrayList<>();
-    private static ArrayList<Obstacle> activeObstaclesMoving = new ArrayList<>();
-    private static ArrayList<Obstacle> activeObstaclesStatic = new ArrayList<>();
-
-
-    private MooseGame canvas;
-
-    private static final int SPAWN_WAIT_TIME = 2 * 1000;
-
-    private static final int MOOSE_MIN_SPAWN_TIME = 5 * 1000;
-    private static final int MOOSE_MAX_SPAWN_TIME = 6 * 1000;
-    private Timer mooseTimer = new Timer();
-
-    private static final int STATIC_MIN_SPAWN_TIME = 2 * 1000;
-    private static final int STATIC_MAX_SPAWN_TIME = 3 * 1000;
-    private Timer staticTimer = new Timer();
-
-    private static final int VEHICLE_MIN_SPAWN_TIME = 1 * 1000;
-    private static final int VEHICLE_MAX_SPAWN_TIME = 2 * 1000;
-    private Timer vehicleTimer = new Timer();
+    private EventBus events;
+    private EntityWorld world;
+    private double impactTime = 1;
 
     /**
      * Constructs a new obstacle manager.
      *
-     * @param canvas game window
+     * @param events bus to publish hits on
+     * @param world  entities the obstacles are in
      */
-    public ObstacleManager(MooseGame canvas) {
-        this.canvas = canvas;
-
-        new Timer().schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        spawnMoose();
-                        spawnStatic();
-                        spawnVehicle();
-                    }
-                }, SPAWN_WAIT_TIME);
+    public ObstacleManager(EventBus events, EntityWorld world) {
+        this.events = events;
+        this.world = world;
     }
 
     /**
-     * Clears active obstacles and stops obstacle spawning timers.
+     * Clears active obstacles.
      */
     public void stop() {
-        activeObstacles = new ArrayList<>();
-        activeObstaclesMoving = new ArrayList<>();
-        activeObstaclesStatic = new ArrayList<>();
-
-
-        mooseTimer.cancel();
-        mooseTimer.purge();
-
-        staticTimer.cancel();
-        staticTimer.purge();
-
-        vehicleTimer.cancel();
-        vehicleTimer.purge();
+        world.clear(EntityWorld.OBSTACLE);
     }
 
     /**
-     * Spawns a moose obstacle and adds it to the active obstacle arrays.
-     */
-    public void spawnMoose() {
-
-        Obstacle obstacle = new MooseObstacle(canvas);
-        obstacle.spawn();
-        activeObstacles.add(obstacle);
-        activeObstaclesMoving.add(obstacle);
-
-        Random random = new Random();
-
-        mooseTimer.cancel();
-        mooseTimer.purge();
-
-        mooseTimer = new Timer();
-        mooseTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        spawnMoose();
-                    }
-                }, (random.nextInt(MOOSE_MAX_SPAWN_TIME - MOOSE_MIN_SPAWN_TIME) + MOOSE_MIN_SPAWN_TIME));
-    }
-
-    /**
-     * Spawns a static obstacle and adds it to the active obstacle arrays.
-     */
-    public void spawnStatic() {
-        Obstacle obstacle = new StaticObstacle(canvas);
-        obstacle.spawn();
-        activeObstacles.add(obstacle);
-        activeObstaclesStatic.add(obstacle);
-
-
-        Random random = new Random();
-
-        staticTimer.cancel();
-        staticTimer.purge();
-        staticTimer = new Timer();
-        staticTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        spawnStatic();
-                    }
-                }, (random.nextInt(STATIC_MAX_SPAWN_TIME - STATIC_MIN_SPAWN_TIME) + STATIC_MIN_SPAWN_TIME));
-    }
-
-    /**
-     * Spawns a vehicle obstacle and adds it to the active obstacle arrays.
+     * Checks if the player has collided with an obstacle, and removes the first one hit.
+     *
+     * @param player Actor player object
+     * @return Collision boolean true if player collided
      */
-    public void spawnVehicle() {
-
-        Obstacle obstacle = new VehicleObstacle(canvas);
-        obstacle.spawn();
-        activeObstacles.add(obstacle);
-        activeObstaclesMoving.add(obstacle);
-
-
-        Random random = new Random();
-
-        vehicleTimer.cancel();
-        vehicleTimer.purge();
-        vehicleTimer = new Timer();
-        vehicleTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        spawnVehicle();
-                    }
-                }, (random.nextInt(VEHICLE_MAX_SPAWN_TIME - VEHICLE_MIN_SPAWN_TIME) + VEHICLE_MIN_SPAWN_TIME));
+    public boolean checkCollision(Actor player) {
+        return checkCollision(player, 0, 0);
     }
 
     /**
-     * Updates obstacles and removes them from active obstacle array after they have left the screen
+     * Checks if the player has collided with an obstacle at any time during the last few ticks,
+     * and removes the one hit first.
+     *
+     * @param player Actor player object
+     * @param dx     horizontal distance the player moved over those ticks
+     * @param steps  ticks to sweep over, or 0 to check only where everything is now
+     * @return Collision boolean true if player collided
      */
-    public void update() {
-
-        for (int i = 0; i < activeObstacles.size(); i++) {
-
-            Obstacle o = activeObstacles.get(i);
-            o.update();
-
-            if (o.posY > MooseGame.HEIGHT || o.isActive == false) {
-                o.despawn();
-                activeObstacles.remove(o);
+    public boolean checkCollision(Actor player, int dx, int steps) {
+        int x = player.getX();
+        int y = player.getY();
+        int w = player.getWidth();
+        int h = player.getHeight();
+
+        int hit;
+        SpriteMask mask = world.getMask(player);
+        if (steps == 0) {
+            hit = world.findOverlap(EntityWorld.OBSTACLE, 0, x, y, w, h, mask);
+            impactTime = 1;
+        } else {
+            hit = -1;
+            impactTime = 1;
+            for (int o = world.findSweptHit(EntityWorld.OBSTACLE, 0, x, y, w, h, mask, dx, steps); o >= 0;
+                 o = world.findSweptHit(EntityWorld.OBSTACLE, o + 1, x, y, w, h, mask, dx, steps)) {
+                if (hit < 0 || world.getImpactTime() < impactTime) {
+                    hit = o;
+                    impactTime = world.getImpactTime();
+                }
             }
         }
-    }
-
-    /**
-     * Renders graphics for obstacles, drawing static obstacles below moving obstacles
-     *
-     * @param g obstacle to be painted
-     */
-    public void paint(Graphics g) {
-
-        for (int i = 0; i < activeObstaclesStatic.size(); i++) {
-            activeObstaclesStatic.get(i).paint(g);
+        if (hit < 0) {
+            return false;
         }
 
-        for (int i = 0; i < activeObstaclesMoving.size(); i++) {
-            activeObstaclesMoving.get(i).paint(g);
-        }
+        world.despawn(hit);
+        FlightEvents.collision("obstacle", world.getArchetypeName(hit), steps != 0, impactTime);
+        events.publish(EventBus.Type.PLAYER_HIT, world.getArchetype(hit),
+                (int) Math.round(impactTime * EventBus.IMPACT_SCALE), null);
+        return true;
     }
 
     /**
-     * Checks if the player has collided with an obstacle
+     * Gets when the last obstacle hit by checkCollision was hit.
      *
-     * @param player Actor player object
-     * @return Collision boolean true if player collided
+     * @return fraction of the swept ticks, from 0 at their start to 1 now
      */
-    public boolean checkCollision(Actor player) {
-
-        for (int i = 0; i < activeObstacles.size(); i++) {
-            Obstacle o = activeObstacles.get(i);
-
-            if (o.getBounds().intersects(player.getBounds())) {
-                o.despawn();
-                canvas.playSound("explosion.wav");
-                return true;
-            }
-        }
-
-        return false;
+    public double getImpactTime() {
+        return impactTime;
     }
-
-
 }
@@ -1,234 +1,128 @@
 package actors;
 
-import game.MooseGame;
-import game.PlayerInventory;
+import game.EventBus;
+import game.FlightEvents;
+import game.SpriteMask;
 
-import java.awt.*;
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.ByteBuffer;
 
 /**
- * Spawns, renders graphics for, and removes pickup items during gameplay.
+ * Collects the pickup items in the EntityWorld that the player touches, counts coins and publishes
+ * what was collected for the inventory and sound to react to.
  */
 public class PickupManager {
 
-    private static ArrayList<Pickup> activePickups = new ArrayList<>();
-
-    private MooseGame canvas;
-
-    private static final int SPAWN_WAIT_TIME = 2 * 1000;
-
-    private static final int COIN_MIN_SPAWN_TIME = 500;
-    private static final int COIN_MAX_SPAWN_TIME = 1000;
-    private Timer coinTimer = new Timer();
-
-    private static final int FOG_LIGHTS_MIN_SPAWN_TIME = 8 * 1000;
-    private static final int FOG_LIGHTS_MAX_SPAWN_TIME = 18 * 1000;
-    private Timer fogLightsTimer = new Timer();
-
-    private static final int SLOW_MOTION_MIN_SPAWN_TIME = 10 * 1000;
-    private static final int SLOW_MOTION_MAX_SPAWN_TIME = 20 * 1000;
-    private Timer slowMotionTimer = new Timer();
-
-    private static final int INVINCIBILITY_MIN_SPAWN_TIME = 12 * 1000;
-    private static final int INVINCIBILITY_MAX_SPAWN_TIME = 22 * 1000;
-    private Timer invincibilityTimer = new Timer();
+    private EventBus events;
+    private EntityWorld world;
+    private int[] effect;
 
     private int coinsPickedUp = 0;
 
     /**
      * Constructs a new PickupManager.
      *
-     * @param canvas game window
+     * @param events bus to publish pickups on
+     * @param world  entities the pickups are in
+     * @param table  archetypes, for each pickup's effect
      */
-    public PickupManager(MooseGame canvas) {
-        this.canvas = canvas;
-
-        new Timer().schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        spawnFogLightsPickup();
-                        spawnSlowMotionPickup();
-                        spawnInvincibilityPickup();
-                        spawnCoinPickup();
-                    }
-                }, SPAWN_WAIT_TIME);
+    public PickupManager(EventBus events, EntityWorld world, SpawnTable table) {
+        this.events = events;
+        this.world = world;
+        setTable(table);
     }
 
     /**
-     * Gets number of coins picked up.
+     * Changes the table giving each pickup's effect.
      *
-     * @return coinsPickedUp int number of coins picked up in current game session
+     * @param table archetypes
      */
-    public int getCoinsPickedUp() {
-        return coinsPickedUp;
+    public void setTable(SpawnTable table) {
+        effect = table.effect;
     }
 
     /**
-     * Clears active pickups and stops pickup-spawning timers.
+     * Gets number of coins picked up.
+     *
+     * @return coinsPickedUp int number of coins picked up in current game session
      */
-    public void stop() {
-        activePickups = new ArrayList<Pickup>();
-
-        fogLightsTimer.cancel();
-        fogLightsTimer.purge();
-
-        slowMotionTimer.cancel();
-        slowMotionTimer.purge();
-
-        invincibilityTimer.cancel();
-        invincibilityTimer.purge();
-
-        coinTimer.cancel();
-        coinTimer.purge();
+    public int getCoinsPickedUp() {
+        return coinsPickedUp;
     }
 
     /**
-     * Spawns a Fog Lights pickup item based on a timer.
+     * Clears active pickups and coins for a new game.
      */
-    public void spawnFogLightsPickup() {
-        Random random = new Random();
-
-        fogLightsTimer.cancel();
-        fogLightsTimer.purge();
-        fogLightsTimer = new Timer();
-        fogLightsTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        Pickup pickup = new FogLightsPickup(canvas);
-                        pickup.spawn();
-                        activePickups.add(pickup);
-                        spawnFogLightsPickup();
-                    }
-                }, (random.nextInt(FOG_LIGHTS_MAX_SPAWN_TIME - FOG_LIGHTS_MIN_SPAWN_TIME) + FOG_LIGHTS_MIN_SPAWN_TIME));
+    public void reset() {
+        stop();
+        coinsPickedUp = 0;
     }
 
     /**
-     * Spawns a Slow Motion pickup item based on a timer.
+     * Clears active pickups.
      */
-    public void spawnSlowMotionPickup() {
-        Random random = new Random();
-
-        slowMotionTimer.cancel();
-        slowMotionTimer.purge();
-        slowMotionTimer = new Timer();
-        slowMotionTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        Pickup pickup = new SlowMotionPickup(canvas);
-                        pickup.spawn();
-                        activePickups.add(pickup);
-                        spawnSlowMotionPickup();
-                    }
-                }, (random.nextInt(SLOW_MOTION_MAX_SPAWN_TIME - SLOW_MOTION_MIN_SPAWN_TIME) + SLOW_MOTION_MIN_SPAWN_TIME));
+    public void stop() {
+        world.clear(EntityWorld.PICKUP);
     }
 
-
     /**
-     * Spawns an Invincibility pickup item based on a timer.
+     * Writes the coins picked up to a snapshot.
+     *
+     * @param out snapshot buffer
      */
-    public void spawnInvincibilityPickup() {
-
-        Random random = new Random();
-
-        invincibilityTimer.cancel();
-        invincibilityTimer.purge();
-        invincibilityTimer = new Timer();
-        invincibilityTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        Pickup pickup = new InvincibilityPickup(canvas);
-                        pickup.spawn();
-                        activePickups.add(pickup);
-                        spawnInvincibilityPickup();
-                    }
-                }, (random.nextInt(INVINCIBILITY_MAX_SPAWN_TIME - INVINCIBILITY_MIN_SPAWN_TIME) + INVINCIBILITY_MIN_SPAWN_TIME));
+    public void writeState(ByteBuffer out) {
+        out.putInt(coinsPickedUp);
     }
 
     /**
-     * Spawns a coin for pickup.
+     * Reads state written by writeState.
+     *
+     * @param in snapshot buffer
      */
-    public void spawnCoinPickup() {
-
-        Random random = new Random();
-
-        coinTimer.cancel();
-        coinTimer.purge();
-        coinTimer = new Timer();
-        coinTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        Pickup pickup = new CoinPickup(canvas);
-                        pickup.spawn();
-                        activePickups.add(pickup);
-                        spawnCoinPickup();
-                    }
-                }, (random.nextInt(COIN_MAX_SPAWN_TIME - COIN_MIN_SPAWN_TIME) + COIN_MIN_SPAWN_TIME));
+    public void readState(ByteBuffer in) {
+        coinsPickedUp = in.getInt();
     }
 
-
     /**
-     * Updates the position of all items in the activePickups array during gameplay.
+     * Collects every pickup the player touches.
+     *
+     * @param player Actor player object
      */
-    public void update() {
-        for (int i = 0; i < activePickups.size(); i++) {
-
-            Pickup p = activePickups.get(i);
-            p.update();
-
-            if (p.posY > MooseGame.HEIGHT || p.isActive == false) {
-                activePickups.remove(p);
-            }
-        }
-
+    public void checkCollision(Actor player) {
+        checkCollision(player, 0, 0);
     }
 
     /**
-     * Renders graphics for pickup items
+     * Collects every pickup the player touched during the last few ticks.
      *
-     * @param g Graphics object to paint on
+     * @param player Actor player object
+     * @param dx     horizontal distance the player moved over those ticks
+     * @param steps  ticks to sweep over, or 0 to check only where everything is now
      */
-    public void paint(Graphics g) {
-
-        for (int i = 0; i < activePickups.size(); i++) {
-            activePickups.get(i).paint(g);
+    public void checkCollision(Actor player, int dx, int steps) {
+        int x = player.getX();
+        int y = player.getY();
+        int w = player.getWidth();
+        int h = player.getHeight();
+        SpriteMask mask = world.getMask(player);
+
+        for (int p = find(0, x, y, w, h, mask, dx, steps); p >= 0; p = find(p + 1, x, y, w, h, mask, dx, steps)) {
+            world.despawn(p);
+            FlightEvents.collision("pickup", world.getArchetypeName(p), steps != 0, steps == 0 ? 1 : world.getImpactTime());
+            int pickupEffect = effect[world.getArchetype(p)];
+            if (pickupEffect == SpawnTable.EFFECT_COIN) {
+                coinsPickedUp++;
+                events.publish(EventBus.Type.COIN_COLLECTED, coinsPickedUp, 0, null);
+            } else if (pickupEffect != SpawnTable.EFFECT_NONE) {
+                events.publish(EventBus.Type.POWERUP_COLLECTED, pickupEffect, 0, null);
+            }
         }
     }
 
     /**
-     * Checks to see if current player has collected a pickup item.
-     *
-     * @param player Actor player object
+     * Finds the next pickup touched, swept or not.
      */
-    public void checkCollision(Actor player) {
-
-        for (int i = 0; i < activePickups.size(); i++) {
-            Pickup p = activePickups.get(i);
-
-            if (p.getBounds().intersects(player.getBounds())) {
-                p.despawn();
-                if (p instanceof FogLightsPickup) {
-                    PlayerInventory.incrementFogLights();
-                } else if (p instanceof SlowMotionPickup) {
-                    PlayerInventory.incrementSlowMotion();
-                } else if (p instanceof InvincibilityPickup) {
-                    PlayerInventory.incrementInvincibility();
-
-                } else if (p instanceof CoinPickup) {
-                    coinsPickedUp++;
-                    canvas.playSound("coin.wav");
-                }
-            }
-        }
+    private int find(int from, int x, int y, int w, int h, SpriteMask mask, int dx, int steps) {
+        return steps == 0 ? world.findOverlap(EntityWorld.PICKUP, from, x, y, w, h, mask)
+                : world.findSweptHit(EntityWorld.PICKUP, from, x, y, w, h, mask, dx, steps);
     }
 }
-
-
-
@@ -4,6 +4,7 @@ import game.PlayerInventory;
 import game.MooseGame;
 
 import java.awt.event.KeyEvent;
+import java.nio.ByteBuffer;
 
 import static game.PlayerInventory.Vehicles.*;
 
@@ -12,7 +13,13 @@ import static game.PlayerInventory.Vehicles.*;
  */
 public class Player extends Actor implements KeyboardControllable {
 
+    public static final int INPUT_LEFT = 1;
+    public static final int INPUT_RIGHT = 1 << 1;
+
+    // Keys currently held, written by the game loop as it drains the input queue
     private boolean left, right;
+    // Steering applied by the game loop at the start of each tick
+    private boolean steerLeft, steerRight;
 
     /**
      * Constructs a Player.
@@ -21,13 +28,40 @@ public class Player extends Actor implements KeyboardControllable {
      */
     public Player(MooseGame mooseGame) {
         super(mooseGame);
+        reset(CAR);
+    }
 
-        if (PlayerInventory.getEquippedVehicle() == CAR) {
-            sprites = new String[]{"player_bluecar.png"};
-        } else if (PlayerInventory.getEquippedVehicle() == TRUCK) {
-            sprites = new String[]{"player_truck.png"};
-        } else if (PlayerInventory.getEquippedVehicle() == ATV) {
-            sprites = new String[]{"player_atv.png"};
+    /**
+     * Gets the sprite of a vehicle.
+     *
+     * @param vehicle vehicle
+     * @return sprite file name
+     */
+    public static String getSpriteName(PlayerInventory.Vehicles vehicle) {
+        if (vehicle == TRUCK) {
+            return "player_truck.png";
+        } else if (vehicle == ATV) {
+            return "player_atv.png";
+        }
+        return "player_bluecar.png";
+    }
+
+    /**
+     * Puts the player back at the start position for a new game.
+     *
+     * @param vehicle vehicle to drive
+     */
+    public void reset(PlayerInventory.Vehicles vehicle) {
+        left = false;
+        right = false;
+        steerLeft = false;
+        steerRight = false;
+        vx = 0;
+        vy = 0;
+
+        String sprite = getSpriteName(vehicle);
+        if (sprites == null || !sprites[0].equals(sprite)) {
+            sprites = new String[]{sprite};
         }
 
         actorSpeed = 10;
@@ -37,6 +71,57 @@ public class Player extends Actor implements KeyboardControllable {
         posY = 8 * MooseGame.HEIGHT / 10;
     }
 
+    /**
+     * Gets the steering keys currently held.
+     *
+     * @return INPUT_LEFT and INPUT_RIGHT bits
+     */
+    public int getInputMask() {
+        return (left ? INPUT_LEFT : 0) | (right ? INPUT_RIGHT : 0);
+    }
+
+    /**
+     * Holds steering keys as if they were pressed, for scripted drivers without a keyboard.
+     *
+     * @param input INPUT_LEFT and INPUT_RIGHT bits
+     */
+    public void holdInput(int input) {
+        left = (input & INPUT_LEFT) != 0;
+        right = (input & INPUT_RIGHT) != 0;
+    }
+
+    /**
+     * Sets the steering used by the following updates, either from the keyboard or a replay.
+     *
+     * @param input INPUT_LEFT and INPUT_RIGHT bits
+     */
+    public void applyInputMask(int input) {
+        steerLeft = (input & INPUT_LEFT) != 0;
+        steerRight = (input & INPUT_RIGHT) != 0;
+    }
+
+    /**
+     * Writes the actor state and steering to a snapshot.
+     *
+     * @param out snapshot buffer
+     */
+    @Override
+    public void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.put((byte) ((steerLeft ? INPUT_LEFT : 0) | (steerRight ? INPUT_RIGHT : 0)));
+    }
+
+    /**
+     * Reads state written by writeState.
+     *
+     * @param in snapshot buffer
+     */
+    @Override
+    public void readState(ByteBuffer in) {
+        super.readState(in);
+        applyInputMask(in.get());
+    }
+
     /**
      * Updates the speed at which the game moves.
      */
@@ -50,9 +135,9 @@ public class Player extends Actor implements KeyboardControllable {
      */
     private void updateSpeed() {
         vx = 0;
-        if (left)
+        if (steerLeft)
             vx = -actorSpeed;
-        if (right)
+        if (steerRight)
             vx = actorSpeed;
 
         if (posX > 0 && vx < 0) {
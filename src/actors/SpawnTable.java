@@ -0,0 +1,596 @@
+package actors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Entity archetypes and spawn streams, compiled from a text table into flat primitive arrays.
+ * <p>
+ * The table is res/spawns.txt unless -Dmoosegame.spawnTable names another file in res/. It is read
+ * once; the format is described at the top of spawns.txt. Every weighted choice is compiled into a
+ * Walker alias table, so picking an archetype or variant takes two random numbers however many
+ * entries there are, and a choice with a single entry takes none.
+ * <p>
+ * Archetypes and streams are numbered in the order they appear in the file.
+ */
+public class SpawnTable {
+
+    public static final String TABLE_PROPERTY = "moosegame.spawnTable";
+    private static final String DEFAULT_TABLE = "spawns.txt";
+
+    // Pickup effects
+    public static final int EFFECT_NONE = 0;
+    public static final int EFFECT_COIN = 1;
+    public static final int EFFECT_FOG_LIGHTS = 2;
+    public static final int EFFECT_INVINCIBILITY = 3;
+    public static final int EFFECT_SLOW_MOTION = 4;
+    private static final String[] EFFECT_NAMES = {"none", "coin", "fog_lights", "invincibility", "slow_motion"};
+
+    // Paint layers, drawn in this order
+    public static final int LAYER_GROUND = 0;
+    public static final int LAYER_MOVING = 1;
+    public static final int LAYER_PICKUP = 2;
+    public static final int LAYER_COUNT = 3;
+    private static final String[] LAYER_NAMES = {"ground", "moving", "pickup"};
+
+    private static SpawnTable defaultTable;
+
+    // Sprite names, indexed by sprite id
+    String[] sprites;
+
+    // Per archetype
+    String[] archetypeNames;
+    int[] kind;
+    int[] layer;
+    int[] effect;
+    int[] width;
+    int[] height;
+    int[] spawnY;
+    int[] variantOffset;
+    int[] variantCount;
+    int[] variantTotal;
+
+    // Per variant, grouped by archetype
+    int[] variantSprite;
+    int[] variantXMin, variantXMax;
+    int[] variantVxMin, variantVxMax;
+    int[] variantVyMin, variantVyMax;
+    int[] variantWeight;
+    int[] variantThreshold;
+    int[] variantAlias;
+
+    // Per stream
+    String[] streamNames;
+    int[] firstMin, firstMax;
+    int[] intervalMin, intervalMax;
+    int[] entryOffset;
+    int[] entryCount;
+    int[] entryTotal;
+
+    // Per stream entry, grouped by stream
+    int[] entryArchetype;
+    int[] entryWeight;
+    int[] entryThreshold;
+    int[] entryAlias;
+
+    // Cached by getFingerprint, 0 until computed and after a timing changes
+    private long fingerprint = 0;
+
+    /**
+     * Constructs an empty SpawnTable.
+     */
+    private SpawnTable() {
+    }
+
+    /**
+     * Gets the table the game uses, reading it the first time.
+     *
+     * @return shared table, which must not be modified
+     */
+    public static synchronized SpawnTable getDefault() {
+        if (defaultTable == null) {
+            String name = System.getProperty(TABLE_PROPERTY, DEFAULT_TABLE);
+            InputStream in = SpawnTable.class.getClassLoader().getResourceAsStream("res/" + name);
+            if (in == null) {
+                throw new IllegalStateException("Spawn table res/" + name + " not found");
+            }
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                defaultTable = parse(reader, name);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read spawn table " + name, e);
+            }
+        }
+        return defaultTable;
+    }
+
+    /**
+     * Parses and compiles a table.
+     *
+     * @param reader table in the spawns.txt format
+     * @param name   file name for error messages
+     * @return compiled table
+     * @throws IOException if the table could not be read
+     */
+    private static SpawnTable parse(Reader reader, String name) throws IOException {
+        List<String> spriteNames = new ArrayList<>();
+        List<String> archetypes = new ArrayList<>();
+        List<int[]> archetypeRows = new ArrayList<>();
+        List<int[]> variantRows = new ArrayList<>();
+        List<String> streams = new ArrayList<>();
+        List<int[]> streamRows = new ArrayList<>();
+        List<int[]> entryRows = new ArrayList<>();
+        List<String> entryNames = new ArrayList<>();
+
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            String[] f = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (f[0].isEmpty()) {
+                continue;
+            }
+            try {
+                switch (f[0]) {
+                    case "archetype":
+                        expect(f, 8);
+                        archetypes.add(f[1]);
+                        archetypeRows.add(new int[]{kindOf(f[2]), indexOf(LAYER_NAMES, f[3], "layer"),
+                                indexOf(EFFECT_NAMES, f[4], "effect"), positive(f[5]), positive(f[6]),
+                                Integer.parseInt(f[7])});
+                        break;
+                    case "variant":
+                        expect(f, 9);
+                        if (archetypes.isEmpty()) {
+                            throw new IllegalArgumentException("variant before any archetype");
+                        }
+                        int sprite = spriteNames.indexOf(f[2]);
+                        if (sprite < 0) {
+                            sprite = spriteNames.size();
+                            spriteNames.add(f[2]);
+                        }
+                        variantRows.add(new int[]{archetypes.size() - 1, positive(f[1]), sprite,
+                                Integer.parseInt(f[3]), Integer.parseInt(f[4]), Integer.parseInt(f[5]),
+                                Integer.parseInt(f[6]), Integer.parseInt(f[7]), Integer.parseInt(f[8])});
+                        break;
+                    case "stream":
+                        expect(f, 6);
+                        streams.add(f[1]);
+                        streamRows.add(new int[]{Integer.parseInt(f[2]), Integer.parseInt(f[3]),
+                                positive(f[4]), positive(f[5])});
+                        break;
+                    case "spawn":
+                        expect(f, 3);
+                        if (streams.isEmpty()) {
+                            throw new IllegalArgumentException("spawn before any stream");
+                        }
+                        entryRows.add(new int[]{streams.size() - 1, positive(f[1])});
+                        entryNames.add(f[2]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown keyword " + f[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException(name + " line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        SpawnTable table = new SpawnTable();
+        table.sprites = spriteNames.toArray(new String[0]);
+        table.compileArchetypes(archetypes, archetypeRows, variantRows);
+        table.compileStreams(streams, streamRows, entryRows, entryNames);
+        return table;
+    }
+
+    /**
+     * Fills the archetype and variant arrays.
+     */
+    private void compileArchetypes(List<String> names, List<int[]> rows, List<int[]> variants) {
+        int n = names.size();
+        archetypeNames = names.toArray(new String[0]);
+        kind = new int[n];
+        layer = new int[n];
+        effect = new int[n];
+        width = new int[n];
+        height = new int[n];
+        spawnY = new int[n];
+        variantOffset = new int[n];
+        variantCount = new int[n];
+        variantTotal = new int[n];
+        for (int a = 0; a < n; a++) {
+            int[] row = rows.get(a);
+            kind[a] = row[0];
+            layer[a] = row[1];
+            effect[a] = row[2];
+            width[a] = row[3];
+            height[a] = row[4];
+            spawnY[a] = row[5];
+        }
+
+        int m = variants.size();
+        variantSprite = new int[m];
+        variantXMin = new int[m];
+        variantXMax = new int[m];
+        variantVxMin = new int[m];
+        variantVxMax = new int[m];
+        variantVyMin = new int[m];
+        variantVyMax = new int[m];
+        variantWeight = new int[m];
+        variantThreshold = new int[m];
+        variantAlias = new int[m];
+        // Variants follow their archetype in the file, so each archetype's variants are contiguous
+        for (int v = 0; v < m; v++) {
+            int[] row = variants.get(v);
+            int a = row[0];
+            if (variantCount[a]++ == 0) {
+                variantOffset[a] = v;
+            }
+            variantWeight[v] = row[1];
+            variantSprite[v] = row[2];
+            variantXMin[v] = row[3];
+            variantXMax[v] = row[4];
+            variantVxMin[v] = row[5];
+            variantVxMax[v] = row[6];
+            variantVyMin[v] = row[7];
+            variantVyMax[v] = row[8];
+        }
+        for (int a = 0; a < n; a++) {
+            if (variantCount[a] == 0) {
+                throw new IllegalStateException("Archetype " + archetypeNames[a] + " has no variants");
+            }
+            variantTotal[a] = buildAlias(variantWeight, variantThreshold, variantAlias,
+                    variantOffset[a], variantCount[a]);
+        }
+    }
+
+    /**
+     * Fills the stream and stream entry arrays.
+     */
+    private void compileStreams(List<String> names, List<int[]> rows, List<int[]> entries, List<String> entryNames) {
+        int n = names.size();
+        streamNames = names.toArray(new String[0]);
+        firstMin = new int[n];
+        firstMax = new int[n];
+        intervalMin = new int[n];
+        intervalMax = new int[n];
+        entryOffset = new int[n];
+        entryCount = new int[n];
+        entryTotal = new int[n];
+        for (int s = 0; s < n; s++) {
+            int[] row = rows.get(s);
+            firstMin[s] = row[0];
+            firstMax[s] = row[1];
+            intervalMin[s] = row[2];
+            intervalMax[s] = row[3];
+        }
+
+        int m = entries.size();
+        entryArchetype = new int[m];
+        entryWeight = new int[m];
+        entryThreshold = new int[m];
+        entryAlias = new int[m];
+        for (int i = 0; i < m; i++) {
+            int[] row = entries.get(i);
+            int s = row[0];
+            if (entryCount[s]++ == 0) {
+                entryOffset[s] = i;
+            }
+            entryWeight[i] = row[1];
+            entryArchetype[i] = Arrays.asList(archetypeNames).indexOf(entryNames.get(i));
+            if (entryArchetype[i] < 0) {
+                throw new IllegalStateException("Stream " + streamNames[s] + " spawns unknown archetype "
+                        + entryNames.get(i));
+            }
+        }
+        for (int s = 0; s < n; s++) {
+            if (entryCount[s] == 0) {
+                throw new IllegalStateException("Stream " + streamNames[s] + " spawns nothing");
+            }
+            entryTotal[s] = buildAlias(entryWeight, entryThreshold, entryAlias, entryOffset[s], entryCount[s]);
+        }
+    }
+
+    /**
+     * Builds a Walker alias table in place with Vose's method, using exact integer arithmetic.
+     * Slot i is chosen with probability threshold[i] / total, and otherwise alias[i] is.
+     *
+     * @param weight    weights
+     * @param threshold filled with each slot's threshold, between 0 and total
+     * @param alias     filled with each slot's alias, relative to offset
+     * @param offset    first entry of the table
+     * @param count     number of entries
+     * @return total weight
+     */
+    private static int buildAlias(int[] weight, int[] threshold, int[] alias, int offset, int count) {
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += weight[offset + i];
+        }
+
+        // Scaled weights: slot i is full when its scaled weight reaches total
+        long[] scaled = new long[count];
+        int[] small = new int[count];
+        int[] large = new int[count];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < count; i++) {
+            scaled[i] = (long) weight[offset + i] * count;
+            if (scaled[i] < total) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            threshold[offset + s] = (int) scaled[s];
+            alias[offset + s] = l;
+            scaled[l] -= total - scaled[s];
+            if (scaled[l] < total) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            threshold[offset + l] = total;
+            alias[offset + l] = l;
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            threshold[offset + s] = total;
+            alias[offset + s] = s;
+        }
+        return total;
+    }
+
+    /**
+     * Picks an entry from an alias table.
+     *
+     * @param random    random source
+     * @param threshold thresholds
+     * @param alias     aliases
+     * @param offset    first entry of the table
+     * @param count     number of entries
+     * @param total     total weight
+     * @return chosen entry, relative to offset
+     */
+    static int sample(Random random, int[] threshold, int[] alias, int offset, int count, int total) {
+        if (count == 1) {
+            return 0;
+        }
+        int slot = random.nextInt(count);
+        return random.nextInt(total) < threshold[offset + slot] ? slot : alias[offset + slot];
+    }
+
+    /**
+     * Picks a number in an inclusive range, without using the random source if there is only one.
+     *
+     * @param random random source
+     * @param min    smallest value
+     * @param max    largest value
+     * @return value between min and max
+     */
+    static int between(Random random, int min, int max) {
+        return max <= min ? min : min + random.nextInt(max - min + 1);
+    }
+
+    /**
+     * Copies this table so its stream timings can be changed.
+     *
+     * @return independent copy
+     */
+    public SpawnTable copy() {
+        SpawnTable copy = new SpawnTable();
+        copy.sprites = sprites;
+        copy.archetypeNames = archetypeNames;
+        copy.kind = kind;
+        copy.layer = layer;
+        copy.effect = effect;
+        copy.width = width;
+        copy.height = height;
+        copy.spawnY = spawnY;
+        copy.variantOffset = variantOffset;
+        copy.variantCount = variantCount;
+        copy.variantTotal = variantTotal;
+        copy.variantSprite = variantSprite;
+        copy.variantXMin = variantXMin;
+        copy.variantXMax = variantXMax;
+        copy.variantVxMin = variantVxMin;
+        copy.variantVxMax = variantVxMax;
+        copy.variantVyMin = variantVyMin;
+        copy.variantVyMax = variantVyMax;
+        copy.variantWeight = variantWeight;
+        copy.variantThreshold = variantThreshold;
+        copy.variantAlias = variantAlias;
+        copy.streamNames = streamNames;
+        copy.firstMin = firstMin.clone();
+        copy.firstMax = firstMax.clone();
+        copy.intervalMin = intervalMin.clone();
+        copy.intervalMax = intervalMax.clone();
+        copy.entryOffset = entryOffset;
+        copy.entryCount = entryCount;
+        copy.entryTotal = entryTotal;
+        copy.entryArchetype = entryArchetype;
+        copy.entryWeight = entryWeight;
+        copy.entryThreshold = entryThreshold;
+        copy.entryAlias = entryAlias;
+        return copy;
+    }
+
+    /**
+     * Changes one stream timing of a copy, for tuning.
+     *
+     * @param key   stream name followed by .firstMin, .firstMax, .min or .max
+     * @param value milliseconds
+     */
+    public void setTiming(String key, int value) {
+        int dot = key.lastIndexOf('.');
+        int s = dot < 0 ? -1 : getStream(key.substring(0, dot));
+        if (s < 0) {
+            throw new IllegalArgumentException("Unknown stream in " + key);
+        }
+        switch (key.substring(dot + 1)) {
+            case "firstMin":
+                firstMin[s] = value;
+                break;
+            case "firstMax":
+                firstMax[s] = value;
+                break;
+            case "min":
+                intervalMin[s] = value;
+                break;
+            case "max":
+                intervalMax[s] = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown timing in " + key);
+        }
+        fingerprint = 0;
+    }
+
+    /**
+     * Gets a hash of everything in the table, so a replay can check it is played with the table
+     * it was recorded with.
+     *
+     * @return fingerprint, never 0
+     */
+    public long getFingerprint() {
+        if (fingerprint == 0) {
+            Object[] parts = {sprites, archetypeNames, kind, layer, effect, width, height, spawnY,
+                    variantOffset, variantCount, variantTotal, variantSprite, variantXMin, variantXMax,
+                    variantVxMin, variantVxMax, variantVyMin, variantVyMax, variantWeight, variantThreshold,
+                    variantAlias, streamNames, firstMin, firstMax, intervalMin, intervalMax, entryOffset,
+                    entryCount, entryTotal, entryArchetype, entryWeight, entryThreshold, entryAlias};
+            long hash = 1;
+            for (Object part : parts) {
+                int h = part instanceof int[] ? Arrays.hashCode((int[]) part) : Arrays.hashCode((Object[]) part);
+                hash = (hash ^ h) * 0x9E3779B97F4A7C15L;
+                hash ^= hash >>> 29;
+            }
+            fingerprint = hash == 0 ? 1 : hash;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Finds an archetype by name.
+     *
+     * @param name archetype name
+     * @return archetype, or -1 if there is none
+     */
+    public int getArchetype(String name) {
+        return Arrays.asList(archetypeNames).indexOf(name);
+    }
+
+    /**
+     * Finds a stream by name.
+     *
+     * @param name stream name
+     * @return stream, or -1 if there is none
+     */
+    public int getStream(String name) {
+        return Arrays.asList(streamNames).indexOf(name);
+    }
+
+    /**
+     * Gets the number of archetypes.
+     *
+     * @return archetype count
+     */
+    public int getArchetypeCount() {
+        return archetypeNames.length;
+    }
+
+    /**
+     * Gets the number of streams.
+     *
+     * @return stream count
+     */
+    public int getStreamCount() {
+        return streamNames.length;
+    }
+
+    /**
+     * Gets the number of sprites.
+     *
+     * @return sprite count
+     */
+    public int getSpriteCount() {
+        return sprites.length;
+    }
+
+    /**
+     * Gets the paint layer of an archetype.
+     *
+     * @param archetype archetype
+     * @return LAYER_GROUND, LAYER_MOVING or LAYER_PICKUP
+     */
+    public int getLayer(int archetype) {
+        return layer[archetype];
+    }
+
+    /**
+     * Gets a sprite name.
+     *
+     * @param sprite sprite id
+     * @return sprite file name
+     */
+    public String getSprite(int sprite) {
+        return sprites[sprite];
+    }
+
+    /**
+     * Checks an argument count.
+     */
+    private static void expect(String[] fields, int count) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException(fields[0] + " needs " + (count - 1) + " values");
+        }
+    }
+
+    /**
+     * Parses a number that must be above zero.
+     */
+    private static int positive(String field) {
+        int value = Integer.parseInt(field);
+        if (value <= 0) {
+            throw new IllegalArgumentException(field + " must be positive");
+        }
+        return value;
+    }
+
+    /**
+     * Parses a collision kind.
+     */
+    private static int kindOf(String field) {
+        if (field.equals("obstacle")) {
+            return EntityWorld.OBSTACLE;
+        } else if (field.equals("pickup")) {
+            return EntityWorld.PICKUP;
+        }
+        throw new IllegalArgumentException("unknown kind " + field);
+    }
+
+    /**
+     * Finds a name in a list of allowed names.
+     */
+    private static int indexOf(String[] names, String field, String what) {
+        int index = Arrays.asList(names).indexOf(field);
+        if (index < 0) {
+            throw new IllegalArgumentException("unknown " + what + " " + field);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,208 @@
+package actors;
+
+import game.FlightEvents;
+import game.GameRandom;
+import game.MooseGame;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Runs the spawn streams of a SpawnTable, adding entities to the EntityWorld as they come due.
+ * <p>
+ * Each stream has its own random generator, seeded from the game seed, and fills a chunk of
+ * CHUNK_SIZE upcoming spawns at a time: archetype, variant, position, speed and the wait until
+ * the next one. Spawning is then only copying the next row into the world. Because streams never
+ * share a generator, one stream's spawns do not depend on how many another stream has made.
+ * <p>
+ * The DifficultyDirector sets how fast each stream counts down, scales spawn speeds and can hold
+ * back a spawn that would exceed the entity budget. Countdowns are kept in thousandths of a
+ * millisecond so that small rate increases are not lost to rounding.
+ */
+public class Spawner {
+
+    private static final int CHUNK_SIZE = 32;
+
+    private EntityWorld world;
+    private SpawnTable table;
+    private DifficultyDirector director;
+    // Gives each stream its seed on reset
+    private final Random seeds = new Random();
+
+    // Per stream
+    private GameRandom[] random;
+    private int[] countdown;
+    private int[] cursor;
+    private long[] chunkState;
+
+    // Upcoming spawns, CHUNK_SIZE rows per stream
+    private int[] chunkArchetype;
+    private int[] chunkSprite;
+    private int[] chunkX;
+    private int[] chunkVx;
+    private int[] chunkVy;
+    private int[] chunkWait;
+
+    /**
+     * Constructs a Spawner.
+     *
+     * @param world    entities to spawn into
+     * @param table    archetypes and streams
+     * @param director spawn rates, speeds and entity budget
+     */
+    public Spawner(EntityWorld world, SpawnTable table, DifficultyDirector director) {
+        this.world = world;
+        this.director = director;
+        setTable(table);
+    }
+
+    /**
+     * Changes the table, taking effect at the next reset.
+     *
+     * @param table archetypes and streams
+     */
+    public void setTable(SpawnTable table) {
+        this.table = table;
+        int streams = table.getStreamCount();
+        random = new GameRandom[streams];
+        for (int s = 0; s < streams; s++) {
+            random[s] = new GameRandom();
+        }
+        countdown = new int[streams];
+        cursor = new int[streams];
+        chunkState = new long[streams];
+        chunkArchetype = new int[streams * CHUNK_SIZE];
+        chunkSprite = new int[streams * CHUNK_SIZE];
+        chunkX = new int[streams * CHUNK_SIZE];
+        chunkVx = new int[streams * CHUNK_SIZE];
+        chunkVy = new int[streams * CHUNK_SIZE];
+        chunkWait = new int[streams * CHUNK_SIZE];
+    }
+
+    /**
+     * Gets the table.
+     *
+     * @return archetypes and streams
+     */
+    public SpawnTable getTable() {
+        return table;
+    }
+
+    /**
+     * Restarts every stream for a new game.
+     *
+     * @param seed seed for every stream
+     */
+    public void reset(long seed) {
+        seeds.setSeed(seed);
+        for (int s = 0; s < random.length; s++) {
+            random[s].setSeed(seeds.nextLong());
+            countdown[s] = SpawnTable.between(random[s], table.firstMin[s], table.firstMax[s])
+                    * DifficultyDirector.RATE_ONE;
+            cursor[s] = CHUNK_SIZE;
+        }
+    }
+
+    /**
+     * Counts down every stream and spawns from any that are due. A due spawn the director holds
+     * back stays due and is tried again next tick.
+     *
+     * @param elapsed game time since the last tick in milliseconds
+     */
+    public void update(int elapsed) {
+        for (int s = 0; s < random.length; s++) {
+            countdown[s] -= elapsed * director.getSpawnRate(s);
+            if (countdown[s] <= 0) {
+                if (cursor[s] == CHUNK_SIZE) {
+                    fillChunk(s);
+                }
+                int row = s * CHUNK_SIZE + cursor[s];
+                int a = chunkArchetype[row];
+                if (!director.admit(a)) {
+                    countdown[s] = 0;
+                    continue;
+                }
+                cursor[s]++;
+                FlightEvents.spawn(table.archetypeNames[a], table.streamNames[s], world.hasFreeRow());
+                world.spawn(a, chunkSprite[row], chunkX[row], table.spawnY[a], table.width[a], table.height[a],
+                        director.scaleSpeed(a, chunkVx[row]), director.scaleSpeed(a, chunkVy[row]));
+                countdown[s] += chunkWait[row] * DifficultyDirector.RATE_ONE;
+            }
+        }
+    }
+
+    /**
+     * Spawns one entity of a random archetype and variant at once, outside the streams and the
+     * entity budget. Used by StressBench to fill the world.
+     *
+     * @param random   random source
+     * @param onScreen whether to place it anywhere on screen rather than at its spawn height
+     */
+    public void spawnRandom(Random random, boolean onScreen) {
+        int a = random.nextInt(table.getArchetypeCount());
+        int v = table.variantOffset[a] + SpawnTable.sample(random, table.variantThreshold, table.variantAlias,
+                table.variantOffset[a], table.variantCount[a], table.variantTotal[a]);
+        int y = onScreen ? SpawnTable.between(random, table.spawnY[a], MooseGame.HEIGHT - table.height[a])
+                : table.spawnY[a];
+        world.spawn(a, table.variantSprite[v], SpawnTable.between(random, table.variantXMin[v], table.variantXMax[v]),
+                y, table.width[a], table.height[a],
+                SpawnTable.between(random, table.variantVxMin[v], table.variantVxMax[v]),
+                SpawnTable.between(random, table.variantVyMin[v], table.variantVyMax[v]));
+    }
+
+    /**
+     * Generates the next CHUNK_SIZE spawns of a stream.
+     *
+     * @param s stream
+     */
+    private void fillChunk(int s) {
+        GameRandom r = random[s];
+        chunkState[s] = r.getState();
+        int entries = table.entryOffset[s];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            int row = s * CHUNK_SIZE + i;
+            int a = table.entryArchetype[entries + SpawnTable.sample(r, table.entryThreshold, table.entryAlias,
+                    entries, table.entryCount[s], table.entryTotal[s])];
+            int v = table.variantOffset[a] + SpawnTable.sample(r, table.variantThreshold, table.variantAlias,
+                    table.variantOffset[a], table.variantCount[a], table.variantTotal[a]);
+            chunkArchetype[row] = a;
+            chunkSprite[row] = table.variantSprite[v];
+            chunkX[row] = SpawnTable.between(r, table.variantXMin[v], table.variantXMax[v]);
+            chunkVx[row] = SpawnTable.between(r, table.variantVxMin[v], table.variantVxMax[v]);
+            chunkVy[row] = SpawnTable.between(r, table.variantVyMin[v], table.variantVyMax[v]);
+            chunkWait[row] = SpawnTable.between(r, table.intervalMin[s], table.intervalMax[s]);
+        }
+        cursor[s] = 0;
+    }
+
+    /**
+     * Writes every stream's countdown and position to a snapshot. A partly used chunk is stored as
+     * the generator state it was made from, and is made again on restore.
+     *
+     * @param out snapshot buffer
+     */
+    public void writeState(ByteBuffer out) {
+        for (int s = 0; s < random.length; s++) {
+            out.putInt(countdown[s]);
+            out.putLong(cursor[s] < CHUNK_SIZE ? chunkState[s] : random[s].getState());
+            out.put((byte) cursor[s]);
+        }
+    }
+
+    /**
+     * Reads state written by writeState.
+     *
+     * @param in snapshot buffer
+     */
+    public void readState(ByteBuffer in) {
+        for (int s = 0; s < random.length; s++) {
+            countdown[s] = in.getInt();
+            random[s].setState(in.getLong());
+            int position = in.get();
+            if (position < CHUNK_SIZE) {
+                fillChunk(s);
+            }
+            cursor[s] = position;
+        }
+    }
+}
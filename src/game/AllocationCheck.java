@@ -0,0 +1,205 @@
+package game;
+
+import actors.Player;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Checks that the simulation and render paths do not allocate once warmed up.
+ * <p>
+ * Usage: java game.AllocationCheck [--ticks N] [--seed X]
+ * <p>
+ * The autopilot plays headless games, starting a new one whenever it dies, through the same calls
+ * the game loop makes for a gameplay frame: GameplayController.tick, then the background, the game
+ * and the frame rate painted as MooseGame.paintWorld paints them, into a fresh Graphics of an
+ * offscreen image each frame, then the frame time and input latency bookkeeping. Only getting the
+ * window's buffer and showing it are left out. A GameEnvironment step with each kind of
+ * observation is run alongside. After WARM_UP_TICKS ticks for the JIT, the arrays and the fog
+ * images to settle, the bytes the thread allocates during each phase are counted with ThreadMXBean
+ * for N ticks. The report gives the bytes per tick of every phase, and of starting a game, against
+ * its budget; the exit status is 1 if any phase is over budget, so this can run as a build check.
+ */
+public class AllocationCheck {
+
+    private static final int DEFAULT_TICKS = 20000;
+    private static final long DEFAULT_SEED = 0x4D4F4F5345L;
+    private static final int WARM_UP_TICKS = 20000;
+    private static final int ENVIRONMENT_SLOTS = 32;
+    private static final int ENVIRONMENT_RASTER = 50;
+
+    private static final int TICK = 0;
+    private static final int PAINT = 1;
+    private static final int PRESENT = 2;
+    private static final int FEATURES = 3;
+    private static final int RASTER = 4;
+    private static final int NEW_GAME = 5;
+    private static final String[] PHASES = {"tick", "paint", "present", "env features", "env raster", "new game"};
+    // Largest bytes per tick of each phase, and per game for NEW_GAME, that still passes
+    private static final double[] BUDGET = {0, 0, 0, 0, 0, 0};
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long[] bytes = new long[PHASES.length];
+    private final long[] counts = new long[PHASES.length];
+
+    private final GameplayController controller = new GameplayController(null);
+    private final GameEnvironment features = new GameEnvironment(GameEnvironment.Observation.FEATURES, ENVIRONMENT_SLOTS);
+    private final GameEnvironment raster = new GameEnvironment(GameEnvironment.Observation.RASTER, ENVIRONMENT_RASTER);
+    private final ByteBuffer observation = ByteBuffer.allocateDirect(
+            Math.max(features.getObservationBytes(), raster.getObservationBytes())).order(ByteOrder.nativeOrder());
+    private final FrameHeadroom frameHeadroom = new FrameHeadroom();
+    private final BufferedImage offscreen;
+    private long seed;
+
+    /**
+     * Constructs an AllocationCheck.
+     *
+     * @param seed seed of the first game
+     */
+    private AllocationCheck(long seed) {
+        this.seed = seed;
+        offscreen = ResourceLoader.createCompatible(MooseGame.WIDTH, MooseGame.HEIGHT, Transparency.OPAQUE);
+        controller.setAutopilot(true);
+        features.setPowerups(1, 1, 1);
+        raster.setPowerups(1, 1, 1);
+
+        controller.reset(seed);
+        features.reset(seed, observation, 0);
+        raster.reset(seed, observation, 0);
+    }
+
+    /**
+     * Runs one tick of every phase, counting allocations if asked.
+     *
+     * @param tick    tick number, for the environments' actions
+     * @param measure whether to count this tick
+     */
+    private void tick(int tick, boolean measure) {
+        // The window gets a new Graphics from its buffer each frame; making it is not counted
+        Graphics g = offscreen.getGraphics();
+        // Frame times from 1 to 40 ms, so the frame rate shows numbers of different lengths
+        long usedTime = 1 + tick % 40;
+
+        long start = threads.getCurrentThreadAllocatedBytes();
+        long workStart = System.nanoTime();
+        FlightEvents.FrameEvent frame = FlightEvents.beginFrame();
+        controller.tick();
+        long ticked = threads.getCurrentThreadAllocatedBytes();
+        long paintStart = System.nanoTime();
+        MooseGame.paintBackground(g, Color.BLACK, MooseGame.WIDTH, MooseGame.HEIGHT);
+        controller.paint(g);
+        MooseGame.paintFPS(g, usedTime);
+        long painted = threads.getCurrentThreadAllocatedBytes();
+        long presented = System.nanoTime();
+        FlightEvents.endFrame(frame, controller, presented - paintStart);
+        controller.framePresented(presented);
+        frameHeadroom.sample(System.nanoTime() - workStart, controller.getEntityCount());
+        long finished = threads.getCurrentThreadAllocatedBytes();
+        g.dispose();
+
+        // Weave, with a powerup every few seconds
+        int action = (tick / 40 % 2 == 0 ? Player.INPUT_LEFT : Player.INPUT_RIGHT)
+                | (tick % 300 == 0 ? GameplayController.INPUT_INVINCIBILITY : 0);
+        long stepStart = threads.getCurrentThreadAllocatedBytes();
+        features.step(action, observation, 0);
+        long featured = threads.getCurrentThreadAllocatedBytes();
+        raster.step(action, observation, 0);
+        long rasterised = threads.getCurrentThreadAllocatedBytes();
+
+        if (measure) {
+            count(TICK, ticked - start);
+            count(PAINT, painted - ticked);
+            count(PRESENT, finished - painted);
+            count(FEATURES, featured - stepStart);
+            count(RASTER, rasterised - featured);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        boolean newGame = false;
+        if (controller.isGameOver()) {
+            controller.reset(++seed);
+            newGame = true;
+        }
+        if (features.isDone()) {
+            features.reset(++seed, observation, 0);
+            newGame = true;
+        }
+        if (raster.isDone()) {
+            raster.reset(++seed, observation, 0);
+            newGame = true;
+        }
+        if (measure && newGame) {
+            count(NEW_GAME, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+    }
+
+    /**
+     * Adds one measurement of a phase.
+     */
+    private void count(int phase, long allocated) {
+        bytes[phase] += allocated;
+        counts[phase]++;
+    }
+
+    /**
+     * Warms up, measures and prints the report.
+     *
+     * @param ticks ticks to measure
+     * @return whether every phase kept to its budget
+     */
+    private boolean run(int ticks) {
+        for (int tick = 0; tick < WARM_UP_TICKS; tick++) {
+            tick(tick, false);
+        }
+        for (int tick = 0; tick < ticks; tick++) {
+            tick(WARM_UP_TICKS + tick, true);
+        }
+        boolean passed = true;
+        System.out.printf("%-14s %12s %10s %10s%n", "phase", "bytes", "per tick", "budget");
+        for (int p = 0; p < PHASES.length; p++) {
+            double perTick = counts[p] == 0 ? 0 : bytes[p] / (double) counts[p];
+            boolean over = perTick > BUDGET[p];
+            passed &= !over;
+            System.out.printf("%-14s %12d %10.1f %10.1f%s%n", PHASES[p], bytes[p], perTick, BUDGET[p],
+                    over ? "  OVER BUDGET" : "");
+        }
+        return passed;
+    }
+
+    /**
+     * Runs the check and exits with status 1 if any phase allocated more than its budget.
+     *
+     * @param args options
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int ticks = DEFAULT_TICKS;
+        long seed = DEFAULT_SEED;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--ticks")) {
+                    ticks = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Bad argument: " + e.getMessage());
+            System.err.println("Usage: java game.AllocationCheck [--ticks N] [--seed X]");
+            System.exit(2);
+            return;
+        }
+
+        boolean passed = new AllocationCheck(seed).run(ticks);
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -0,0 +1,112 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Development mode helper that reloads sprites and sounds when they change on disk.
+ * <p>
+ * Enabled with -Dmoosegame.hotreload=true. Editors often write a file several times in a row, so a
+ * change is only reloaded once the file has been quiet for DEBOUNCE_TIME. Decoding happens on the
+ * watcher thread and the new asset is swapped into the ResourceLoader cache in one put, so the game
+ * loop never waits for it.
+ */
+public class AssetWatcher implements Runnable {
+
+    public static final String ENABLE_PROPERTY = "moosegame.hotreload";
+
+    private static final long DEBOUNCE_TIME = 250;
+
+    private final Path directory;
+    private final WatchService watchService;
+    private final Map<String, Long> pendingChanges = new HashMap<>();
+
+    /**
+     * Constructs an AssetWatcher.
+     *
+     * @param directory resource directory to watch
+     * @throws IOException if the directory cannot be watched
+     */
+    private AssetWatcher(Path directory) throws IOException {
+        this.directory = directory;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Starts watching the resource directory if development mode is enabled.
+     */
+    public static void startIfEnabled() {
+        if (!Boolean.getBoolean(ENABLE_PROPERTY)) {
+            return;
+        }
+
+        Path directory = ResourceLoader.getInstance().getResourceDirectory();
+        if (directory == null) {
+            System.err.println("Hot reload needs resources on disk, not in a jar");
+            return;
+        }
+
+        try {
+            Thread thread = new Thread(new AssetWatcher(directory), "asset-watcher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+            System.out.println("Watching " + directory + " for asset changes");
+        } catch (IOException e) {
+            System.err.println("Could not watch " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Watch loop. Collects change events and reloads each file once it has settled.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(DEBOUNCE_TIME, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            continue;
+                        }
+                        Path changed = (Path) event.context();
+                        pendingChanges.put(changed.getFileName().toString(), System.currentTimeMillis());
+                    }
+                    key.reset();
+                }
+                reloadSettledChanges();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watching stops with the game
+        }
+    }
+
+    /**
+     * Reloads every pending change that has been quiet for at least DEBOUNCE_TIME.
+     */
+    private void reloadSettledChanges() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> iterator = pendingChanges.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> change = iterator.next();
+            if (now - change.getValue() >= DEBOUNCE_TIME) {
+                iterator.remove();
+                if (ResourceLoader.getInstance().reload(change.getKey())) {
+                    System.out.println("Reloaded " + directory.resolve(change.getKey()));
+                }
+            }
+        }
+    }
+}
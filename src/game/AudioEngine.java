@@ -0,0 +1,318 @@
+package game;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Software mixer that plays every game sound through a single SourceDataLine.
+ * <p>
+ * One mixer thread owns a fixed set of voices. Other threads never touch the voices directly,
+ * they post commands to a lock-free queue that the mixer drains before each buffer.
+ */
+public class AudioEngine implements Runnable {
+
+    public static final float SAMPLE_RATE = 44100f;
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+
+    private static final int MAX_VOICES = 16;
+    private static final int FRAMES_PER_BUFFER = 512; // ~11.6 ms per mix
+    private static final int LINE_BUFFERS = 4;
+
+    private static AudioEngine instance = new AudioEngine();
+
+    /**
+     * A request from the game to the mixer thread.
+     */
+    private static class Command {
+        static final int PLAY = 0;
+        static final int STOP = 1;
+        static final int STOP_ALL = 2;
+
+        int type;
+        int handle;
+        short[] samples;
+        float gain;
+        boolean loop;
+    }
+
+    /**
+     * A single playing sound owned by the mixer thread.
+     */
+    private static class Voice {
+        boolean active;
+        int handle;
+        short[] samples;
+        int position;
+        float gain;
+        boolean loop;
+        long startedAt;
+    }
+
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextHandle = new AtomicInteger(1);
+    private final Voice[] voices = new Voice[MAX_VOICES];
+    private final int[] mixBuffer = new int[FRAMES_PER_BUFFER];
+    private final byte[] outBuffer = new byte[FRAMES_PER_BUFFER * 2];
+
+    private volatile MusicStream music;
+    private volatile float musicGain = 1f;
+
+    private SourceDataLine line;
+    private Thread mixerThread;
+    private volatile boolean running = false;
+    private long voiceCounter = 0;
+
+    /**
+     * Constructs an AudioEngine.
+     */
+    private AudioEngine() {
+        for (int i = 0; i < voices.length; i++) {
+            voices[i] = new Voice();
+        }
+    }
+
+    /**
+     * Get value for instance
+     *
+     * @return the shared audio engine
+     */
+    public static AudioEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens the output line and starts the mixer thread. Does nothing if already started.
+     * If no audio device is available the engine stays silent and drops all commands.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, FRAMES_PER_BUFFER * 2 * LINE_BUFFERS);
+            line.start();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Could not open audio line: " + e.getMessage());
+            line = null;
+            return;
+        }
+
+        running = true;
+        mixerThread = new Thread(this, "audio-mixer");
+        mixerThread.setDaemon(true);
+        mixerThread.setPriority(Thread.MAX_PRIORITY);
+        mixerThread.start();
+    }
+
+    /**
+     * Stops the mixer thread and releases the output line.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            mixerThread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.stop();
+        line.close();
+        commands.clear();
+    }
+
+    /**
+     * Plays a sound once.
+     *
+     * @param samples 16 bit mono PCM data in FORMAT
+     * @param gain    volume multiplier, 1 is unchanged
+     * @return handle of the new voice, or 0 if the engine is not running
+     */
+    public int play(short[] samples, float gain) {
+        return post(samples, gain, false);
+    }
+
+    /**
+     * Plays a sound repeatedly until it is stopped.
+     *
+     * @param samples 16 bit mono PCM data in FORMAT
+     * @param gain    volume multiplier, 1 is unchanged
+     * @return handle of the new voice, or 0 if the engine is not running
+     */
+    public int loop(short[] samples, float gain) {
+        return post(samples, gain, true);
+    }
+
+    /**
+     * Stops a voice started by play or loop.
+     *
+     * @param handle voice handle
+     */
+    public void stop(int handle) {
+        if (!running || handle == 0) {
+            return;
+        }
+        Command command = new Command();
+        command.type = Command.STOP;
+        command.handle = handle;
+        commands.offer(command);
+    }
+
+    /**
+     * Stops every voice.
+     */
+    public void stopAll() {
+        if (!running) {
+            return;
+        }
+        Command command = new Command();
+        command.type = Command.STOP_ALL;
+        commands.offer(command);
+    }
+
+    /**
+     * Sets the streamed music track mixed under the sound effects. Passing null silences music.
+     *
+     * @param stream music stream to mix, already started
+     * @param gain   volume multiplier, 1 is unchanged
+     */
+    public void setMusic(MusicStream stream, float gain) {
+        musicGain = gain;
+        music = stream;
+    }
+
+    /**
+     * Queues a PLAY command for the mixer thread.
+     */
+    private int post(short[] samples, float gain, boolean loop) {
+        if (!running || samples == null || samples.length == 0) {
+            return 0;
+        }
+        Command command = new Command();
+        command.type = Command.PLAY;
+        command.handle = nextHandle.getAndIncrement();
+        command.samples = samples;
+        command.gain = gain;
+        command.loop = loop;
+        commands.offer(command);
+        return command.handle;
+    }
+
+    /**
+     * Mixer loop. Writing to the line blocks once its buffer is full, which paces the loop.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            drainCommands();
+            mix();
+            line.write(outBuffer, 0, outBuffer.length);
+        }
+    }
+
+    /**
+     * Applies all pending commands to the voices.
+     */
+    private void drainCommands() {
+        Command command;
+        while ((command = commands.poll()) != null) {
+            switch (command.type) {
+                case Command.PLAY:
+                    Voice voice = allocateVoice();
+                    voice.active = true;
+                    voice.handle = command.handle;
+                    voice.samples = command.samples;
+                    voice.position = 0;
+                    voice.gain = command.gain;
+                    voice.loop = command.loop;
+                    voice.startedAt = voiceCounter++;
+                    break;
+                case Command.STOP:
+                    for (Voice v : voices) {
+                        if (v.active && v.handle == command.handle) {
+                            v.active = false;
+                        }
+                    }
+                    break;
+                case Command.STOP_ALL:
+                    for (Voice v : voices) {
+                        v.active = false;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Finds a free voice, or steals the oldest one-shot voice when all are busy.
+     * Looping voices are only stolen if nothing else is playing.
+     *
+     * @return voice to reuse
+     */
+    private Voice allocateVoice() {
+        Voice oldest = null;
+        Voice oldestLooping = null;
+        for (Voice v : voices) {
+            if (!v.active) {
+                return v;
+            }
+            if (v.loop) {
+                if (oldestLooping == null || v.startedAt < oldestLooping.startedAt) {
+                    oldestLooping = v;
+                }
+            } else if (oldest == null || v.startedAt < oldest.startedAt) {
+                oldest = v;
+            }
+        }
+        return oldest != null ? oldest : oldestLooping;
+    }
+
+    /**
+     * Mixes one buffer from all active voices into outBuffer.
+     */
+    private void mix() {
+        Arrays.fill(mixBuffer, 0);
+
+        for (Voice v : voices) {
+            if (!v.active) {
+                continue;
+            }
+            short[] samples = v.samples;
+            int gain = (int) (v.gain * 256);
+            for (int i = 0; i < FRAMES_PER_BUFFER; i++) {
+                if (v.position >= samples.length) {
+                    if (!v.loop) {
+                        v.active = false;
+                        break;
+                    }
+                    v.position = 0;
+                }
+                mixBuffer[i] += (samples[v.position++] * gain) >> 8;
+            }
+        }
+
+        MusicStream stream = music;
+        if (stream != null) {
+            stream.mixInto(mixBuffer, FRAMES_PER_BUFFER, (int) (musicGain * 256));
+        }
+
+        for (int i = 0; i < FRAMES_PER_BUFFER; i++) {
+            int sample = mixBuffer[i];
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            outBuffer[2 * i] = (byte) sample;
+            outBuffer[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+}
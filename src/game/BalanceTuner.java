@@ -0,0 +1,362 @@
+package game;
+
+import actors.Player;
+import actors.SpawnTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sweeps spawn timings over many simulated games to see how they change difficulty and coin income.
+ * <p>
+ * Usage: java game.BalanceTuner [--sessions N] [--minutes M] [--tick-scale T] [--autopilot] [setting=v1,v2,...]...
+ * <p>
+ * Settings are spawn stream timings from spawns.txt, written stream.timing with timing one of
+ * firstMin, firstMax, min or max, such as moose.min=4000,5000. Every combination of
+ * the listed values plays N headless games with a scripted driver, split across all cores with a
+ * ForkJoinPool, and its statistics are printed as soon as it finishes. Every combination plays the
+ * same seeds, so differences come from the settings rather than luck. Each controller plays with its
+ * own SessionInventory, so games on different threads never share state. The driver weaves
+ * between random points on the road and never uses powerups, so only the spawn settings change
+ * the results.
+ * <p>
+ * With --tick-scale T every update covers T ticks of game time, with continuous collision so fast
+ * obstacles still hit. This runs close to T times faster, at the cost of coarser steering and
+ * spawn timing.
+ * <p>
+ * With --autopilot the Autopilot plays instead of the scripted driver, collecting pickups and
+ * using the powerups it collects, which shows how the settings play for a skilled player.
+ */
+public class BalanceTuner {
+
+    private static final int DEFAULT_SESSIONS = 1000;
+    private static final int DEFAULT_MAX_MINUTES = 10;
+    private static final int SESSIONS_PER_TASK = 8;
+    private static final long BASE_SEED = 0x4D4F4F5345L;
+
+    // Range of x the driver aims for, inside the edges where checkCollision damages the player
+    private static final int ROAD_LEFT = 100;
+    private static final int ROAD_RIGHT = MooseGame.WIDTH - 175;
+    private static final int STEER_DEADBAND = 6;
+    private static final int MIN_TARGET_TICKS = 20;
+    private static final int MAX_TARGET_TICKS = 90;
+
+    /**
+     * Constructs a BalanceTuner.
+     */
+    private BalanceTuner() {
+    }
+
+    /**
+     * Statistics of the games played with one configuration.
+     */
+    static class Stats {
+        private static final int HISTOGRAM_SIZE = 1000;
+
+        private int sessions = 0;
+        private int timeouts = 0;
+        private long scoreSum = 0;
+        private long scoreSquareSum = 0;
+        private int maxScore = 0;
+        private long survivalMillis = 0;
+        private long coins = 0;
+        // Games per score, the last bucket also counts every higher score
+        private final int[] scoreHistogram = new int[HISTOGRAM_SIZE];
+
+        /**
+         * Adds one game.
+         *
+         * @param score          final score
+         * @param survivalMillis game time survived in milliseconds
+         * @param coins          coins picked up
+         * @param timedOut       whether the game was stopped before game over
+         */
+        void add(int score, long survivalMillis, int coins, boolean timedOut) {
+            sessions++;
+            timeouts += timedOut ? 1 : 0;
+            scoreSum += score;
+            scoreSquareSum += (long) score * score;
+            maxScore = Math.max(maxScore, score);
+            this.survivalMillis += survivalMillis;
+            this.coins += coins;
+            scoreHistogram[Math.min(score, HISTOGRAM_SIZE - 1)]++;
+        }
+
+        /**
+         * Adds every game of another Stats.
+         *
+         * @param other statistics to merge in
+         */
+        void merge(Stats other) {
+            sessions += other.sessions;
+            timeouts += other.timeouts;
+            scoreSum += other.scoreSum;
+            scoreSquareSum += other.scoreSquareSum;
+            maxScore = Math.max(maxScore, other.maxScore);
+            survivalMillis += other.survivalMillis;
+            coins += other.coins;
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                scoreHistogram[i] += other.scoreHistogram[i];
+            }
+        }
+
+        /**
+         * Gets a score percentile.
+         *
+         * @param fraction percentile between 0 and 1
+         * @return lowest score reached by at least that fraction of games
+         */
+        int scorePercentile(double fraction) {
+            long wanted = (long) Math.ceil(fraction * sessions);
+            long seen = 0;
+            for (int score = 0; score < HISTOGRAM_SIZE; score++) {
+                seen += scoreHistogram[score];
+                if (seen >= wanted) {
+                    return score;
+                }
+            }
+            return HISTOGRAM_SIZE - 1;
+        }
+
+        /**
+         * Gets the mean score.
+         *
+         * @return mean score
+         */
+        double meanScore() {
+            return sessions == 0 ? 0 : (double) scoreSum / sessions;
+        }
+
+        /**
+         * Gets the standard deviation of the score.
+         *
+         * @return standard deviation
+         */
+        double scoreDeviation() {
+            if (sessions == 0) {
+                return 0;
+            }
+            double mean = meanScore();
+            return Math.sqrt(Math.max(0, (double) scoreSquareSum / sessions - mean * mean));
+        }
+
+        /**
+         * Gets the mean survival time.
+         *
+         * @return seconds of game time
+         */
+        double meanSurvivalSeconds() {
+            return sessions == 0 ? 0 : survivalMillis / 1000.0 / sessions;
+        }
+
+        /**
+         * Gets the coin income.
+         *
+         * @return coins per minute of game time
+         */
+        double coinsPerMinute() {
+            return survivalMillis == 0 ? 0 : coins * 60000.0 / survivalMillis;
+        }
+    }
+
+    /**
+     * Plays a range of sessions, splitting it in half until each part is small.
+     */
+    static class SessionBatch extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+
+        private final SpawnTable table;
+        private final int from;
+        private final int to;
+        private final int maxTicks;
+        private final int tickScale;
+        private final boolean autopilot;
+
+        /**
+         * Constructs a SessionBatch.
+         *
+         * @param table    spawn table to play with
+         * @param from     first session number
+         * @param to       session number after the last
+         * @param maxTicks  updates after which a game is stopped
+         * @param tickScale game ticks per update
+         * @param autopilot whether the Autopilot drives instead of the scripted driver
+         */
+        SessionBatch(SpawnTable table, int from, int to, int maxTicks, int tickScale, boolean autopilot) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+            this.maxTicks = maxTicks;
+            this.tickScale = tickScale;
+            this.autopilot = autopilot;
+        }
+
+        /**
+         * Plays the sessions, or splits them between two subtasks.
+         *
+         * @return statistics of every session in the range
+         */
+        @Override
+        protected Stats compute() {
+            if (to - from > SESSIONS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                SessionBatch left = new SessionBatch(table, from, middle, maxTicks, tickScale, autopilot);
+                left.fork();
+                Stats stats = new SessionBatch(table, middle, to, maxTicks, tickScale, autopilot).compute();
+                stats.merge(left.join());
+                return stats;
+            }
+
+            Stats stats = new Stats();
+            GameplayController controller = new GameplayController(null);
+            controller.setSpawnTable(table);
+            controller.setTickScale(tickScale);
+            controller.setAutopilot(autopilot);
+            Random driver = new Random();
+            for (int session = from; session < to; session++) {
+                play(controller, driver, BASE_SEED + session, stats);
+            }
+            return stats;
+        }
+
+        /**
+         * Plays one game until game over or maxTicks.
+         *
+         * @param controller controller to reuse
+         * @param driver     random source for the scripted driver
+         * @param seed       seed of the game
+         * @param stats      statistics to add the game to
+         */
+        private void play(GameplayController controller, Random driver, long seed, Stats stats) {
+            controller.reset(seed);
+            driver.setSeed(~seed);
+            Player player = controller.getPlayer();
+
+            int target = MooseGame.WIDTH / 2;
+            int targetTicks = 0;
+            long survivalMillis = 0;
+            int ticks = 0;
+            // Same order as MooseGame.game(): collisions, then update
+            while (ticks < maxTicks) {
+                if (--targetTicks <= 0) {
+                    target = ROAD_LEFT + driver.nextInt(ROAD_RIGHT - ROAD_LEFT);
+                    targetTicks = (MIN_TARGET_TICKS + driver.nextInt(MAX_TARGET_TICKS - MIN_TARGET_TICKS)) / tickScale;
+                }
+                if (!autopilot) {
+                    int x = player.getX();
+                    int deadband = STEER_DEADBAND * tickScale;
+                    player.holdInput(x < target - deadband ? Player.INPUT_RIGHT
+                            : x > target + deadband ? Player.INPUT_LEFT : 0);
+                }
+
+                controller.checkCollision();
+                if (controller.isGameOver()) {
+                    break;
+                }
+                survivalMillis += controller.getTickMillis();
+                controller.update();
+                ticks++;
+            }
+            stats.add(controller.getScore(), survivalMillis, controller.getCoinsPickedUp(), ticks == maxTicks);
+        }
+    }
+
+    /**
+     * Plays every configuration and prints its statistics.
+     *
+     * @param args options and settings to sweep
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int sessions = DEFAULT_SESSIONS;
+        int maxMinutes = DEFAULT_MAX_MINUTES;
+        int tickScale = 1;
+        boolean autopilot = false;
+        List<SpawnTable> configs = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        configs.add(SpawnTable.getDefault().copy());
+        labels.add("");
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--sessions")) {
+                    sessions = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--minutes")) {
+                    maxMinutes = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--tick-scale")) {
+                    tickScale = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--autopilot")) {
+                    autopilot = true;
+                } else {
+                    sweep(args[i], configs, labels);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Bad argument: " + e.getMessage());
+            System.err.println("Usage: java game.BalanceTuner [--sessions N] [--minutes M] [--tick-scale T] [--autopilot] [setting=v1,v2,...]...");
+            System.exit(2);
+            return;
+        }
+
+        tickScale = Math.max(1, tickScale);
+        int maxTicks = maxMinutes * 60 * MooseGame.DESIRED_FPS / tickScale;
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("%d sessions per configuration on %d threads, stopped after %d minutes%n",
+                sessions, pool.getParallelism(), maxMinutes);
+        System.out.printf("%-8s %-8s %5s %5s %5s %5s %9s %9s %7s %7s  %s%n", "mean", "stddev", "p10", "p50",
+                "p90", "max", "survived", "coins/min", "truck", "atv", "configuration");
+
+        for (int i = 0; i < configs.size(); i++) {
+            long start = System.nanoTime();
+            Stats stats = pool.invoke(new SessionBatch(configs.get(i), 0, sessions, maxTicks, tickScale, autopilot));
+            long elapsed = (System.nanoTime() - start) / 1000000;
+
+            double coinsPerMinute = stats.coinsPerMinute();
+            System.out.printf("%-8.1f %-8.1f %5d %5d %5d %5d %8.1fs %9.1f %6.0fm %6.0fm  %s (%d ms%s)%n",
+                    stats.meanScore(), stats.scoreDeviation(), stats.scorePercentile(0.1),
+                    stats.scorePercentile(0.5), stats.scorePercentile(0.9), stats.maxScore,
+                    stats.meanSurvivalSeconds(), coinsPerMinute,
+                    StoreController.TRUCK_COST / coinsPerMinute, StoreController.ATV_COST / coinsPerMinute,
+                    labels.get(i).isEmpty() ? "defaults" : labels.get(i).trim(), elapsed,
+                    stats.timeouts > 0 ? ", " + stats.timeouts + " timed out" : "");
+        }
+
+        pool.shutdown();
+    }
+
+    /**
+     * Replaces every configuration with one copy per value of a setting.
+     *
+     * @param argument setting=v1,v2,...
+     * @param configs  configurations so far, replaced in place
+     * @param labels   description of each configuration, replaced in place
+         */
+    private static void sweep(String argument, List<SpawnTable> configs, List<String> labels) {
+        int split = argument.indexOf('=');
+        if (split <= 0) {
+            throw new IllegalArgumentException(argument);
+        }
+        String key = argument.substring(0, split);
+        String[] values = argument.substring(split + 1).split(",");
+
+        List<SpawnTable> sweptConfigs = new ArrayList<>();
+        List<String> sweptLabels = new ArrayList<>();
+        for (int i = 0; i < configs.size(); i++) {
+            for (String value : values) {
+                SpawnTable config = configs.get(i).copy();
+                config.setTiming(key, Integer.parseInt(value.trim()));
+                sweptConfigs.add(config);
+                sweptLabels.add(labels.get(i) + " " + key + "=" + value.trim());
+            }
+        }
+        configs.clear();
+        configs.addAll(sweptConfigs);
+        labels.clear();
+        labels.addAll(sweptLabels);
+    }
+}
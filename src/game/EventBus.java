@@ -0,0 +1,201 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Carries gameplay events from the simulation to the code that reacts to them, so collisions and
+ * deaths only publish what happened instead of playing sounds or saving inline.
+ * <p>
+ * Events go into a preallocated ring with one producer, the simulation thread. Each subscriber
+ * reads the ring at its own cursor and is handed every event in order, in batches. Synchronous
+ * subscribers are drained on the simulation thread by dispatch, for reactions the simulation
+ * depends on, such as the powerup counts. Asynchronous subscribers are drained by one background
+ * thread, for sound, saving and analytics. Publishing only blocks if an asynchronous subscriber
+ * falls a whole ring behind.
+ * <p>
+ * Subscribers are added while setting up, and only see events published after they were added.
+ */
+public class EventBus {
+
+    /**
+     * Kinds of gameplay event. The meaning of the two int values depends on the kind.
+     */
+    public enum Type {
+        // coins picked up so far, unused
+        COIN_COLLECTED,
+        // SpawnTable effect of the pickup, unused
+        POWERUP_COLLECTED,
+        // archetype of the obstacle hit or -1 when the player left the road, time of impact in
+        // IMPACT_SCALE parts of the swept ticks (IMPACT_SCALE when not swept)
+        PLAYER_HIT,
+        // final score, coins picked up; the attachment is the game's Replay, or null
+        PLAYER_DIED,
+        // SpawnTable effect of the powerup, unused
+        POWERUP_ACTIVATED
+    }
+
+    /**
+     * Reacts to gameplay events.
+     */
+    public interface Subscriber {
+
+        /**
+         * Handles one event.
+         *
+         * @param type       kind of event
+         * @param a          first value
+         * @param b          second value
+         * @param attachment object passed with the event, or null
+         */
+        void onEvent(Type type, int a, int b, Object attachment);
+
+        /**
+         * Called after each batch of events.
+         */
+        default void endOfBatch() {
+        }
+    }
+
+    public static final int IMPACT_SCALE = 1000;
+
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+    private final Type[] types = new Type[CAPACITY];
+    private final int[] as = new int[CAPACITY];
+    private final int[] bs = new int[CAPACITY];
+    private final Object[] attachments = new Object[CAPACITY];
+
+    // Next sequence to write, only touched by the producer
+    private long next = 0;
+    // Sequence after the last published event
+    private final AtomicLong published = new AtomicLong(0);
+
+    private final List<Subscriber> syncSubscribers = new ArrayList<>();
+    private long[] syncCursors = new long[0];
+
+    private final List<Subscriber> asyncSubscribers = new ArrayList<>();
+    private volatile AtomicLong[] asyncCursors = new AtomicLong[0];
+    private volatile Thread drainThread;
+
+    /**
+     * Adds a subscriber drained on the simulation thread by dispatch.
+     *
+     * @param subscriber subscriber
+     */
+    public void subscribe(Subscriber subscriber) {
+        syncSubscribers.add(subscriber);
+        syncCursors = Arrays.copyOf(syncCursors, syncSubscribers.size());
+        syncCursors[syncCursors.length - 1] = next;
+    }
+
+    /**
+     * Adds a subscriber drained on the background thread, starting the thread if needed.
+     *
+     * @param subscriber subscriber
+     */
+    public synchronized void subscribeAsync(Subscriber subscriber) {
+        asyncSubscribers.add(subscriber);
+        AtomicLong[] cursors = Arrays.copyOf(asyncCursors, asyncSubscribers.size());
+        cursors[cursors.length - 1] = new AtomicLong(published.get());
+        asyncCursors = cursors;
+        if (drainThread == null) {
+            Thread thread = new Thread(this::drainLoop, "event-bus");
+            thread.setDaemon(true);
+            drainThread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Publishes an event. Only called from the simulation thread. Does not allocate.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment object to pass with the event, or null
+     */
+    public void publish(Type type, int a, int b, Object attachment) {
+        for (int i = 0; i < syncCursors.length; i++) {
+            if (next - syncCursors[i] >= CAPACITY) {
+                dispatch();
+            }
+        }
+        for (AtomicLong cursor : asyncCursors) {
+            while (next - cursor.get() >= CAPACITY) {
+                LockSupport.unpark(drainThread);
+                Thread.yield();
+            }
+        }
+
+        int slot = (int) next & MASK;
+        types[slot] = type;
+        as[slot] = a;
+        bs[slot] = b;
+        attachments[slot] = attachment;
+        next++;
+        published.lazySet(next);
+
+        Thread thread = drainThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Hands every event published since the last dispatch to the synchronous subscribers.
+     */
+    public void dispatch() {
+        for (int i = 0; i < syncCursors.length; i++) {
+            if (syncCursors[i] != next) {
+                syncCursors[i] = drain(syncSubscribers.get(i), syncCursors[i], next);
+            }
+        }
+    }
+
+    /**
+     * Hands a subscriber every event between two sequences as one batch.
+     *
+     * @return sequence after the last event handled
+     */
+    private long drain(Subscriber subscriber, long from, long to) {
+        for (long sequence = from; sequence < to; sequence++) {
+            int slot = (int) sequence & MASK;
+            subscriber.onEvent(types[slot], as[slot], bs[slot], attachments[slot]);
+        }
+        subscriber.endOfBatch();
+        return to;
+    }
+
+    /**
+     * Background thread loop draining the asynchronous subscribers, parked while there is nothing
+     * new.
+     */
+    private void drainLoop() {
+        while (true) {
+            long available = published.get();
+            boolean idle = true;
+            AtomicLong[] cursors = asyncCursors;
+            for (int i = 0; i < cursors.length; i++) {
+                long cursor = cursors[i].get();
+                if (cursor != available) {
+                    try {
+                        drain(asyncSubscribers.get(i), cursor, available);
+                    } catch (RuntimeException e) {
+                        System.err.println("Event subscriber failed: " + e);
+                    }
+                    cursors[i].lazySet(available);
+                    idle = false;
+                }
+            }
+            if (idle) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
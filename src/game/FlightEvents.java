@@ -0,0 +1,248 @@
+package game;
+
+import actors.EntityWorld;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for frames, spawns, collisions, screen changes, saves and asset
+ * loads, so a recording lines up GC, JIT and OS stalls with game frames.
+ * <p>
+ * Start a recording with -XX:StartFlightRecording=filename=moose.jfr or jcmd PID JFR.start and
+ * open it in JDK Mission Control, where the events are under Moose Game. When nothing is recording
+ * each call costs one check of a flag and allocates nothing: the frequent events are only created
+ * once a probe instance reports its type enabled.
+ */
+public class FlightEvents {
+
+    private static final String CATEGORY = "Moose Game";
+
+    /**
+     * One frame of the game loop, lasting from the start of its work to the end of painting.
+     */
+    @Name("moosegame.Frame")
+    @Label("Frame")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class FrameEvent extends Event {
+        @Label("Tick")
+        int tick;
+
+        @Label("Collision Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long collision;
+
+        @Label("Update Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long update;
+
+        @Label("Paint Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long paint;
+
+        @Label("Obstacles")
+        int obstacles;
+
+        @Label("Pickups")
+        int pickups;
+
+        @Label("Entity Budget")
+        int budget;
+    }
+
+    /**
+     * An obstacle or pickup spawned by a stream.
+     */
+    @Name("moosegame.Spawn")
+    @Label("Spawn")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class SpawnEvent extends Event {
+        @Label("Archetype")
+        String archetype;
+
+        @Label("Stream")
+        String stream;
+
+        @Label("Pool Hit")
+        @Description("Whether the entity took a free row rather than growing the component arrays")
+        boolean poolHit;
+    }
+
+    /**
+     * The player hitting an obstacle or collecting a pickup.
+     */
+    @Name("moosegame.Collision")
+    @Label("Collision")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class CollisionEvent extends Event {
+        @Label("Kind")
+        String kind;
+
+        @Label("Archetype")
+        String archetype;
+
+        @Label("Swept")
+        @Description("Whether the collision was found by sweeping motion over several ticks")
+        boolean swept;
+
+        @Label("Impact Time")
+        @Description("When during the swept ticks the boxes met, from 0 at their start to 1 at the end")
+        double impactTime;
+    }
+
+    /**
+     * The window changing screen.
+     */
+    @Name("moosegame.StateTransition")
+    @Label("State Transition")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class StateEvent extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+    }
+
+    /**
+     * A write of the save journal or of a whole file.
+     */
+    @Name("moosegame.Save")
+    @Label("Save")
+    @Category(CATEGORY)
+    public static class SaveEvent extends Event {
+        @Label("Target")
+        String target;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * A sprite, collision mask or sound decoded from the resources.
+     */
+    @Name("moosegame.AssetLoad")
+    @Label("Asset Load")
+    @Category(CATEGORY)
+    public static class AssetLoadEvent extends Event {
+        @Label("Asset")
+        String name;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Loaded")
+        @Description("False if the asset could not be decoded")
+        boolean loaded;
+    }
+
+    // Never committed, only asked whether their types are enabled
+    private static final FrameEvent FRAME_PROBE = new FrameEvent();
+    private static final SpawnEvent SPAWN_PROBE = new SpawnEvent();
+    private static final CollisionEvent COLLISION_PROBE = new CollisionEvent();
+
+    /**
+     * Constructs FlightEvents.
+     */
+    private FlightEvents() {
+    }
+
+    /**
+     * Starts timing a frame.
+     *
+     * @return frame event to pass to endFrame, or null when frames are not recorded
+     */
+    public static FrameEvent beginFrame() {
+        if (!FRAME_PROBE.isEnabled()) {
+            return null;
+        }
+        FrameEvent frame = new FrameEvent();
+        frame.begin();
+        return frame;
+    }
+
+    /**
+     * Ends and commits a frame.
+     *
+     * @param frame      event from beginFrame, or null
+     * @param controller game played in the frame
+     * @param paintNanos time spent painting
+     */
+    public static void endFrame(FrameEvent frame, GameplayController controller, long paintNanos) {
+        if (frame == null) {
+            return;
+        }
+        frame.end();
+        if (frame.shouldCommit()) {
+            frame.tick = controller.getTick();
+            frame.collision = controller.getCollisionNanos();
+            frame.update = controller.getUpdateNanos();
+            frame.paint = paintNanos;
+            frame.obstacles = controller.getWorld().countAlive(EntityWorld.OBSTACLE);
+            frame.pickups = controller.getWorld().countAlive(EntityWorld.PICKUP);
+            frame.budget = controller.getEntityBudget();
+            frame.commit();
+        }
+    }
+
+    /**
+     * Records a spawn.
+     *
+     * @param archetype archetype name
+     * @param stream    stream name
+     * @param poolHit   whether a free row was used
+     */
+    public static void spawn(String archetype, String stream, boolean poolHit) {
+        if (SPAWN_PROBE.isEnabled()) {
+            SpawnEvent event = new SpawnEvent();
+            event.archetype = archetype;
+            event.stream = stream;
+            event.poolHit = poolHit;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a collision.
+     *
+     * @param kind      "obstacle" or "pickup"
+     * @param archetype archetype name
+     * @param swept      whether motion was swept
+     * @param impactTime fraction of the swept ticks at which they met, 1 if not swept
+     */
+    public static void collision(String kind, String archetype, boolean swept, double impactTime) {
+        if (COLLISION_PROBE.isEnabled()) {
+            CollisionEvent event = new CollisionEvent();
+            event.kind = kind;
+            event.archetype = archetype;
+            event.swept = swept;
+            event.impactTime = impactTime;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a screen change.
+     *
+     * @param from screen left, or null at startup
+     * @param to   screen shown
+     */
+    public static void stateTransition(MooseGame.gameStates from, MooseGame.gameStates to) {
+        StateEvent event = new StateEvent();
+        if (event.shouldCommit()) {
+            event.from = from == null ? null : from.name();
+            event.to = to.name();
+            event.commit();
+        }
+    }
+}
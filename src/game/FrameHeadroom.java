@@ -0,0 +1,78 @@
+package game;
+
+import actors.DifficultyDirector;
+
+/**
+ * Measures how frame time grows with the number of entities, to choose the entity budget of the
+ * next game.
+ * <p>
+ * Each gameplay frame adds its work time (tick and paint, without the sleep) and its entity count
+ * to exponentially decaying sums, from which a least squares line gives a fixed cost per frame and
+ * a cost per entity. The budget is the entity count at which the line reaches TARGET_SHARE of a
+ * frame, so the rest of the frame is left for garbage collection and slower frames. When entity
+ * counts have been too similar to fit a line, every nanosecond is charged to the entities, which
+ * underestimates the budget rather than overestimating it. The budget at most doubles or halves
+ * from one game to the next.
+ */
+public class FrameHeadroom {
+
+    private static final double FRAME_NANOS = 1e9 / MooseGame.DESIRED_FPS;
+    private static final double TARGET_SHARE = 0.5;
+    // Weight kept per frame, about twenty seconds of memory at 60 frames per second
+    private static final double DECAY = 0.999;
+    private static final int MIN_SAMPLES = 10 * MooseGame.DESIRED_FPS;
+    private static final double MIN_ENTITY_VARIANCE = 4;
+
+    private double weight = 0;
+    private double sumEntities = 0;
+    private double sumNanos = 0;
+    private double sumEntitiesSquared = 0;
+    private double sumEntitiesNanos = 0;
+    private int samples = 0;
+    private int budget = DifficultyDirector.DEFAULT_ENTITY_BUDGET;
+
+    /**
+     * Adds one gameplay frame.
+     *
+     * @param workNanos time spent on the frame before sleeping
+     * @param entities  entities in play during the frame
+     */
+    public void sample(long workNanos, int entities) {
+        weight = weight * DECAY + 1;
+        sumEntities = sumEntities * DECAY + entities;
+        sumNanos = sumNanos * DECAY + workNanos;
+        sumEntitiesSquared = sumEntitiesSquared * DECAY + (double) entities * entities;
+        sumEntitiesNanos = sumEntitiesNanos * DECAY + (double) entities * workNanos;
+        samples++;
+    }
+
+    /**
+     * Gets the entity budget for the next game from the frames measured so far.
+     *
+     * @return live entity limit
+     */
+    public int getEntityBudget() {
+        if (samples < MIN_SAMPLES) {
+            return budget;
+        }
+        double meanEntities = sumEntities / weight;
+        double meanNanos = sumNanos / weight;
+        double variance = sumEntitiesSquared / weight - meanEntities * meanEntities;
+        double covariance = sumEntitiesNanos / weight - meanEntities * meanNanos;
+
+        double perEntity;
+        double fixed;
+        if (variance >= MIN_ENTITY_VARIANCE && covariance > 0) {
+            perEntity = covariance / variance;
+            fixed = Math.max(0, meanNanos - perEntity * meanEntities);
+        } else {
+            perEntity = meanNanos / Math.max(1, meanEntities);
+            fixed = 0;
+        }
+
+        double fit = (FRAME_NANOS * TARGET_SHARE - fixed) / perEntity;
+        budget = (int) Math.max(budget / 2, Math.min(budget * 2, fit));
+        budget = Math.max(DifficultyDirector.MIN_ENTITY_BUDGET, Math.min(DifficultyDirector.MAX_ENTITY_BUDGET, budget));
+        return budget;
+    }
+}
@@ -0,0 +1,195 @@
+package game;
+
+import actors.ObservationEncoder;
+import actors.Player;
+import actors.SpawnTable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lets an agent play headless games through reset and step, for reinforcement learning.
+ * <p>
+ * An action is the input of one update: Player.INPUT_LEFT and INPUT_RIGHT to steer, and
+ * GameplayController.INPUT_FOG_LIGHTS, INPUT_INVINCIBILITY and INPUT_SLOW_MOTION to use a powerup,
+ * so there are 32 actions. The reward of a step is the change in score plus the coins picked up,
+ * less HIT_PENALTY each time the player is hit. An episode ends when the player dies or after the
+ * step limit.
+ * <p>
+ * Observations are written at a byte offset of a caller's buffer, in the buffer's byte order,
+ * without moving its position. FEATURES observations are floats: PLAYER_FEATURES describing the
+ * player (x, y, health, the three effects active, the three powerup counts and the fog), then a
+ * row per entity as ObservationEncoder describes. RASTER observations are the encoder's three
+ * byte planes. Stepping does not allocate, so VectorEnvironment can run many of these at once.
+ */
+public class GameEnvironment {
+
+    /**
+     * Kinds of observation.
+     */
+    public enum Observation {
+        FEATURES,
+        RASTER
+    }
+
+    public static final int PLAYER_FEATURES = 10;
+    public static final int HIT_PENALTY = 5;
+
+    private static final int DEFAULT_STEP_LIMIT = 10 * 60 * MooseGame.DESIRED_FPS;
+
+    private final GameplayController controller;
+    private final ObservationEncoder encoder;
+    private final Observation observation;
+    private final int size;
+
+    private int fogLights = 0;
+    private int invincibility = 0;
+    private int slowMotion = 0;
+    private int stepLimit = DEFAULT_STEP_LIMIT;
+    private int steps = 0;
+
+    /**
+     * Constructs a GameEnvironment.
+     *
+     * @param observation kind of observation
+     * @param size        entity rows for FEATURES, or cells along each side for RASTER
+     */
+    public GameEnvironment(Observation observation, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Observation size must be positive: " + size);
+        }
+        this.observation = observation;
+        this.size = size;
+        controller = new GameplayController(null);
+        encoder = new ObservationEncoder(controller.getWorld(), controller.getSpawnTable());
+    }
+
+    /**
+     * Sets the powerups each episode starts with.
+     *
+     * @param fogLights     fog lights count
+     * @param invincibility invincibility count
+     * @param slowMotion    slow motion count
+     */
+    public void setPowerups(int fogLights, int invincibility, int slowMotion) {
+        this.fogLights = fogLights;
+        this.invincibility = invincibility;
+        this.slowMotion = slowMotion;
+    }
+
+    /**
+     * Sets the archetypes and spawn streams used from the next reset, as
+     * GameplayController.setSpawnTable.
+     *
+     * @param table spawn table
+     */
+    public void setSpawnTable(SpawnTable table) {
+        controller.setSpawnTable(table);
+    }
+
+    /**
+     * Sets the game ticks covered by each step, as GameplayController.setTickScale.
+     *
+     * @param ticks game ticks per step
+     */
+    public void setTickScale(int ticks) {
+        controller.setTickScale(ticks);
+    }
+
+    /**
+     * Sets the steps after which an episode ends if the player is still alive.
+     *
+     * @param limit step limit
+     */
+    public void setStepLimit(int limit) {
+        stepLimit = limit;
+    }
+
+    /**
+     * Gets the size of one observation.
+     *
+     * @return bytes written by reset and step
+     */
+    public int getObservationBytes() {
+        if (observation == Observation.FEATURES) {
+            return (PLAYER_FEATURES + size * ObservationEncoder.ENTITY_FEATURES) * Float.BYTES;
+        }
+        return ObservationEncoder.RASTER_PLANES * size * size;
+    }
+
+    /**
+     * Starts a new episode.
+     *
+     * @param seed   seed for every random choice in the episode
+     * @param out    buffer for the first observation
+     * @param offset byte offset to write it at
+     */
+    public void reset(long seed, ByteBuffer out, int offset) {
+        controller.getInventory().set(fogLights, invincibility, slowMotion, PlayerInventory.Vehicles.CAR);
+        controller.reset(seed);
+        encoder.setTable(controller.getSpawnTable());
+        steps = 0;
+        writeObservation(out, offset);
+    }
+
+    /**
+     * Plays one update with an action.
+     *
+     * @param action Player.INPUT_ and GameplayController.INPUT_ bits
+     * @param out    buffer for the next observation
+     * @param offset byte offset to write it at
+     * @return reward
+     */
+    public float step(int action, ByteBuffer out, int offset) {
+        int score = controller.getScore();
+        int coins = controller.getCoinsPickedUp();
+        int health = controller.getHealth();
+
+        controller.step(action);
+        steps++;
+
+        int hits = controller.isGameOver() ? 1 : health - controller.getHealth();
+        writeObservation(out, offset);
+        return controller.getScore() - score + controller.getCoinsPickedUp() - coins - HIT_PENALTY * hits;
+    }
+
+    /**
+     * Checks whether the episode has ended.
+     *
+     * @return whether the player died or the step limit was reached
+     */
+    public boolean isDone() {
+        return controller.isGameOver() || steps >= stepLimit;
+    }
+
+    /**
+     * Gets the game being played, for its score and recording.
+     *
+     * @return gameplay controller
+     */
+    public GameplayController getController() {
+        return controller;
+    }
+
+    /**
+     * Writes the current observation.
+     */
+    private void writeObservation(ByteBuffer out, int offset) {
+        Player player = controller.getPlayer();
+        if (observation == Observation.RASTER) {
+            encoder.writeRaster(out, offset, size, player);
+            return;
+        }
+        SessionInventory inventory = controller.getInventory();
+        out.putFloat(offset, player.getX() / (float) MooseGame.WIDTH);
+        out.putFloat(offset + Float.BYTES, player.getY() / (float) MooseGame.HEIGHT);
+        out.putFloat(offset + 2 * Float.BYTES, controller.getHealth());
+        out.putFloat(offset + 3 * Float.BYTES, controller.areFogLightsActive() ? 1 : 0);
+        out.putFloat(offset + 4 * Float.BYTES, controller.isInvincibilityActive() ? 1 : 0);
+        out.putFloat(offset + 5 * Float.BYTES, controller.isSlowMotionActive() ? 1 : 0);
+        out.putFloat(offset + 6 * Float.BYTES, inventory.getFogLightsCount());
+        out.putFloat(offset + 7 * Float.BYTES, inventory.getInvincibilityCount());
+        out.putFloat(offset + 8 * Float.BYTES, inventory.getSlowMotionCount());
+        out.putFloat(offset + 9 * Float.BYTES, controller.getOverlayAlpha() / 255f);
+        encoder.writeFeatures(out, offset + PLAYER_FEATURES * Float.BYTES, size, player);
+    }
+}
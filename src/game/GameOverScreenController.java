@@ -16,6 +16,7 @@ public class GameOverScreenController implements KeyboardControllable {
     private int finalScore;
     private int chosenPSA;
     private int coins;
+    private Random random = new Random();
 
     String[] PSAs = new String[]{
             "Remember to keep your car on the road!",
@@ -35,10 +36,21 @@ public class GameOverScreenController implements KeyboardControllable {
      */
     public GameOverScreenController(MooseGame mooseGame, int finalScore, int coins) {
         this.mooseGame = mooseGame;
+        reset(finalScore, coins);
+    }
+
+    /**
+     * Shows the results of a new game and picks a new driving tip.
+     *
+     * @param finalScore int score reached in game
+     * @param coins      int coins collected in last game
+     */
+    public void reset(int finalScore, int coins) {
         this.finalScore = finalScore;
         this.coins = coins;
+        menuSelection = 0;
 
-        chosenPSA = new Random().nextInt(PSAs.length);
+        chosenPSA = random.nextInt(PSAs.length);
     }
 
     /**
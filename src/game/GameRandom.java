@@ -0,0 +1,77 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * Random number generator whose internal state can be saved and restored, for game snapshots.
+ * <p>
+ * Uses the same linear congruential generator as java.util.Random, so a given seed produces the
+ * same numbers as before.
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // Not initialised in its declaration, Random's constructor sets it through setSeed first
+    private long state;
+
+    /**
+     * Constructs a GameRandom with a random seed.
+     */
+    public GameRandom() {
+        super();
+    }
+
+    /**
+     * Constructs a GameRandom.
+     *
+     * @param seed initial seed
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Sets the seed the same way java.util.Random does.
+     *
+     * @param seed new seed
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        super.setSeed(seed);
+    }
+
+    /**
+     * Gets the internal state for a snapshot.
+     *
+     * @return generator state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores internal state from a snapshot.
+     *
+     * @param state generator state from getState
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+
+    /**
+     * Generates the next random bits.
+     *
+     * @param bits number of bits wanted
+     * @return random bits
+     */
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+}
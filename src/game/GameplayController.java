@@ -4,29 +4,51 @@ import actors.*;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Random;
 
 /**
  * Controls gameplay.
  */
 public class GameplayController implements KeyboardControllable {
 
+    public static final int INPUT_FOG_LIGHTS = 1 << 2;
+    public static final int INPUT_INVINCIBILITY = 1 << 3;
+    public static final int INPUT_SLOW_MOTION = 1 << 4;
+
     private MooseGame canvas;
 
     private ArrayList<Actor> actors = new ArrayList<>();
     private Player player;
+    private EntityWorld world;
+    private Spawner spawner;
+    private DifficultyDirector director;
     private ObstacleManager obstacleManager;
     private PickupManager pickupManager;
+    private EventBus events;
+    private final SessionInventory inventory = new SessionInventory();
+    private SpawnTable spawnTable;
+    // Table given to setSpawnTable, applied at the next reset
+    private SpawnTable nextSpawnTable;
+    private Autopilot autopilot;
 
     private InputHandler playerPressedHandler;
     private InputHandler playerReleasedHandler;
 
-    private Timer opacityTimer = new Timer();
     private final static int OPACITY_CYCLE_INTERVAL = 1000;
     private int[] opacityLevel = {0, 25, 50, 75, 100, 125, 150, 175, 200, 175, 150, 125, 100, 75, 50, 25};
     private int opacityLevelCounter = 0;
+    private int opacityCountdown;
+
+    // Paint resources, made once so painting a frame does not allocate
+    private static final GlyphFont SCORE_DIGITS = new GlyphFont(new Font("Impact", Font.PLAIN, 50), Color.WHITE, "-0123456789");
+    private static final GlyphFont HUD_DIGITS = new GlyphFont(new Font("Impact", Font.PLAIN, 45), Color.WHITE, "-0123456789");
+    // Fog strip of each alpha, filled the first time that alpha is shown and tiled down the screen
+    private static final int FOG_STRIP_HEIGHT = 75;
+    private final BufferedImage[] fogStrips = new BufferedImage[256];
 
     private int road1Pos = MooseGame.HEIGHT * -1;
     private int road2Pos = 0;
@@ -41,14 +63,58 @@ public class GameplayController implements KeyboardControllable {
     private static final int INVINCIBILITY_DURATION = 15 * 1000;
     private static final int SLOW_MOTION_DURATION = 15 * 1000;
 
-    private Timer fogLightsTimer = new Timer();
-    private Timer invincibilityTimer = new Timer();
-    private Timer slowMotionTimer = new Timer();
+    // Remaining game time of each active effect in milliseconds
+    private int fogLightsRemaining;
+    private int invincibilityRemaining;
+    private int slowMotionRemaining;
+
+    private Random seedSource = new Random();
+    // Keys from the event thread, drained at the start of each tick
+    private final InputQueue inputQueue = new InputQueue();
+    private final InputQueue.Consumer inputConsumer = this::applyKey;
+    private final InputLatency inputLatency = new InputLatency();
+    // Keys received before this time belong to an earlier game and are ignored
+    private volatile long resetNanos = 0;
+    // Powerup keys pressed since the last update
+    private int pendingPowerups = 0;
+    // Input given to step for the next update, or NO_INPUT to read the keyboard or autopilot
+    private static final int NO_INPUT = -1;
+    private int stepInput = NO_INPUT;
+    private Replay recording;
+    private Replay.Cursor playback;
+    private boolean gameOver = false;
+    private int tick = 0;
+    // Time spent in the last tick's collisions and update
+    private long collisionNanos = 0;
+    private long updateNanos = 0;
+
+    // Game ticks per update, and whether collisions are swept over them
+    private int tickScale = 1;
+    private boolean continuousCollision = false;
+    // Distance the player moved in the last update, for continuous collision
+    private int playerMoveX = 0;
+
+    // Autopilot powerup thresholds
+    private static final int AUTOPILOT_INVINCIBILITY_TICKS = 3;
+    private static final int AUTOPILOT_FOG_ALPHA = 125;
+
+    // Debug keys, only handled when a rewind buffer is set
+    private static final int DEBUG_PAUSE = 1;
+    private static final int DEBUG_STEP = 1 << 1;
+    private static final int DEBUG_REWIND = 1 << 2;
+    private static final int REWIND_TICKS = MooseGame.DESIRED_FPS;
+    private static final int SNAPSHOT_CAPACITY = 64 * 1024;
+
+    private RewindBuffer rewind;
+    private ByteBuffer snapshot;
+    private Replay playbackReplay;
+    private int pendingDebug = 0;
+    private boolean paused = false;
 
     /**
      * Constructs a GameplayController.
      *
-     * @param canvas game window
+     * @param canvas game window, or null to simulate without a window
      */
     public GameplayController(MooseGame canvas) {
         this.canvas = canvas;
@@ -57,10 +123,227 @@ public class GameplayController implements KeyboardControllable {
         playerPressedHandler = new InputHandler(canvas, player, InputHandler.Action.PRESS);
         playerReleasedHandler = new InputHandler(canvas, player, InputHandler.Action.RELEASE);
 
-        obstacleManager = new ObstacleManager(canvas);
-        pickupManager = new PickupManager(canvas);
+        events = new EventBus();
+        events.subscribe(inventory);
+
+        SpawnTable table = SpawnTable.getDefault();
+        spawnTable = table;
+        world = new EntityWorld(canvas, table);
+        director = new DifficultyDirector(world, table);
+        spawner = new Spawner(world, table, director);
+        obstacleManager = new ObstacleManager(events, world);
+        pickupManager = new PickupManager(events, world, table);
+
+        reset();
+    }
+
+    /**
+     * Resets in place for a new game with a fresh seed and the PlayerInventory's powerups and
+     * vehicle, recording its input.
+     */
+    public void reset() {
+        long seed = seedSource.nextLong();
+        inventory.loadFromPlayerInventory();
+        reset(seed);
+        recording = new Replay(seed, inventory.getFogLightsCount(), inventory.getInvincibilityCount(),
+                inventory.getSlowMotionCount(), inventory.getVehicle().ordinal(), director.getEntityBudget(),
+                spawnTable.getFingerprint());
+    }
+
+    /**
+     * Resets in place to replay a recorded game with its starting powerups and vehicle. Input comes
+     * from the replay instead of the keyboard.
+     *
+     * @param replay recorded game
+     * @throws IllegalArgumentException if the replay was recorded with a different spawn table
+     */
+    public void reset(Replay replay) {
+        SpawnTable table = nextSpawnTable != null ? nextSpawnTable : spawnTable;
+        if (replay.getTableFingerprint() != table.getFingerprint()) {
+            throw new IllegalArgumentException("Replay was recorded with a different spawn table; use the "
+                    + SpawnTable.TABLE_PROPERTY + " it was recorded with");
+        }
+        inventory.loadFromReplay(replay);
+        director.setEntityBudget(replay.getEntityBudget());
+        reset(replay.getSeed());
+        playback = replay.cursor();
+        playbackReplay = replay;
+    }
+
+    /**
+     * Resets the player, obstacles, pickups, difficulty, score and effects in place for a new game
+     * without recording its input. The entity budget is kept.
+     *
+     * @param seed seed for every random choice made during the game
+     */
+    public void reset(long seed) {
+        if (nextSpawnTable != null) {
+            applySpawnTable(nextSpawnTable);
+            nextSpawnTable = null;
+        }
+        player.reset(inventory.getVehicle());
+        obstacleManager.stop();
+        pickupManager.reset();
+        director.reset();
+        spawner.reset(seed);
+        world.refreshMasks();
+        recording = null;
+        playback = null;
+        playbackReplay = null;
+        resetNanos = System.nanoTime();
+        inputLatency.reset();
+        pendingPowerups = 0;
+        pendingDebug = 0;
+        paused = false;
+        gameOver = false;
+        tick = 0;
+        playerMoveX = 0;
+
+        road1Pos = MooseGame.HEIGHT * -1;
+        road2Pos = 0;
+        score = 0;
+        health = 3;
+
+        fogLightsActive = false;
+        invincibilityActive = false;
+        slowMotionActive = false;
+        fogLightsRemaining = 0;
+        invincibilityRemaining = 0;
+        slowMotionRemaining = 0;
+
+        opacityLevelCounter = 0;
+        opacityCountdown = opacityLevel.length * OPACITY_CYCLE_INTERVAL;
+
+        if (rewind != null) {
+            rewind.clear();
+            takeSnapshot();
+        }
+    }
+
+    /**
+     * Gets the powerup counts and vehicle this game is played with.
+     *
+     * @return session inventory
+     */
+    public SessionInventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Gets the bus gameplay events are published on. The inventory is already subscribed; the
+     * game window adds sound, saving and analytics.
+     *
+     * @return event bus
+     */
+    public EventBus getEvents() {
+        return events;
+    }
+
+    /**
+     * Sets the archetypes and spawn streams used from the next reset. The game in progress keeps
+     * its table.
+     *
+     * @param table spawn table
+     */
+    public void setSpawnTable(SpawnTable table) {
+        nextSpawnTable = table;
+    }
+
+    /**
+     * Switches every part of the game to a table.
+     */
+    private void applySpawnTable(SpawnTable table) {
+        spawnTable = table;
+        world.setTable(table);
+        if (autopilot != null) {
+            autopilot.setTable(table);
+        }
+        director.setTable(table);
+        spawner.setTable(table);
+        pickupManager.setTable(table);
+    }
+
+    /**
+     * Lets the autopilot steer and use powerups instead of the keyboard. Its input is recorded
+     * like a player's, so its games replay.
+     *
+     * @param enabled whether the autopilot drives
+     */
+    public void setAutopilot(boolean enabled) {
+        autopilot = enabled ? new Autopilot(world, spawnTable) : null;
+    }
+
+    /**
+     * Sweeps every entity and the player along their motion in the last update when checking
+     * collisions, so nothing can pass through the player between two ticks.
+     *
+     * @param continuous whether collisions are swept
+     */
+    public void setContinuousCollision(boolean continuous) {
+        continuousCollision = continuous;
+    }
+
+    /**
+     * Chooses between pixel-accurate collisions, the default, and the archetypes' boxes.
+     *
+     * @param pixelCollision whether to compare sprite masks
+     */
+    public void setPixelCollision(boolean pixelCollision) {
+        world.setPixelCollision(pixelCollision);
+    }
+
+    /**
+     * Runs every update as several ticks of game time, for faster headless simulations.
+     * A scale above one turns continuous collision on so fast obstacles are not missed. Not for
+     * recorded games, since replays play one tick per update.
+     *
+     * @param ticks game ticks per update, 1 for normal play
+     */
+    public void setTickScale(int ticks) {
+        tickScale = Math.max(1, ticks);
+        if (tickScale > 1) {
+            continuousCollision = true;
+        }
+    }
+
+    /**
+     * Sets the most obstacles and pickups that may be alive at once. Call before reset so a
+     * recording gets the budget it is played with; replays use their own budget instead.
+     *
+     * @param budget live entity limit
+     */
+    public void setEntityBudget(int budget) {
+        director.setEntityBudget(budget);
+    }
+
+    /**
+     * Gets the most obstacles and pickups that may be alive at once.
+     *
+     * @return live entity limit
+     */
+    public int getEntityBudget() {
+        return director.getEntityBudget();
+    }
 
-        incrementOverlayLevel();
+    /**
+     * Gets the number of obstacles and pickups in play.
+     *
+     * @return entity count
+     */
+    public int getEntityCount() {
+        return world.size();
+    }
+
+    /**
+     * Keeps a snapshot of every tick so the game can be rewound and stepped with F5 to F7.
+     *
+     * @param rewind buffer to keep snapshots in, or null to turn rewind off
+     */
+    public void setRewindBuffer(RewindBuffer rewind) {
+        this.rewind = rewind;
+        if (rewind != null && snapshot == null) {
+            snapshot = ByteBuffer.allocate(SNAPSHOT_CAPACITY);
+        }
     }
 
     /**
@@ -69,7 +352,18 @@ public class GameplayController implements KeyboardControllable {
      * @param g Graphics object being painted to
      */
     public void paint(Graphics g) {
+        paintRoad(g);
+        paintHud(g);
+        paintActors(g);
+        paintOverlay(g);
+    }
 
+    /**
+     * Scrolls and paints the road.
+     *
+     * @param g Graphics object being painted to
+     */
+    void paintRoad(Graphics g) {
         road1Pos += 10;
         road2Pos += 10;
 
@@ -84,78 +378,92 @@ public class GameplayController implements KeyboardControllable {
         // Draw road
         g.drawImage(ResourceLoader.getInstance().getSprite("road.png"), 0, road1Pos, canvas);
         g.drawImage(ResourceLoader.getInstance().getSprite("road2.png"), 0, road2Pos, canvas);
+    }
 
-        g.setColor(Color.WHITE);
-
+    /**
+     * Paints the score, health, coins and powerups.
+     *
+     * @param g Graphics object being painted to
+     */
+    void paintHud(Graphics g) {
         // Draw score
-        Font scoreFont = new Font("Impact", Font.PLAIN, 50);
-        FontMetrics metrics = g.getFontMetrics(scoreFont);
-        g.setFont(scoreFont);
-
-        String scoreText = "" + getScore();
-        g.drawString(scoreText, MooseGame.WIDTH - metrics.stringWidth(scoreText) - 25, 50);
+        int shownScore = getScore();
+        SCORE_DIGITS.drawNumber(g, shownScore, MooseGame.WIDTH - SCORE_DIGITS.numberWidth(shownScore) - 25, 50);
 
         // Draw health
-        Font healthFont = new Font("Impact", Font.PLAIN, 45);
-        metrics = g.getFontMetrics(healthFont);
-        g.setFont(healthFont);
         g.drawImage(ResourceLoader.getInstance().getSprite("heart.png"), 10, 5, canvas);
-        g.drawString("" + health, 10 + (100 - metrics.stringWidth("" + health)) / 2, 75);
+        HUD_DIGITS.drawNumber(g, health, 10 + (100 - HUD_DIGITS.numberWidth(health)) / 2, 75);
 
         // Draw Coins
         g.drawImage(ResourceLoader.getInstance().getSprite("coin.png"), 10, 120, canvas);
-        g.drawString("" + pickupManager.getCoinsPickedUp(), 75, 165);
+        HUD_DIGITS.drawNumber(g, pickupManager.getCoinsPickedUp(), 75, 165);
 
         // Draw powerups
-        if (!fogLightsActive || canvas.getSpriteBlinkStatus()) {
+        if (!fogLightsActive || getSpriteBlinkStatus()) {
             g.drawImage(ResourceLoader.getInstance().getSprite("foglights.png"), 680, MooseGame.HEIGHT - 210, canvas);
         }
 
-        if (!invincibilityActive || canvas.getSpriteBlinkStatus()) {
+        if (!invincibilityActive || getSpriteBlinkStatus()) {
             g.drawImage(ResourceLoader.getInstance().getSprite("invincible.png"), 680, MooseGame.HEIGHT - 150, canvas);
         }
 
-        if (!slowMotionActive || canvas.getSpriteBlinkStatus()) {
+        if (!slowMotionActive || getSpriteBlinkStatus()) {
             g.drawImage(ResourceLoader.getInstance().getSprite("slowmotion.png"), 680, MooseGame.HEIGHT - 90, canvas);
         }
 
-        String fCount = Integer.toString(PlayerInventory.getFogLightsCount());
-        String iCount = Integer.toString(PlayerInventory.getInvincibilityCount());
-        String sCount = Integer.toString(PlayerInventory.getSlowMotionCount());
-        g.drawString(fCount, MooseGame.WIDTH - 100 - metrics.stringWidth(fCount), MooseGame.HEIGHT - 170);
-        g.drawString(iCount, MooseGame.WIDTH - 100 - metrics.stringWidth(iCount), MooseGame.HEIGHT - 110);
-        g.drawString(sCount, MooseGame.WIDTH - 100 - metrics.stringWidth(sCount), MooseGame.HEIGHT - 50);
+        paintCount(g, inventory.getFogLightsCount(), MooseGame.HEIGHT - 170);
+        paintCount(g, inventory.getInvincibilityCount(), MooseGame.HEIGHT - 110);
+        paintCount(g, inventory.getSlowMotionCount(), MooseGame.HEIGHT - 50);
+    }
+
+    /**
+     * Paints a powerup count right-aligned beside its icon.
+     */
+    private static void paintCount(Graphics g, int count, int baseline) {
+        HUD_DIGITS.drawNumber(g, count, MooseGame.WIDTH - 100 - HUD_DIGITS.numberWidth(count), baseline);
+    }
 
+    /**
+     * Paints the player, obstacles and pickups.
+     *
+     * @param g Graphics object being painted to
+     */
+    void paintActors(Graphics g) {
 
         for (int i = 0; i < actors.size(); i++) {
             Actor actor = actors.get(i);
             actor.paint(g);
         }
 
-        if (!invincibilityActive || canvas.getSpriteBlinkStatus()) {
+        if (!invincibilityActive || getSpriteBlinkStatus()) {
             player.paint(g);
         }
 
-        obstacleManager.paint(g);
-        pickupManager.paint(g);
-        paintOverlay(g);
+        world.paint(g);
     }
 
     /**
-     * Increments fog lights opacity level.
+     * Gets the sprite blink status. Without a window blinking sprites are always shown.
+     *
+     * @return whether blinking sprites are shown this frame
      */
-    public void incrementOverlayLevel() {
+    private boolean getSpriteBlinkStatus() {
+        return canvas == null || canvas.getSpriteBlinkStatus();
+    }
 
-        opacityTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if (!fogLightsActive) {
-                    opacityLevelCounter++;
-                }
-                incrementOverlayLevel();
+    /**
+     * Increments fog lights opacity level once per cycle interval, pausing on clear road.
+     *
+     * @param elapsed game time since the last tick in milliseconds
+     */
+    public void incrementOverlayLevel(int elapsed) {
+        opacityCountdown -= elapsed;
+        if (opacityCountdown <= 0) {
+            if (!fogLightsActive) {
+                opacityLevelCounter++;
             }
-        }, (opacityLevelCounter % opacityLevel.length) == 0 ? opacityLevel.length * OPACITY_CYCLE_INTERVAL : OPACITY_CYCLE_INTERVAL);
-
+            opacityCountdown += (opacityLevelCounter % opacityLevel.length) == 0 ? opacityLevel.length * OPACITY_CYCLE_INTERVAL : OPACITY_CYCLE_INTERVAL;
+        }
     }
 
     /**
@@ -164,87 +472,305 @@ public class GameplayController implements KeyboardControllable {
      * @param g Graphics object being painted to
      */
     public void paintOverlay(Graphics g) {
-        Color color = new Color(255, 255, 255, opacityLevel[opacityLevelCounter % opacityLevel.length]);
-        g.setColor(color);
-        g.fillRect(0, 0, 1000, 1000);
+        int alpha = getOverlayAlpha();
+        if (alpha == 0) {
+            return;
+        }
+        BufferedImage strip = fogStrips[alpha];
+        if (strip == null) {
+            // Filling with a translucent colour allocates in Java2D, so it is done once per level
+            strip = ResourceLoader.createCompatible(MooseGame.WIDTH, FOG_STRIP_HEIGHT, Transparency.TRANSLUCENT);
+            Graphics2D fog = strip.createGraphics();
+            fog.setComposite(AlphaComposite.Src);
+            fog.setColor(new Color(255, 255, 255, alpha));
+            fog.fillRect(0, 0, MooseGame.WIDTH, FOG_STRIP_HEIGHT);
+            fog.dispose();
+            fogStrips[alpha] = strip;
+        }
+        for (int y = 0; y < MooseGame.HEIGHT; y += FOG_STRIP_HEIGHT) {
+            g.drawImage(strip, 0, y, canvas);
+        }
     }
 
     /**
-     * Handles key control press event.
+     * Handles key control press event by queueing it for the next tick.
      *
      * @param e KeyEvent key press event
      */
     @Override
     public void triggerKeyPress(KeyEvent e) {
+        inputQueue.offer(e, true, System.nanoTime());
+    }
+
+    /**
+     * Applies a key drained from the input queue. Powerups activate in the next update so
+     * replays see them at the same time.
+     *
+     * @param e       key event
+     * @param pressed true for a press, false for a release
+     * @param nanos   time the event thread received it
+     */
+    private void applyKey(KeyEvent e, boolean pressed, long nanos) {
+        if (nanos - resetNanos < 0) {
+            return;
+        }
+        inputLatency.inputApplied(nanos);
+        if (!pressed) {
+            playerReleasedHandler.handleInput(e);
+            return;
+        }
         switch (e.getKeyCode()) {
             case KeyEvent.VK_1:
             case KeyEvent.VK_NUMPAD1:
-                activateFogLights();
+                pendingPowerups |= INPUT_FOG_LIGHTS;
                 break;
             case KeyEvent.VK_2:
             case KeyEvent.VK_NUMPAD2:
-                activateInvincibilityPowerup();
+                pendingPowerups |= INPUT_INVINCIBILITY;
                 break;
             case KeyEvent.VK_3:
             case KeyEvent.VK_NUMPAD3:
-                activateSlowMotion();
+                pendingPowerups |= INPUT_SLOW_MOTION;
+                break;
+            case KeyEvent.VK_F5:
+                pendingDebug |= DEBUG_PAUSE;
+                break;
+            case KeyEvent.VK_F6:
+                pendingDebug |= DEBUG_STEP;
+                break;
+            case KeyEvent.VK_F7:
+                pendingDebug |= DEBUG_REWIND;
                 break;
         }
         playerPressedHandler.handleInput(e);
     }
 
+    /**
+     * Records that a frame reflecting the keys drained so far has been shown.
+     *
+     * @param nanos System.nanoTime() after the frame was shown
+     */
+    public void framePresented(long nanos) {
+        inputLatency.framePresented(nanos);
+    }
 
     /**
-     * Handles key control release event
+     * Gets the input-to-present latency measured this game.
+     *
+     * @return latency histogram
+     */
+    public InputLatency getInputLatency() {
+        return inputLatency;
+    }
+
+    /**
+     * Takes this tick's input from the replay or the keyboard, records it, and applies it.
+     */
+    private void updateInput() {
+        int input;
+        if (playback != null) {
+            input = playback.next();
+        } else if (stepInput != NO_INPUT) {
+            input = stepInput;
+            stepInput = NO_INPUT;
+        } else {
+            input = (autopilot != null ? autopilot.plan(player, tickScale) | getAutopilotPowerups()
+                    : player.getInputMask()) | pendingPowerups;
+            pendingPowerups = 0;
+        }
+
+        if (recording != null) {
+            recording.append(input);
+        }
+
+        player.applyInputMask(input);
+        if ((input & INPUT_FOG_LIGHTS) != 0) {
+            activateFogLights();
+        }
+        if ((input & INPUT_INVINCIBILITY) != 0) {
+            activateInvincibilityPowerup();
+        }
+        if ((input & INPUT_SLOW_MOTION) != 0) {
+            activateSlowMotion();
+        }
+    }
+
+    /**
+     * Chooses the powerups the autopilot uses this tick: invincibility just before a crash it
+     * cannot steer around, otherwise slow motion once its path crashes at all, and fog lights in
+     * thick fog.
+     *
+     * @return INPUT_ powerup bits
+     */
+    private int getAutopilotPowerups() {
+        int input = 0;
+        int ticksToCrash = autopilot.getTicksToCrash();
+        if (ticksToCrash <= AUTOPILOT_INVINCIBILITY_TICKS * tickScale) {
+            if (!invincibilityActive && inventory.getInvincibilityCount() > 0) {
+                input |= INPUT_INVINCIBILITY;
+            }
+        } else if (ticksToCrash != Integer.MAX_VALUE && !slowMotionActive && inventory.getSlowMotionCount() > 0) {
+            input |= INPUT_SLOW_MOTION;
+        }
+        if (!fogLightsActive && inventory.getFogLightsCount() > 0
+                && opacityLevel[opacityLevelCounter % opacityLevel.length] >= AUTOPILOT_FOG_ALPHA) {
+            input |= INPUT_FOG_LIGHTS;
+        }
+        return input;
+    }
+
+    /**
+     * Handles key control release event by queueing it for the next tick.
      *
      * @param e KeyEvent key release event
      */
     @Override
     public void triggerKeyRelease(KeyEvent e) {
-        playerReleasedHandler.handleInput(e);
+        inputQueue.offer(e, false, System.nanoTime());
     }
 
     /**
      * Checks for a collision between Player and Obstacle or Pickup.
      */
     public void checkCollision() {
+        int steps = continuousCollision ? tickScale : 0;
 
-        if (obstacleManager.checkCollision(player)) {
+        if (obstacleManager.checkCollision(player, playerMoveX, steps)) {
             damagePlayer();
         }
 
-        pickupManager.checkCollision(player);
+        pickupManager.checkCollision(player, playerMoveX, steps);
 
         // Damages player when their car leaves the road.
         if (player.getX() < 75 || player.getX() > MooseGame.WIDTH - 125) {
+            events.publish(EventBus.Type.PLAYER_HIT, -1, EventBus.IMPACT_SCALE, null);
             damagePlayer();
             player.setX(MooseGame.WIDTH / 2 - 25);
+            playerMoveX = 0;
         }
+        events.dispatch();
+
+    }
+
+    /**
+     * Runs the collision checks against a player-sized box far outside the road, so the checks
+     * execute in full without ever hitting anything. Used by WarmUp.
+     *
+     * @param ghost actor placed where nothing can reach it
+     */
+    void rehearseCollision(Actor ghost) {
+        obstacleManager.checkCollision(ghost);
+        pickupManager.checkCollision(ghost);
+    }
 
+    /**
+     * Gets the player.
+     *
+     * @return player
+     */
+    Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the obstacles and pickups.
+     *
+     * @return entity world
+     */
+    EntityWorld getWorld() {
+        return world;
     }
 
     /**
-     * Damages player and handles player death
+     * Gets the archetypes in use.
+     *
+     * @return spawn table
+     */
+    SpawnTable getSpawnTable() {
+        return spawnTable;
+    }
+
+    /**
+     * Gets the spawner.
+     *
+     * @return spawner
+     */
+    Spawner getSpawner() {
+        return spawner;
+    }
+
+    /**
+     * Damages player and handles player death. The inventory, sound and saving react to the
+     * PLAYER_DIED event.
      */
     public void damagePlayer() {
         if (!invincibilityActive) {
             if (!decreaseHealth()) {
-                canvas.playSound("gameover.wav");
+                gameOver = true;
                 obstacleManager.stop();
                 pickupManager.stop();
-                opacityTimer.cancel();
-                opacityTimer.purge();
-                PlayerInventory.addCurrency(pickupManager.getCoinsPickedUp());
-                PlayerInventory.clearPowerups();
-                PlayerInventory.setHighScore(getScore());
-                PlayerInventory.saveToFile();
-                canvas.initGameOverScreen(getScore(), pickupManager.getCoinsPickedUp());
+                if (recording != null) {
+                    recording.setFinalScore(getScore());
+                }
+                events.publish(EventBus.Type.PLAYER_DIED, getScore(), pickupManager.getCoinsPickedUp(), recording);
+                events.dispatch();
+                if (playback != null) {
+                    PlayerInventory.endSandbox();
+                }
+                if (canvas != null) {
+                    canvas.initGameOverScreen(getScore(), pickupManager.getCoinsPickedUp());
+                }
             } else { // Player damaged, but has health remaining
                 activateInvincibility(3000);
             }
         }
     }
 
+    /**
+     * Gets the coins picked up in this game.
+     *
+     * @return coin count
+     */
+    public int getCoinsPickedUp() {
+        return pickupManager.getCoinsPickedUp();
+    }
+
+    /**
+     * Checks whether the player has died.
+     *
+     * @return whether the game is over
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Gets the input recorded so far in this game.
+     *
+     * @return recording, or null when replaying
+     */
+    public Replay getRecording() {
+        return recording;
+    }
+
+    /**
+     * Gets the player's remaining health.
+     *
+     * @return health
+     */
+    public int getHealth() {
+        return health;
+    }
+
+    /**
+     * Gets how thick the fog is this tick.
+     *
+     * @return overlay alpha from 0 to 255
+     */
+    public int getOverlayAlpha() {
+        return opacityLevel[opacityLevelCounter % opacityLevel.length];
+    }
+
     /**
      * Decreases health.
      *
@@ -261,13 +787,280 @@ public class GameplayController implements KeyboardControllable {
     }
 
     /**
-     * Updates player, obstacleManager, and score status.
+     * Runs one tick of the game loop: drains the keys, then collisions, then update. When rewind
+     * is on this also handles the debug keys: F5 pauses, F6 steps one tick while paused, F7
+     * rewinds one second.
+     */
+    public void tick() {
+        inputQueue.drain(inputConsumer);
+        int commands = rewind != null ? pendingDebug : 0;
+        pendingDebug = 0;
+        if ((commands & DEBUG_PAUSE) != 0) {
+            paused = !paused;
+        }
+        if ((commands & DEBUG_REWIND) != 0) {
+            seek(Math.max(rewind.getOldestTick(), tick - REWIND_TICKS));
+        }
+        if (!paused || (commands & DEBUG_STEP) != 0) {
+            long start = System.nanoTime();
+            checkCollision();
+            long collided = System.nanoTime();
+            if (!gameOver) {
+                update();
+            }
+            collisionNanos = collided - start;
+            updateNanos = System.nanoTime() - collided;
+        }
+    }
+
+    /**
+     * Gets the time the last tick spent checking collisions.
+     *
+     * @return nanoseconds
+     */
+    public long getCollisionNanos() {
+        return collisionNanos;
+    }
+
+    /**
+     * Gets the time the last tick spent updating.
+     *
+     * @return nanoseconds
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * Runs one tick with the given input instead of the keyboard or autopilot: collisions, then
+     * update. Used by GameEnvironment so agents can play.
+     *
+     * @param input Player.INPUT_ and INPUT_ powerup bits
+     */
+    public void step(int input) {
+        checkCollision();
+        if (!gameOver) {
+            stepInput = input;
+            update();
+        }
+    }
+
+    /**
+     * Moves the game to the state after a given tick. Earlier ticks are restored from the rewind
+     * buffer, discarding the input recorded since. Replays can also seek forward, and seek to
+     * ticks no longer in the buffer by replaying from the start.
+     *
+     * @param target tick to move to
+     * @return whether the game is now at the target tick
+     */
+    public boolean seek(int target) {
+        if (rewind == null || target < 0) {
+            return false;
+        }
+        if (target < tick) {
+            if (rewind.restore(target, snapshot)) {
+                readSnapshot(snapshot);
+                rewind.truncateAfter(target);
+                if (recording != null) {
+                    recording.truncate(target);
+                }
+                if (playback != null) {
+                    playback.seek(target);
+                }
+            } else if (playbackReplay != null) {
+                reset(playbackReplay);
+            } else {
+                return false;
+            }
+        }
+        while (tick < target && playback != null && !gameOver) {
+            checkCollision();
+            if (!gameOver) {
+                update();
+            }
+        }
+        return tick == target;
+    }
+
+    /**
+     * Gets the number of ticks run since the game started.
+     *
+     * @return tick count
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Updates player, spawns, entities, effects, and score status.
      */
     public void update() {
-        player.update();
-        obstacleManager.update();
-        pickupManager.update();
-        updateScore();
+        updateInput();
+        int elapsed = getTickMillis();
+        int startX = player.getX();
+        for (int i = 0; i < tickScale; i++) {
+            player.update();
+            updateScore();
+        }
+        playerMoveX = player.getX() - startX;
+        director.update(elapsed, getScore());
+        spawner.update(elapsed);
+        world.move(tickScale);
+        world.removeExpired(continuousCollision ? tickScale : 0);
+        updateEffects(elapsed);
+        incrementOverlayLevel(elapsed);
+        tick++;
+        events.dispatch();
+
+        if (rewind != null) {
+            takeSnapshot();
+        }
+    }
+
+    /**
+     * Stores a snapshot of the current tick in the rewind buffer.
+     */
+    private void takeSnapshot() {
+        try {
+            writeSnapshot(snapshot);
+            rewind.push(tick, snapshot);
+        } catch (BufferOverflowException e) {
+            System.err.println("Snapshot of tick " + tick + " is too large to keep");
+            rewind.clear();
+        }
+    }
+
+    /**
+     * Writes the complete game state: score, health, effects, powerups, the player, the spawn
+     * streams and their random number generators, the difficulty, and every obstacle and pickup. Does not allocate.
+     *
+     * @param out buffer to write to, flipped ready to read afterwards
+     */
+    public void writeSnapshot(ByteBuffer out) {
+        out.clear();
+        out.putInt(tick);
+        out.putInt(score);
+        out.putInt(health);
+        out.putInt(road1Pos);
+        out.putInt(road2Pos);
+        out.put((byte) ((fogLightsActive ? 1 : 0) | (invincibilityActive ? 2 : 0)
+                | (slowMotionActive ? 4 : 0) | (gameOver ? 8 : 0)));
+        out.putInt(fogLightsRemaining);
+        out.putInt(invincibilityRemaining);
+        out.putInt(slowMotionRemaining);
+        out.putInt(opacityLevelCounter);
+        out.putInt(opacityCountdown);
+        out.putInt(playerMoveX);
+        out.putInt(inventory.getFogLightsCount());
+        out.putInt(inventory.getInvincibilityCount());
+        out.putInt(inventory.getSlowMotionCount());
+
+        player.writeState(out);
+        spawner.writeState(out);
+        director.writeState(out);
+        pickupManager.writeState(out);
+        world.writeState(out);
+        out.flip();
+    }
+
+    /**
+     * Writes what a spectator needs to draw this frame: the HUD values, the road, the player and
+     * the live entities, in the layout SpectatorStream describes. Does not allocate.
+     *
+     * @param out buffer to write to, flipped ready to read afterwards
+     */
+    public void writeView(ByteBuffer out) {
+        out.clear();
+        out.putInt(tick);
+        out.putShort((short) Math.min(getScore(), Short.MAX_VALUE));
+        out.put((byte) health);
+        out.putShort((short) pickupManager.getCoinsPickedUp());
+        out.put((byte) inventory.getFogLightsCount());
+        out.put((byte) inventory.getInvincibilityCount());
+        out.put((byte) inventory.getSlowMotionCount());
+        out.put((byte) ((fogLightsActive ? SpectatorStream.FLAG_FOG_LIGHTS : 0)
+                | (invincibilityActive ? SpectatorStream.FLAG_INVINCIBILITY : 0)
+                | (slowMotionActive ? SpectatorStream.FLAG_SLOW_MOTION : 0)
+                | (gameOver ? SpectatorStream.FLAG_GAME_OVER : 0)
+                | (getSpriteBlinkStatus() ? SpectatorStream.FLAG_BLINK_SHOWN : 0)));
+        out.put((byte) opacityLevel[opacityLevelCounter % opacityLevel.length]);
+        out.putShort((short) road1Pos);
+        out.putShort((short) road2Pos);
+        out.putShort((short) player.getX());
+        out.putShort((short) player.getY());
+        out.put((byte) inventory.getVehicle().ordinal());
+        world.writeView(out);
+        out.flip();
+    }
+
+    /**
+     * Replaces the game state with a snapshot written by writeSnapshot.
+     *
+     * @param in snapshot to read
+     */
+    public void readSnapshot(ByteBuffer in) {
+        tick = in.getInt();
+        score = in.getInt();
+        health = in.getInt();
+        road1Pos = in.getInt();
+        road2Pos = in.getInt();
+        int flags = in.get();
+        fogLightsActive = (flags & 1) != 0;
+        invincibilityActive = (flags & 2) != 0;
+        slowMotionActive = (flags & 4) != 0;
+        gameOver = (flags & 8) != 0;
+        fogLightsRemaining = in.getInt();
+        invincibilityRemaining = in.getInt();
+        slowMotionRemaining = in.getInt();
+        opacityLevelCounter = in.getInt();
+        opacityCountdown = in.getInt();
+        playerMoveX = in.getInt();
+        inventory.setPowerupCounts(in.getInt(), in.getInt(), in.getInt());
+
+        player.readState(in);
+        spawner.readState(in);
+        director.readState(in);
+        pickupManager.readState(in);
+        world.readState(in);
+        pendingPowerups = 0;
+    }
+
+    /**
+     * Gets the game time covered by one update, which is longer in slow motion and with a tick scale.
+     *
+     * @return tick length in milliseconds
+     */
+    public int getTickMillis() {
+        return 1000 / (slowMotionActive ? MooseGame.SLOW_MOTION_FPS : MooseGame.DESIRED_FPS) * tickScale;
+    }
+
+    /**
+     * Counts down active effects and ends any that have run out.
+     *
+     * @param elapsed game time since the last tick in milliseconds
+     */
+    private void updateEffects(int elapsed) {
+        if (fogLightsActive) {
+            fogLightsRemaining -= elapsed;
+            if (fogLightsRemaining <= 0) {
+                fogLightsActive = false;
+            }
+        }
+
+        if (invincibilityActive) {
+            invincibilityRemaining -= elapsed;
+            if (invincibilityRemaining <= 0) {
+                invincibilityActive = false;
+            }
+        }
+
+        if (slowMotionActive) {
+            slowMotionRemaining -= elapsed;
+            if (slowMotionRemaining <= 0) {
+                slowMotionActive = false;
+                player.setActorSpeed(10);
+            }
+        }
     }
 
     /**
@@ -300,18 +1093,11 @@ public class GameplayController implements KeyboardControllable {
      * to zero for a fixed length of time.
      */
     public void activateFogLights() {
-        if (!fogLightsActive && PlayerInventory.useFogLightsPowerup()) {
+        if (!fogLightsActive && inventory.getFogLightsCount() > 0) {
             fogLightsActive = true;
-            canvas.playSound("powerup.wav");
+            events.publish(EventBus.Type.POWERUP_ACTIVATED, SpawnTable.EFFECT_FOG_LIGHTS, 0, null);
             opacityLevelCounter = 0;
-            fogLightsTimer.schedule(
-                    new TimerTask() {
-                        @Override
-                        public void run() {
-                            fogLightsActive = false;
-                        }
-                    }, FOG_LIGHTS_DURATION);
-
+            fogLightsRemaining = FOG_LIGHTS_DURATION;
         }
     }
 
@@ -328,8 +1114,8 @@ public class GameplayController implements KeyboardControllable {
      * Activates invincibility powerup.
      */
     public void activateInvincibilityPowerup() {
-        if (!invincibilityActive && PlayerInventory.useInvincibilityPowerup()) {
-            canvas.playSound("powerup.wav");
+        if (!invincibilityActive && inventory.getInvincibilityCount() > 0) {
+            events.publish(EventBus.Type.POWERUP_ACTIVATED, SpawnTable.EFFECT_INVINCIBILITY, 0, null);
             activateInvincibility(INVINCIBILITY_DURATION);
         }
     }
@@ -341,13 +1127,7 @@ public class GameplayController implements KeyboardControllable {
      */
     public void activateInvincibility(int time) {
         invincibilityActive = true;
-        invincibilityTimer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        invincibilityActive = false;
-                    }
-                }, time);
+        invincibilityRemaining = time;
     }
 
     /**
@@ -363,19 +1143,11 @@ public class GameplayController implements KeyboardControllable {
      * Activates Slow Motion powerup.
      */
     public void activateSlowMotion() {
-        if (!slowMotionActive && PlayerInventory.useSlowMotionPowerup()) {
+        if (!slowMotionActive && inventory.getSlowMotionCount() > 0) {
             slowMotionActive = true;
-            canvas.playSound("powerup.wav");
+            events.publish(EventBus.Type.POWERUP_ACTIVATED, SpawnTable.EFFECT_SLOW_MOTION, 0, null);
             player.setActorSpeed(20);
-            slowMotionTimer.schedule(
-                    new TimerTask() {
-                        @Override
-                        public void run() {
-                            slowMotionActive = false;
-                            player.setActorSpeed(10);
-                        }
-                    }, SLOW_MOTION_DURATION);
-
+            slowMotionRemaining = SLOW_MOTION_DURATION;
         }
     }
 }
@@ -0,0 +1,157 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws numbers and short fixed labels in one font and colour from an image of each character,
+ * rendered once.
+ * <p>
+ * Drawing a String makes Java2D look up the font's glyphs, and switching between fonts rebuilds
+ * that state, both of which allocate. The HUD draws several numbers a frame in two fonts, so it
+ * uses these instead: drawing a number reads its digits arithmetically and draws one image per
+ * digit, which allocates nothing and leaves the Graphics' font alone. Only the characters given
+ * when constructing can be drawn; others are skipped.
+ */
+public class GlyphFont {
+
+    private final String characters;
+    private final BufferedImage[] images;
+    private final int[] advances;
+    private final int ascent;
+    // Space left of each glyph's origin, for glyphs that reach left of it
+    private final int pad;
+
+    /**
+     * Constructs a GlyphFont, rendering each character.
+     *
+     * @param font       font to render with
+     * @param color      colour to render in
+     * @param characters characters that can be drawn
+     */
+    public GlyphFont(Font font, Color color, String characters) {
+        this.characters = characters;
+        images = new BufferedImage[characters.length()];
+        advances = new int[characters.length()];
+
+        BufferedImage scratch = ResourceLoader.createCompatible(1, 1, Transparency.TRANSLUCENT);
+        Graphics measure = scratch.getGraphics();
+        FontMetrics metrics = measure.getFontMetrics(font);
+        measure.dispose();
+        ascent = metrics.getAscent();
+        pad = metrics.getHeight() / 4;
+        int height = metrics.getHeight();
+
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            advances[i] = metrics.charWidth(c);
+            images[i] = ResourceLoader.createCompatible(advances[i] + 2 * pad, height, Transparency.TRANSLUCENT);
+            Graphics2D g = images[i].createGraphics();
+            g.setFont(font);
+            g.setColor(color);
+            g.drawString(String.valueOf(c), pad, ascent);
+            g.dispose();
+        }
+    }
+
+    /**
+     * Gets the width of a number as drawNumber draws it.
+     *
+     * @param value number
+     * @return width in pixels
+     */
+    public int numberWidth(int value) {
+        int width = value < 0 ? advance('-') : 0;
+        for (long rest = Math.abs((long) value), place = place(rest); place > 0; place /= 10) {
+            width += advance((char) ('0' + rest / place % 10));
+        }
+        return width;
+    }
+
+    /**
+     * Gets the width of a label as drawString draws it.
+     *
+     * @param text label
+     * @return width in pixels
+     */
+    public int stringWidth(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += advance(text.charAt(i));
+        }
+        return width;
+    }
+
+    /**
+     * Draws a number.
+     *
+     * @param g        graphics to draw on
+     * @param value    number
+     * @param x        left edge
+     * @param baseline y of the baseline
+     * @return x after the number
+     */
+    public int drawNumber(Graphics g, int value, int x, int baseline) {
+        if (value < 0) {
+            x = drawChar(g, '-', x, baseline);
+        }
+        for (long rest = Math.abs((long) value), place = place(rest); place > 0; place /= 10) {
+            x = drawChar(g, (char) ('0' + rest / place % 10), x, baseline);
+        }
+        return x;
+    }
+
+    /**
+     * Draws a label.
+     *
+     * @param g        graphics to draw on
+     * @param text     label
+     * @param x        left edge
+     * @param baseline y of the baseline
+     * @return x after the label
+     */
+    public int drawString(Graphics g, String text, int x, int baseline) {
+        for (int i = 0; i < text.length(); i++) {
+            x = drawChar(g, text.charAt(i), x, baseline);
+        }
+        return x;
+    }
+
+    /**
+     * Draws one character, or nothing if it was not rendered.
+     *
+     * @return x after the character
+     */
+    private int drawChar(Graphics g, char c, int x, int baseline) {
+        int i = characters.indexOf(c);
+        if (i < 0) {
+            return x;
+        }
+        g.drawImage(images[i], x - pad, baseline - ascent, null);
+        return x + advances[i];
+    }
+
+    /**
+     * Gets the advance of a character, or 0 if it was not rendered.
+     */
+    private int advance(char c) {
+        int i = characters.indexOf(c);
+        return i < 0 ? 0 : advances[i];
+    }
+
+    /**
+     * Gets the place value of the leading digit of a non-negative number.
+     */
+    private static long place(long value) {
+        long place = 1;
+        while (place * 10 <= value) {
+            place *= 10;
+        }
+        return place;
+    }
+}
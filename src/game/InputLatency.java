@@ -0,0 +1,115 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Measures input-to-present latency: the time from the event thread receiving a key to the end of
+ * strategy.show() for the first frame drawn after the game loop applied it.
+ * <p>
+ * The game loop notes the arrival time of each key it drains, and the window reports each
+ * presented frame; every noted key then becomes one sample. Samples go into a histogram of
+ * BUCKET_MICROS wide buckets, so recording never allocates. Enabled for printing with
+ * -Dmoosegame.inputLatency=true, which prints the percentiles of each game when it ends.
+ */
+public class InputLatency {
+
+    public static final String REPORT_PROPERTY = "moosegame.inputLatency";
+
+    private static final int BUCKET_MICROS = 250;
+    // Buckets up to a quarter of a second, the last one holding everything slower
+    private static final int BUCKETS = 1000;
+    private static final int MAX_PENDING = 64;
+
+    private final long[] pending = new long[MAX_PENDING];
+    private int pendingCount = 0;
+
+    private final int[] histogram = new int[BUCKETS];
+    private int samples = 0;
+    private long maxNanos = 0;
+
+    /**
+     * Clears the samples for a new game.
+     */
+    public void reset() {
+        pendingCount = 0;
+        Arrays.fill(histogram, 0);
+        samples = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * Notes a key the game loop has just applied. Keys beyond MAX_PENDING in one frame are not
+     * measured.
+     *
+     * @param nanos System.nanoTime() when the event thread received it
+     */
+    public void inputApplied(long nanos) {
+        if (pendingCount < MAX_PENDING) {
+            pending[pendingCount++] = nanos;
+        }
+    }
+
+    /**
+     * Records a sample for every key applied since the last presented frame.
+     *
+     * @param nanos System.nanoTime() after the frame was shown
+     */
+    public void framePresented(long nanos) {
+        for (int i = 0; i < pendingCount; i++) {
+            long latency = nanos - pending[i];
+            histogram[(int) Math.min(BUCKETS - 1, Math.max(0, latency / 1000 / BUCKET_MICROS))]++;
+            maxNanos = Math.max(maxNanos, latency);
+            samples++;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Gets the number of keys measured.
+     *
+     * @return sample count
+     */
+    public int getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * Gets a percentile of the measured latencies, to the upper edge of its bucket.
+     *
+     * @param fraction percentile between 0 and 1
+     * @return milliseconds, or 0 with no samples
+     */
+    public double getPercentile(double fraction) {
+        if (samples == 0) {
+            return 0;
+        }
+        int rank = Math.max(1, (int) Math.ceil(fraction * samples));
+        int seen = 0;
+        for (int b = 0; b < BUCKETS - 1; b++) {
+            seen += histogram[b];
+            if (seen >= rank) {
+                return (b + 1) * BUCKET_MICROS / 1000.0;
+            }
+        }
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Gets the slowest measured latency.
+     *
+     * @return milliseconds
+     */
+    public double getMax() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Prints the percentiles if enabled with REPORT_PROPERTY.
+     */
+    public void printIfEnabled() {
+        if (Boolean.getBoolean(REPORT_PROPERTY) && samples > 0) {
+            System.out.printf("input latency: %d keys, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    samples, getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), getMax());
+        }
+    }
+}
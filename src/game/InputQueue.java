@@ -0,0 +1,95 @@
+package game;
+
+import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands key events from the event thread to the game loop without locks.
+ * <p>
+ * The event thread is the only producer and the game loop the only consumer. Each side owns one
+ * cursor and only reads the other's, so a key event and the time it arrived are written into a
+ * preallocated slot and become visible to the game loop when the producer's cursor moves past it.
+ * If the game loop stalls long enough to fill the ring, further keys are dropped and counted
+ * rather than blocking the event thread.
+ */
+public class InputQueue {
+
+    /**
+     * Receives drained key events on the game loop.
+     */
+    public interface Consumer {
+
+        /**
+         * Handles one key event.
+         *
+         * @param event   key event
+         * @param pressed true for a press, false for a release
+         * @param nanos   System.nanoTime() when the event thread received it
+         */
+        void onKey(KeyEvent event, boolean pressed, long nanos);
+    }
+
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    private final KeyEvent[] events = new KeyEvent[CAPACITY];
+    private final boolean[] pressed = new boolean[CAPACITY];
+    private final long[] nanos = new long[CAPACITY];
+
+    // Sequence after the last event offered, written by the event thread
+    private final AtomicLong head = new AtomicLong(0);
+    // Sequence after the last event drained, written by the game loop
+    private final AtomicLong tail = new AtomicLong(0);
+    private volatile int dropped = 0;
+
+    /**
+     * Adds a key event. Only called from the event thread.
+     *
+     * @param event     key event
+     * @param isPressed true for a press, false for a release
+     * @param time      System.nanoTime() when it was received
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offer(KeyEvent event, boolean isPressed, long time) {
+        long sequence = head.get();
+        if (sequence - tail.get() >= CAPACITY) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) sequence & MASK;
+        events[slot] = event;
+        pressed[slot] = isPressed;
+        nanos[slot] = time;
+        head.lazySet(sequence + 1);
+        return true;
+    }
+
+    /**
+     * Hands every queued event to a consumer in the order they arrived. Only called from the
+     * game loop.
+     *
+     * @param consumer receiver of the events
+     * @return number of events drained
+     */
+    public int drain(Consumer consumer) {
+        long from = tail.get();
+        long to = head.get();
+        for (long sequence = from; sequence < to; sequence++) {
+            int slot = (int) sequence & MASK;
+            KeyEvent event = events[slot];
+            events[slot] = null;
+            consumer.onKey(event, pressed[slot], nanos[slot]);
+        }
+        tail.lazySet(to);
+        return (int) (to - from);
+    }
+
+    /**
+     * Gets how many events were dropped because the queue was full.
+     *
+     * @return dropped event count
+     */
+    public int getDroppedCount() {
+        return dropped;
+    }
+}
@@ -0,0 +1,51 @@
+package game;
+
+/**
+ * Applies coins and the high score of a finished game to the PlayerInventory, and clears its
+ * powerups at game over. Only the game window subscribes one, synchronously so a replay's sandbox
+ * ends after its game over is applied.
+ * <p>
+ * Coins are credited as they are picked up, so they are journaled even if the game never reaches
+ * game over. A rewind can take the coin count back down, so only coins beyond those already
+ * credited are added, and game over credits the difference between the final count and what was
+ * credited, which is negative if the rewound game collected fewer.
+ * <p>
+ * The session plays with its own SessionInventory, so powerups collected and used during a game
+ * never touch the saved profile: the profile's powerups are only cleared at game over. A rewind
+ * therefore cannot apply a pickup or powerup use to the profile twice.
+ */
+public class InventoryEvents implements EventBus.Subscriber {
+
+    // Coins of the current game already added to the PlayerInventory
+    private int credited = 0;
+
+    /**
+     * Updates the inventory for one event.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment unused
+     */
+    @Override
+    public void onEvent(EventBus.Type type, int a, int b, Object attachment) {
+        switch (type) {
+            case COIN_COLLECTED:
+                if (a > credited) {
+                    PlayerInventory.addCurrency(a - credited);
+                    credited = a;
+                }
+                break;
+            case PLAYER_DIED:
+                if (b != credited) {
+                    PlayerInventory.addCurrency(b - credited);
+                }
+                credited = 0;
+                PlayerInventory.clearPowerups();
+                PlayerInventory.setHighScore(a);
+                break;
+            default:
+                break;
+        }
+    }
+}
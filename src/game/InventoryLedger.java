@@ -0,0 +1,369 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Append-only journal of every change to the player's inventory.
+ * <p>
+ * PlayerInventory updates its live counters immediately and records each change here. The save
+ * thread commits pending records in batches, one write and one sync per batch, and applies them to
+ * a durable copy of the inventory. Once the journal grows past COMPACT_THRESHOLD records the
+ * durable copy is written as the save file snapshot and the journal starts again empty.
+ * <p>
+ * The journal header holds the sequence number of its first record and the snapshot holds the
+ * sequence it includes up to, so records already in the snapshot are never replayed twice.
+ * <p>
+ * Pending records wait in a preallocated ring of packed longs, so recording does not allocate,
+ * even from the game loop. Any thread may record: a producer claims a slot by moving the head
+ * cursor and then writes its record, and the save thread waits for a claimed slot to be written
+ * before taking it. A valid record is never 0, so 0 marks a slot that is free or still being
+ * written. Records that arrive while the ring is full go to an overflow queue, and so do all later
+ * records until it is empty, so nothing is lost and each thread's records stay in order.
+ */
+class InventoryLedger {
+
+    static final int CURRENCY = 1;      // amount added, negative when spent
+    static final int POWERUP = 2;       // arg is powerup kind, amount is the change
+    static final int CLEAR_POWERUPS = 3;
+    static final int HIGH_SCORE = 4;    // amount is the new score
+    static final int OWN_VEHICLE = 5;   // arg is vehicle ordinal
+    static final int EQUIP_VEHICLE = 6; // arg is vehicle ordinal
+    static final int SETTING = 7;       // arg is setting kind, amount is 1 for on
+    static final int RESET = 8;
+
+    static final int FOG_LIGHTS = 0;
+    static final int INVINCIBILITY = 1;
+    static final int SLOW_MOTION = 2;
+
+    static final int MUSIC = 0;
+    static final int SOUNDS = 1;
+    static final int FPS = 2;
+
+    private static final Path JOURNAL_PATH = Paths.get("./save.journal");
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 8;
+    private static final int COMPACT_THRESHOLD = 4096;
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    private static InventoryLedger instance = new InventoryLedger();
+
+    // Pending records, 0 where a slot is free or claimed but not yet written
+    private final AtomicLongArray ring = new AtomicLongArray(CAPACITY);
+    // Sequence after the last slot claimed by a producer
+    private final AtomicLong head = new AtomicLong(0);
+    // Sequence after the last record taken by the save thread
+    private final AtomicLong tail = new AtomicLong(0);
+    // Records that arrived while the ring was full, taken after it
+    private final ConcurrentLinkedQueue<Long> overflow = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer batch = ByteBuffer.allocate(RECORD_SIZE * 256);
+
+    // Only touched by the save thread after recovery
+    private SaveData durable = new SaveData();
+    private FileChannel journal;
+    private long journalStart = 0;
+    private int journalRecords = 0;
+
+    /**
+     * Constructs an InventoryLedger.
+     */
+    private InventoryLedger() {
+    }
+
+    /**
+     * Get value for instance
+     *
+     * @return the shared ledger
+     */
+    static InventoryLedger getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records a change. Safe to call from any thread, never blocks on I/O and only allocates if
+     * CAPACITY records are already waiting.
+     *
+     * @param type   record type
+     * @param arg    small argument such as a powerup kind
+     * @param amount value of the change
+     */
+    void record(int type, int arg, int amount) {
+        long record = pack(type, arg, amount);
+        if (overflow.isEmpty()) {
+            long sequence;
+            do {
+                sequence = head.get();
+                if (sequence - tail.get() >= CAPACITY) {
+                    overflow.offer(record);
+                    return;
+                }
+            } while (!head.compareAndSet(sequence, sequence + 1));
+            ring.set((int) sequence & MASK, record);
+            return;
+        }
+        overflow.offer(record);
+    }
+
+    /**
+     * Checks whether any records are waiting to be committed.
+     */
+    private boolean hasPending() {
+        return tail.get() != head.get() || !overflow.isEmpty();
+    }
+
+    /**
+     * Takes the next waiting record, from the ring then the overflow queue. Runs on the save
+     * thread.
+     *
+     * @return packed record, or 0 if none are waiting
+     */
+    private long take() {
+        long sequence = tail.get();
+        if (sequence != head.get()) {
+            int slot = (int) sequence & MASK;
+            long record;
+            // The producer has claimed the slot but may not have written it yet
+            while ((record = ring.get(slot)) == 0) {
+                Thread.onSpinWait();
+            }
+            ring.set(slot, 0);
+            tail.set(sequence + 1);
+            return record;
+        }
+        Long record = overflow.poll();
+        return record == null ? 0 : record;
+    }
+
+    /**
+     * Replays the journal on top of a loaded snapshot. Called once at startup before any records.
+     *
+     * @param snapshot save file contents, updated in place
+     */
+    synchronized void recover(SaveData snapshot) {
+        durable = snapshot;
+        journalStart = snapshot.journalSequence;
+        journalRecords = 0;
+
+        if (!Files.exists(JOURNAL_PATH)) {
+            return;
+        }
+
+        try {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(JOURNAL_PATH));
+            if (data.limit() < HEADER_SIZE) {
+                return;
+            }
+            long sequence = data.getLong();
+            int replayed = 0;
+            // A torn final record is ignored, the rest were synced before the crash
+            while (data.remaining() >= RECORD_SIZE) {
+                long record = data.getLong();
+                if (!isValid(record)) {
+                    break;
+                }
+                if (sequence >= snapshot.journalSequence) {
+                    apply(snapshot, record);
+                    replayed++;
+                }
+                sequence++;
+            }
+            snapshot.journalSequence = Math.max(sequence, snapshot.journalSequence);
+
+            // Fold the replayed records into a fresh snapshot so the journal restarts clean
+            if (replayed > 0) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read save journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all pending records to the journal as one batch. Runs on the save thread.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    synchronized void commit() throws IOException {
+        if (!hasPending()) {
+            return;
+        }
+        FlightEvents.SaveEvent event = new FlightEvents.SaveEvent();
+        event.begin();
+        if (journal == null) {
+            openJournal();
+        }
+
+        int records = 0;
+        for (long record = take(); record != 0; record = take()) {
+            if (!batch.hasRemaining()) {
+                writeBatch();
+            }
+            batch.putLong(record);
+            apply(durable, record);
+            durable.journalSequence++;
+            journalRecords++;
+            records++;
+        }
+        writeBatch();
+        journal.force(false);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = JOURNAL_PATH.toString();
+            event.bytes = (long) records * Long.BYTES;
+            event.commit();
+        }
+
+        if (journalRecords >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Commits pending records then writes them all into the save file snapshot and empties the journal.
+     *
+     * @throws IOException if the snapshot or journal could not be written
+     */
+    synchronized void compact() throws IOException {
+        if (hasPending()) {
+            commit();
+        }
+        SaveService.writeAtomically(SaveService.getSavePath(), durable.encode());
+
+        // The snapshot now covers every record, so the journal can restart from its sequence
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        journalStart = durable.journalSequence;
+        journalRecords = 0;
+        openJournal();
+    }
+
+    /**
+     * Opens the journal for appending, rewriting it from empty if it holds no uncompacted records.
+     */
+    private void openJournal() throws IOException {
+        if (journalRecords == 0) {
+            journal = FileChannel.open(JOURNAL_PATH, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(journalStart);
+            header.flip();
+            journal.write(header);
+            journal.force(false);
+        } else {
+            journal = FileChannel.open(JOURNAL_PATH, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Appends the batch buffer to the journal.
+     */
+    private void writeBatch() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            journal.write(batch);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Applies one record to a copy of the inventory.
+     *
+     * @param save   inventory copy
+     * @param record packed record
+     */
+    static void apply(SaveData save, long record) {
+        int type = (int) (record >>> 56);
+        int arg = (int) (record >>> 48) & 0xff;
+        int amount = (int) record;
+
+        switch (type) {
+            case CURRENCY:
+                save.currency += amount;
+                break;
+            case POWERUP:
+                if (arg == FOG_LIGHTS) {
+                    save.fogLightsCount += amount;
+                } else if (arg == INVINCIBILITY) {
+                    save.invincibilityCount += amount;
+                } else if (arg == SLOW_MOTION) {
+                    save.slowMotionCount += amount;
+                }
+                break;
+            case CLEAR_POWERUPS:
+                save.fogLightsCount = 0;
+                save.invincibilityCount = 0;
+                save.slowMotionCount = 0;
+                break;
+            case HIGH_SCORE:
+                save.highScore = Math.max(save.highScore, amount);
+                break;
+            case OWN_VEHICLE:
+                if (arg == PlayerInventory.Vehicles.TRUCK.ordinal()) {
+                    save.truckOwned = true;
+                } else if (arg == PlayerInventory.Vehicles.ATV.ordinal()) {
+                    save.atvOwned = true;
+                }
+                break;
+            case EQUIP_VEHICLE:
+                save.setVehicle(arg);
+                break;
+            case SETTING:
+                if (arg == MUSIC) {
+                    save.musicOn = amount != 0;
+                } else if (arg == SOUNDS) {
+                    save.soundsOn = amount != 0;
+                } else if (arg == FPS) {
+                    save.showFPS = amount != 0;
+                }
+                break;
+            case RESET:
+                SaveData defaults = new SaveData();
+                save.highScore = defaults.highScore;
+                save.currency = defaults.currency;
+                save.musicOn = defaults.musicOn;
+                save.soundsOn = defaults.soundsOn;
+                save.showFPS = defaults.showFPS;
+                save.truckOwned = defaults.truckOwned;
+                save.atvOwned = defaults.atvOwned;
+                save.equippedVehicle = defaults.equippedVehicle;
+                break;
+        }
+    }
+
+    /**
+     * Packs a record into a long: type, arg, 16 bit check value, amount.
+     */
+    private static long pack(int type, int arg, int amount) {
+        long record = ((long) type << 56) | ((long) (arg & 0xff) << 48) | (amount & 0xffffffffL);
+        return record | ((long) check(record) << 32);
+    }
+
+    /**
+     * Tells a whole record from a torn or zeroed one.
+     */
+    private static boolean isValid(long record) {
+        int type = (int) (record >>> 56);
+        return type >= CURRENCY && type <= RESET && ((record >>> 32) & 0xffff) == check(record);
+    }
+
+    /**
+     * Check value for the type, arg and amount of a record.
+     */
+    private static int check(long record) {
+        long fields = record & 0xffff0000ffffffffL;
+        int hash = (int) (fields ^ (fields >>> 32)) * 0x9E3779B1;
+        return ((hash >>> 16) ^ hash) & 0xffff;
+    }
+}
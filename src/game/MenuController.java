@@ -30,6 +30,14 @@ public class MenuController implements KeyboardControllable {
         this.mooseGame = canvas;
     }
 
+    /**
+     * Returns to the top of the main menu.
+     */
+    public void reset() {
+        menuState = 0;
+        menuSelection = 0;
+    }
+
     /**
      * Renders graphics for Menu screen.
      *
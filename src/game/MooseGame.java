@@ -1,8 +1,7 @@
 package game;
 
 import actors.KeyboardControllable;
-
-import java.applet.AudioClip;
+import actors.SpawnTable;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
@@ -11,6 +10,8 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
 import java.awt.image.ImageObserver;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -29,6 +30,7 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
     public static final int HEIGHT = 750;
     public static final int DESIRED_FPS = 60;
     public static final int SLOW_MOTION_FPS = 30;
+    public static final String AUTOPILOT_PROPERTY = "moosegame.autopilot";
 
 //    private InputHandler gameKeyPressedHandler;
 //    private InputHandler gameKeyReleasedHandler;
@@ -46,16 +48,27 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
 
     public long usedTime; //time taken per game step
     public BufferStrategy strategy; //double buffering strategy
-    public static AudioClip backgroundMusic;
+    private static MusicStream backgroundMusic;
 
     private MenuController menuController;
     private GameplayController gameplayController;
     private StoreController storeController;
     private GameOverScreenController gameOverScreenController;
+    private WarmUp warmUp;
+    private FrameHeadroom frameHeadroom = new FrameHeadroom();
+    private SpectatorServer spectator;
+    private boolean autopilot = Boolean.getBoolean(AUTOPILOT_PROPERTY);
+
+    // Milliseconds the autopilot shows each screen between games
+    private static final int AUTOPILOT_SCREEN_MILLIS = 1500;
+    private long screenShownAt;
 
-    private boolean spriteBlinkStatus = false;
+    private volatile boolean spriteBlinkStatus = false;
     private static final int SPRITE_BLINK_INTERVAL = 100;
 
+    private static final Font DEFAULT_FONT = new Font("Impact", Font.PLAIN, 40);
+    private static final GlyphFont FPS_TEXT = new GlyphFont(new Font("Courier New", Font.PLAIN, 30), Color.RED, "-0123456789 fps");
+
 
     /**
      * Initializes different game states
@@ -78,6 +91,12 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
 
         // Load high score, currency, and saved settings
         PlayerInventory.loadFromFile();
+        StartupTimer.mark("PlayerInventory.loadFromFile");
+
+        // Start the mixer and decode sound effects before the first frame
+        AudioEngine.getInstance().start();
+        ResourceLoader.getInstance().preloadSounds("coin.wav", "explosion.wav", "powerup.wav", "gameover.wav");
+        AssetWatcher.startIfEnabled();
 
         //init the UI
         setBounds(0, 0, MooseGame.WIDTH, MooseGame.HEIGHT);
@@ -100,6 +119,7 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
         frame.setBounds(0, 0, MooseGame.WIDTH, MooseGame.HEIGHT);
         frame.setResizable(false);
         frame.setVisible(true);
+        StartupTimer.mark("frame visible");
 
         /*
          * WindowListener is added to the JFrame instance to clean up resources upon
@@ -117,61 +137,116 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
         createBufferStrategy(2);
 
         strategy = getBufferStrategy();
+        StartupTimer.mark("createBufferStrategy");
 
         requestFocus();
 
         spriteBlinkTimer();
 
+        // Controllers are built once and reset in place on each state change
+        menuController = new MenuController(this);
+        gameplayController = new GameplayController(this);
+        gameplayController.setRewindBuffer(RewindBuffer.fromProperty());
+        gameplayController.getEvents().subscribe(new InventoryEvents());
+        gameplayController.getEvents().subscribeAsync(new SoundEvents(this));
+        gameplayController.getEvents().subscribeAsync(new SaveEvents());
+        SessionAnalytics.subscribeIfEnabled(gameplayController.getEvents());
+        spectator = SpectatorServer.startIfEnabled(SpawnTable.getDefault());
+        if (autopilot) {
+            // Unattended games must not change the saved profile
+            PlayerInventory.beginSandbox(PlayerInventory.getFogLightsCount(),
+                    PlayerInventory.getInvincibilityCount(), PlayerInventory.getSlowMotionCount());
+            gameplayController.setAutopilot(true);
+        }
+        storeController = new StoreController(this);
+        gameOverScreenController = new GameOverScreenController(this, 0, 0);
+
+        keyPressedHandler = new InputHandler(this, menuController, InputHandler.Action.PRESS);
+        keyReleasedHandler = new InputHandler(this, menuController, InputHandler.Action.RELEASE);
+
         initMenu();
 
+        warmUp = new WarmUp(this);
+        warmUp.start();
+
     }
 
 
     /**
-     * Method declares game state as MENU, creates new instance of MenuController class,
+     * Method declares game state as MENU, resets the MenuController,
      * calls PRESS and RELEASE key actions from InputHandler class.
      */
     public void initMenu() {
+        FlightEvents.stateTransition(gameState, gameStates.MENU);
         gameState = gameStates.MENU;
-        menuController = new MenuController(this);
+        menuController.reset();
 
-        keyPressedHandler = new InputHandler(this, menuController, InputHandler.Action.PRESS);
-        keyReleasedHandler = new InputHandler(this, menuController, InputHandler.Action.RELEASE);
+        keyPressedHandler.setListener(menuController);
+        keyReleasedHandler.setListener(menuController);
     }
 
     /**
-     * Method declares game state as GAME, creates new instance of GameplayController class,
-     * calls PRESS and RELEASE key action from InputHandler class.
+     * Method declares game state as GAME, resets the GameplayController with an entity
+     * budget measured from earlier games, calls PRESS and RELEASE key action from InputHandler class.
      */
     public void initGame() {
+        if (warmUp != null) {
+            warmUp.stop();
+        }
+        gameplayController.setEntityBudget(frameHeadroom.getEntityBudget());
+        gameplayController.reset();
+        FlightEvents.stateTransition(gameState, gameStates.GAME);
+        gameState = gameStates.GAME;
+
+        keyPressedHandler.setListener(gameplayController);
+        keyReleasedHandler.setListener(gameplayController);
+    }
+
+    /**
+     * Method declares game state as GAME and replays a recorded game in the window.
+     * The inventory is sandboxed to the replay's starting powerups until the replay ends.
+     *
+     * @param replay recorded game
+     * @throws IllegalArgumentException if the replay was recorded with a different spawn table
+     */
+    public void initReplay(Replay replay) {
+        if (warmUp != null) {
+            warmUp.stop();
+        }
+        gameplayController.reset(replay);
+        PlayerInventory.beginSandbox(replay.getFogLightsCount(), replay.getInvincibilityCount(), replay.getSlowMotionCount());
+        FlightEvents.stateTransition(gameState, gameStates.GAME);
         gameState = gameStates.GAME;
-        gameplayController = new GameplayController(this);
 
         keyPressedHandler.setListener(gameplayController);
         keyReleasedHandler.setListener(gameplayController);
     }
 
     /**
-     * Method declares game state as STORE, creates new instance of StoreController class,
+     * Method declares game state as STORE, resets the StoreController,
      * calls PRESS and RELEASE key actions from InputHandler class.
      */
     public void initStore() {
+        FlightEvents.stateTransition(gameState, gameStates.STORE);
         gameState = gameStates.STORE;
-        storeController = new StoreController(this);
+        storeController.reset();
 
         keyPressedHandler.setListener(storeController);
         keyReleasedHandler.setListener(storeController);
     }
 
     /**
-     * Method declares game state as GAME_OVER, creates new instance of GameOverScreenControlles class,
+     * Method declares game state as GAME_OVER, resets the GameOverScreenController,
      * calls PRESS and RELEASE key actions from InputHandler class.
      *
      * @param finalScore Holds the value of the final score for one gameplay instance
      */
     public void initGameOverScreen(int finalScore, int coins) {
+        gameplayController.getInputLatency().printIfEnabled();
+        gameOverScreenController.reset(finalScore, coins);
+        FlightEvents.stateTransition(gameState, gameStates.GAME_OVER);
         gameState = gameStates.GAME_OVER;
-        gameOverScreenController = new GameOverScreenController(this, finalScore, coins);
+        screenShownAt = System.currentTimeMillis();
 
         keyPressedHandler.setListener(gameOverScreenController);
         keyReleasedHandler.setListener(gameOverScreenController);
@@ -184,13 +259,7 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
 
         //get the graphics from the buffer
         Graphics g = strategy.getDrawGraphics();
-        //init image to background
-        g.setColor(getBackground());
-
-        g.setFont(new Font("Impact", Font.PLAIN, 40));
-
-
-        g.fillRect(0, 0, getWidth(), getHeight());
+        paintBackground(g, getBackground(), getWidth(), getHeight());
 
         if (menuController != null && gameState == gameStates.MENU) {
             menuController.paint(g);
@@ -203,11 +272,13 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
         }
 
         if (PlayerInventory.isShowFPSOverlayOn()) {
-            paintFPS(g);
+            paintFPS(g, usedTime);
         }
 
         //swap buffer
+        g.dispose();
         strategy.show();
+        StartupTimer.firstFrameShown();
     }
 
     /**
@@ -216,14 +287,38 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
      * @param g Graphics to be rendered
      */
     public void paintFPS(Graphics g) {
-        g.setColor(Color.RED);
-        g.setFont(new Font("Courier New", Font.PLAIN, 30));
+        paintFPS(g, usedTime);
+    }
+
+    /**
+     * Clears a frame to the background and sets the default font. Shared with AllocationCheck,
+     * which paints frames without a window.
+     *
+     * @param g          graphics of the frame
+     * @param background background colour
+     * @param width      frame width
+     * @param height     frame height
+     */
+    static void paintBackground(Graphics g, Color background, int width, int height) {
+        g.setColor(background);
+        g.setFont(DEFAULT_FONT);
+        g.fillRect(0, 0, width, height);
+    }
+
+    /**
+     * Paints the frame rate from prerendered digits, so the overlay does not allocate.
+     *
+     * @param g        graphics of the frame
+     * @param usedTime milliseconds the last frame took, or 0 if not yet known
+     */
+    static void paintFPS(Graphics g, long usedTime) {
+        int x;
         if (usedTime > 0) {
-            g.drawString(String.valueOf(1000 / usedTime) + " fps", 0, MooseGame.HEIGHT - 50);
-        }
-        else {
-            g.drawString("--- fps", 0, MooseGame.HEIGHT - 50);
+            x = FPS_TEXT.drawNumber(g, (int) (1000 / usedTime), 0, MooseGame.HEIGHT - 50);
+        } else {
+            x = FPS_TEXT.drawString(g, "---", 0, MooseGame.HEIGHT - 50);
         }
+        FPS_TEXT.drawString(g, " fps", x, MooseGame.HEIGHT - 50);
     }
 
     /**
@@ -254,34 +349,27 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
 
 
     /**
-     * Loads a sound resource and plays it in a loop.
+     * Streams a sound resource in a loop.
      *
      * @param name location of sound
      */
     public void loopSound(final String name) {
         if (PlayerInventory.isSettingMusicOn()) {
-            new Thread(new Runnable() {
-                public void run() {
-                    backgroundMusic = ResourceLoader.getInstance().getSound(name);
-                    backgroundMusic.loop();
-                }
-            }).start();
+            stopMusic();
+            backgroundMusic = new MusicStream(name);
+            backgroundMusic.start();
+            AudioEngine.getInstance().setMusic(backgroundMusic, 1f);
         }
     }
 
     /**
-     * Loads a sound resource and plays it once.
+     * Plays a preloaded sound resource once.
      *
      * @param name location of sound
      */
     public void playSound(final String name) {
-
         if (PlayerInventory.isSettingSoundsOn()) {
-            new Thread(new Runnable() {
-                public void run() {
-                    ResourceLoader.getInstance().getSound(name).play();
-                }
-            }).start();
+            AudioEngine.getInstance().play(ResourceLoader.getInstance().getSound(name), 1f);
         }
     }
 
@@ -290,7 +378,9 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
      */
     public static void stopMusic() {
         if (backgroundMusic != null) {
+            AudioEngine.getInstance().setMusic(null, 1f);
             backgroundMusic.stop();
+            backgroundMusic = null;
         }
     }
 
@@ -310,12 +400,28 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
         usedTime = 0;
         while (isVisible()) {
             long startTime = System.currentTimeMillis();
+            long workStart = System.nanoTime();
 
-            if (gameplayController != null && gameState == gameStates.GAME) {
-                gameplayController.checkCollision();
-                gameplayController.update();
+            if (autopilot && gameState != gameStates.GAME
+                    && startTime - screenShownAt >= AUTOPILOT_SCREEN_MILLIS) {
+                autopilotNextScreen();
             }
+            boolean playing = gameplayController != null && gameState == gameStates.GAME;
+            FlightEvents.FrameEvent frame = playing ? FlightEvents.beginFrame() : null;
+            if (playing) {
+                gameplayController.tick();
+            }
+            long paintStart = System.nanoTime();
             paintWorld();
+            if (playing) {
+                long presented = System.nanoTime();
+                FlightEvents.endFrame(frame, gameplayController, presented - paintStart);
+                gameplayController.framePresented(presented);
+                if (spectator != null) {
+                    spectator.publish(gameplayController);
+                }
+                frameHeadroom.sample(System.nanoTime() - workStart, gameplayController.getEntityCount());
+            }
 
             usedTime = System.currentTimeMillis() - startTime;
 
@@ -334,6 +440,31 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
         }
     }
 
+    /**
+     * Moves the autopilot on from the screen shown between games: from game over to the store,
+     * where it buys powerups, then to the menu and into a new game.
+     */
+    private void autopilotNextScreen() {
+        if (gameState == gameStates.GAME_OVER) {
+            initStore();
+            StoreController.buyPowerups();
+        } else if (gameState == gameStates.STORE) {
+            initMenu();
+        } else {
+            initGame();
+        }
+        screenShownAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the controller for the game being played.
+     *
+     * @return gameplay controller
+     */
+    public GameplayController getGameplayController() {
+        return gameplayController;
+    }
+
     /**
      * Handles key press events dependent on which state the game is in.
      *
@@ -368,6 +499,7 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
      */
     public static void exit() {
         PlayerInventory.saveToFile();
+        SaveService.getInstance().flush();
         ResourceLoader.getInstance().cleanup();
         System.exit(0);
     }
@@ -376,25 +508,34 @@ public class MooseGame extends Canvas implements ImageObserver, KeyListener {
      *  Flips a boolean every SPRITE_BLINK_INTERVAL milliseconds used to draw sprite blinking animation
      */
     public void spriteBlinkTimer() {
-        Timer spriteBlinkTimer = new Timer();
-        spriteBlinkTimer.schedule(
+        Timer spriteBlinkTimer = new Timer("sprite-blink", true);
+        spriteBlinkTimer.scheduleAtFixedRate(
                 new TimerTask() {
                     @Override
                     public void run() {
                         spriteBlinkStatus = !spriteBlinkStatus;
-                        spriteBlinkTimer();
                     }
-                }, SPRITE_BLINK_INTERVAL);
+                }, SPRITE_BLINK_INTERVAL, SPRITE_BLINK_INTERVAL);
     }
 
 
     /**
      * Main method with new instance of MooseGame object that executes the Game method
      *
-     * @param args
+     * @param args optionally --replay followed by a replay file to watch
      */
     public static void main(String[] args) {
+        StartupTimer.mark("main");
         MooseGame mooseGame = new MooseGame();
+
+        if (args.length >= 2 && args[0].equals("--replay")) {
+            try {
+                mooseGame.initReplay(Replay.load(Paths.get(args[1])));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not load replay " + args[1] + ": " + e.getMessage());
+            }
+        }
+
         mooseGame.game();
     }
 }
\ No newline at end of file
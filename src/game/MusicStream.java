@@ -0,0 +1,147 @@
+package game;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * Streams a looping music track into the AudioEngine without holding the whole track in memory.
+ * <p>
+ * A low priority feeder thread decodes the track in small chunks into a ring buffer, reopening the
+ * file at the end so the loop has no gap. The mixer thread reads from the other end of the ring.
+ * Any format AudioSystem can convert to AudioEngine.FORMAT works, including compressed formats
+ * when a decoder is installed, since the conversion stream decodes incrementally.
+ */
+public class MusicStream implements Runnable {
+
+    private static final int RING_SIZE = 1 << 16; // 64k samples, ~1.5 s of audio in 128 KB
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int CHUNK_SAMPLES = 4096;
+    private static final long FEEDER_SLEEP_NANOS = 20 * 1000 * 1000;
+
+    private final String name;
+    private final short[] ring = new short[RING_SIZE];
+    private final byte[] chunk = new byte[CHUNK_SAMPLES * 2];
+
+    // Written only by the feeder and the mixer respectively
+    private volatile long writePosition = 0;
+    private volatile long readPosition = 0;
+
+    private volatile boolean running = false;
+    private Thread feeder;
+    private AudioInputStream stream;
+
+    /**
+     * Constructs a MusicStream.
+     *
+     * @param name location of the music track
+     */
+    public MusicStream(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Starts the feeder thread.
+     */
+    public void start() {
+        running = true;
+        feeder = new Thread(this, "music-feeder");
+        feeder.setDaemon(true);
+        feeder.setPriority(Thread.MIN_PRIORITY);
+        feeder.start();
+    }
+
+    /**
+     * Stops the feeder thread. The stream cannot be restarted.
+     */
+    public void stop() {
+        running = false;
+        if (feeder != null) {
+            LockSupport.unpark(feeder);
+        }
+    }
+
+    /**
+     * Feeder loop, keeps the ring buffer topped up.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (RING_SIZE - (int) (writePosition - readPosition) < CHUNK_SAMPLES) {
+                    LockSupport.parkNanos(FEEDER_SLEEP_NANOS);
+                    continue;
+                }
+                if (!fillChunk()) {
+                    break;
+                }
+            }
+        } finally {
+            closeStream();
+        }
+    }
+
+    /**
+     * Decodes up to one chunk into the ring, reopening the track when it ends.
+     *
+     * @return false if the track could not be read
+     */
+    private boolean fillChunk() {
+        try {
+            if (stream == null) {
+                stream = ResourceLoader.getInstance().openSoundStream(name);
+                if (stream == null) {
+                    return false;
+                }
+            }
+
+            int read = stream.read(chunk, 0, chunk.length);
+            if (read <= 0) {
+                // End of track, start again from the beginning on the next chunk
+                closeStream();
+                return true;
+            }
+
+            long position = writePosition;
+            for (int i = 0; i + 1 < read; i += 2) {
+                ring[(int) (position++ & RING_MASK)] = (short) ((chunk[i] & 0xff) | (chunk[i + 1] << 8));
+            }
+            writePosition = position;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not stream music " + name + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Closes the current decoder stream, if any.
+     */
+    private void closeStream() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // nothing to recover
+            }
+            stream = null;
+        }
+    }
+
+    /**
+     * Mixes buffered samples into the mixer's accumulator. Called only from the mixer thread.
+     * If the feeder has fallen behind the missing samples are left silent.
+     *
+     * @param mix    accumulator to add into
+     * @param frames number of samples wanted
+     * @param gain   volume multiplier scaled by 256
+     */
+    void mixInto(int[] mix, int frames, int gain) {
+        long position = readPosition;
+        int available = (int) Math.min(frames, writePosition - position);
+        for (int i = 0; i < available; i++) {
+            mix[i] += (ring[(int) (position++ & RING_MASK)] * gain) >> 8;
+        }
+        readPosition = position;
+    }
+}
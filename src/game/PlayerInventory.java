@@ -1,24 +1,31 @@
 package game;
 
-import java.io.*;
-import java.util.Scanner;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static game.InventoryLedger.*;
 
 /**
  * Manages the player's inventory, high score, and settings.
+ * <p>
+ * Counters are atomic because the store, pickup collection and the game loop run on different
+ * threads. Every change is also recorded in the InventoryLedger so it survives a crash.
  */
 public class PlayerInventory {
 
-    private static boolean settingsMusicOn = true;
-    private static boolean settingSoundsOn = true;
-    private static boolean showFPSOverlay = false;
-    private static int highScore = 0;
-    private static int fogLightsCount = 0;
-    private static int slowMotionCount = 0;
-    private static int invincibilityCount = 0;
-    private static int currency = 0;
+    private static volatile boolean settingsMusicOn = true;
+    private static volatile boolean settingSoundsOn = true;
+    private static volatile boolean showFPSOverlay = false;
+    private static final AtomicInteger highScore = new AtomicInteger();
+    private static final AtomicInteger fogLightsCount = new AtomicInteger();
+    private static final AtomicInteger slowMotionCount = new AtomicInteger();
+    private static final AtomicInteger invincibilityCount = new AtomicInteger();
+    private static final AtomicInteger currency = new AtomicInteger();
 
-    private static boolean truckOwned = false;
-    private static boolean atvOwned = false;
+    private static volatile boolean truckOwned = false;
+    private static volatile boolean atvOwned = false;
 
     public enum Vehicles {
         CAR,
@@ -26,7 +33,11 @@ public class PlayerInventory {
         ATV
     }
 
-    private static Vehicles equippedVehicle = Vehicles.CAR;
+    private static volatile Vehicles equippedVehicle = Vehicles.CAR;
+
+    // While sandboxed nothing is recorded or saved, and endSandbox restores the real values
+    private static volatile boolean sandboxed = false;
+    private static SaveData sandboxBackup;
 
     /**
      * Gets the currently equipped value.
@@ -44,6 +55,7 @@ public class PlayerInventory {
      */
     public static void setEquippedVehicle(Vehicles vehicle) {
         equippedVehicle = vehicle;
+        record(EQUIP_VEHICLE, vehicle.ordinal(), 0);
     }
 
 
@@ -63,6 +75,7 @@ public class PlayerInventory {
      */
     public static void setSettingMusicOn(boolean settingsMusicOn) {
         PlayerInventory.settingsMusicOn = settingsMusicOn;
+        record(SETTING, MUSIC, settingsMusicOn ? 1 : 0);
     }
 
     /**
@@ -81,6 +94,7 @@ public class PlayerInventory {
      */
     public static void setSettingSoundsOn(boolean settingSoundsOn) {
         PlayerInventory.settingSoundsOn = settingSoundsOn;
+        record(SETTING, SOUNDS, settingSoundsOn ? 1 : 0);
     }
 
     /**
@@ -89,7 +103,7 @@ public class PlayerInventory {
      * @return high score
      */
     public static int getHighScore() {
-        return highScore;
+        return highScore.get();
     }
 
     /**
@@ -98,8 +112,8 @@ public class PlayerInventory {
      * @param currentScore int current game score
      */
     public static void setHighScore(int currentScore) {
-        if (currentScore > highScore) {
-            highScore = currentScore;
+        if (currentScore > highScore.getAndAccumulate(currentScore, Math::max)) {
+            record(HIGH_SCORE, 0, currentScore);
         }
     }
 
@@ -119,6 +133,7 @@ public class PlayerInventory {
      */
     public static void setShowFPSOverlay(boolean showFPSOverlay) {
         PlayerInventory.showFPSOverlay = showFPSOverlay;
+        record(SETTING, FPS, showFPSOverlay ? 1 : 0);
     }
 
     /**
@@ -127,7 +142,7 @@ public class PlayerInventory {
      * @return currency int
      */
     public static int getCurrency() {
-        return currency;
+        return currency.get();
     }
 
     /**
@@ -136,7 +151,8 @@ public class PlayerInventory {
      * @param additionalCurrency int amount of currency to add
      */
     public static void addCurrency(int additionalCurrency) {
-        currency += additionalCurrency;
+        currency.addAndGet(additionalCurrency);
+        record(CURRENCY, 0, additionalCurrency);
     }
 
     /**
@@ -146,13 +162,16 @@ public class PlayerInventory {
      * @return Whether sufficient currency exists
      */
     public static boolean spendCurrency(int cost) {
+        int balance;
+        do {
+            balance = currency.get();
+            if (balance < cost) {
+                return false;
+            }
+        } while (!currency.compareAndSet(balance, balance - cost));
 
-        if (currency >= cost) {
-            currency -= cost;
-            return true;
-        } else {
-            return false;
-        }
+        record(CURRENCY, 0, -cost);
+        return true;
     }
 
     /**
@@ -169,6 +188,7 @@ public class PlayerInventory {
      */
     public static void buyTruck() {
         truckOwned = true;
+        record(OWN_VEHICLE, Vehicles.TRUCK.ordinal(), 0);
     }
 
     /**
@@ -185,6 +205,7 @@ public class PlayerInventory {
      */
     public static void buyATV() {
         atvOwned = true;
+        record(OWN_VEHICLE, Vehicles.ATV.ordinal(), 0);
     }
 
 
@@ -194,7 +215,7 @@ public class PlayerInventory {
      * @return fog lights count
      */
     public static int getFogLightsCount() {
-        return fogLightsCount;
+        return fogLightsCount.get();
     }
 
     /**
@@ -203,7 +224,7 @@ public class PlayerInventory {
      * @return slow motion count
      */
     public static int getSlowMotionCount() {
-        return slowMotionCount;
+        return slowMotionCount.get();
     }
 
     /**
@@ -212,28 +233,31 @@ public class PlayerInventory {
      * @return invincibility count
      */
     public static int getInvincibilityCount() {
-        return invincibilityCount;
+        return invincibilityCount.get();
     }
 
     /**
      * Increases fog lights count
      */
     public static void incrementFogLights() {
-        fogLightsCount++;
+        fogLightsCount.incrementAndGet();
+        record(POWERUP, FOG_LIGHTS, 1);
     }
 
     /**
      * Increases invincibility count
      */
     public static void incrementInvincibility() {
-        invincibilityCount++;
+        invincibilityCount.incrementAndGet();
+        record(POWERUP, INVINCIBILITY, 1);
     }
 
     /**
      * Increments slow motion count
      */
     public static void incrementSlowMotion() {
-        slowMotionCount++;
+        slowMotionCount.incrementAndGet();
+        record(POWERUP, SLOW_MOTION, 1);
     }
 
     /**
@@ -242,12 +266,7 @@ public class PlayerInventory {
      * @return whether fog lights powerup is available
      */
     public static boolean useFogLightsPowerup() {
-        if (getFogLightsCount() > 0) {
-            fogLightsCount--;
-            return true;
-        } else {
-            return false;
-        }
+        return usePowerup(fogLightsCount, FOG_LIGHTS);
     }
 
     /**
@@ -256,12 +275,7 @@ public class PlayerInventory {
      * @return whether invincibility powerup is available
      */
     public static boolean useInvincibilityPowerup() {
-        if (getInvincibilityCount() > 0) {
-            invincibilityCount--;
-            return true;
-        } else {
-            return false;
-        }
+        return usePowerup(invincibilityCount, INVINCIBILITY);
     }
 
     /**
@@ -270,97 +284,152 @@ public class PlayerInventory {
      * @return whether slow motion powerup is available
      */
     public static boolean useSlowMotionPowerup() {
-        if (getSlowMotionCount() > 0) {
-            slowMotionCount--;
-            return true;
-        } else {
-            return false;
-        }
+        return usePowerup(slowMotionCount, SLOW_MOTION);
+    }
+
+    /**
+     * Decrements a powerup count if it is above zero.
+     *
+     * @param count powerup counter
+     * @param kind  ledger powerup kind
+     * @return whether a powerup was available
+     */
+    private static boolean usePowerup(AtomicInteger count, int kind) {
+        int available;
+        do {
+            available = count.get();
+            if (available <= 0) {
+                return false;
+            }
+        } while (!count.compareAndSet(available, available - 1));
+
+        record(POWERUP, kind, -1);
+        return true;
     }
 
     /**
      * Resets the number of powerups available to zero.
      */
     public static void clearPowerups() {
-        fogLightsCount = 0;
-        invincibilityCount = 0;
-        slowMotionCount = 0;
+        fogLightsCount.set(0);
+        invincibilityCount.set(0);
+        slowMotionCount.set(0);
+        record(CLEAR_POWERUPS, 0, 0);
     }
 
     /**
-     * Saves game settings to a file.
-     * <p>
-     * Settings include high score, currency, background music, sound effects, FPS overlay,
-     * and vehicle selection/ownership.
+     * Records a change in the ledger unless sandboxed.
      */
-    public static void saveToFile() {
-
-        String equippedVehicleSaveString = "";
+    private static void record(int type, int arg, int amount) {
+        if (!sandboxed) {
+            InventoryLedger.getInstance().record(type, arg, amount);
+        }
+    }
 
-        if (getEquippedVehicle() == Vehicles.CAR) {
-            equippedVehicleSaveString = "Car";
-        } else if (getEquippedVehicle() == Vehicles.TRUCK) {
-            equippedVehicleSaveString = "Truck";
-        } else if (getEquippedVehicle() == Vehicles.ATV) {
-            equippedVehicleSaveString = "ATV";
+    /**
+     * Sets up a throwaway inventory for replays and simulations.
+     * Changes made until endSandbox are neither recorded nor saved.
+     *
+     * @param fogLights     fog lights to start with
+     * @param invincibility invincibility powerups to start with
+     * @param slowMotion    slow motion powerups to start with
+     */
+    public static synchronized void beginSandbox(int fogLights, int invincibility, int slowMotion) {
+        if (!sandboxed) {
+            sandboxBackup = copy();
+            sandboxed = true;
         }
+        fogLightsCount.set(fogLights);
+        invincibilityCount.set(invincibility);
+        slowMotionCount.set(slowMotion);
+    }
 
-        String s = (Integer.toString(highScore) + "," +
-                Integer.toString(currency) + "," +
-                Boolean.toString(settingsMusicOn) + "," +
-                Boolean.toString(settingSoundsOn) + "," +
-                Boolean.toString(showFPSOverlay) + "," +
-                equippedVehicleSaveString + "," +
-                Boolean.toString(truckOwned) + "," +
-                Boolean.toString(atvOwned)
-        );
-        File saveFile = new File("./save.dat");
-        try {
-            FileWriter fw = new FileWriter(saveFile);
-            fw.write(s);
-            fw.close();
-        } catch (IOException e) {
-            System.out.println("IOException occurred");
+    /**
+     * Restores the inventory as it was before beginSandbox.
+     */
+    public static synchronized void endSandbox() {
+        if (sandboxed) {
+            restore(sandboxBackup);
+            sandboxBackup = null;
+            sandboxed = false;
         }
     }
 
     /**
-     * Loads game settings from a save file.
+     * Copies the live inventory.
+     *
+     * @return copy of every saved value
      */
-    public static void loadFromFile() {
+    private static SaveData copy() {
+        SaveData save = new SaveData();
+        save.highScore = highScore.get();
+        save.currency = currency.get();
+        save.fogLightsCount = fogLightsCount.get();
+        save.invincibilityCount = invincibilityCount.get();
+        save.slowMotionCount = slowMotionCount.get();
+        save.musicOn = settingsMusicOn;
+        save.soundsOn = settingSoundsOn;
+        save.showFPS = showFPSOverlay;
+        save.equippedVehicle = equippedVehicle;
+        save.truckOwned = truckOwned;
+        save.atvOwned = atvOwned;
+        return save;
+    }
 
-        File saveFile = new File("./save.dat");
+    /**
+     * Replaces the live inventory.
+     *
+     * @param save values to use
+     */
+    private static void restore(SaveData save) {
+        highScore.set(save.highScore);
+        currency.set(save.currency);
+        fogLightsCount.set(save.fogLightsCount);
+        invincibilityCount.set(save.invincibilityCount);
+        slowMotionCount.set(save.slowMotionCount);
+        settingsMusicOn = save.musicOn;
+        settingSoundsOn = save.soundsOn;
+        showFPSOverlay = save.showFPS;
+        equippedVehicle = save.equippedVehicle;
+        truckOwned = save.truckOwned;
+        atvOwned = save.atvOwned;
+    }
 
-        if (!saveFile.exists()) {
+    /**
+     * Requests that game settings be saved to a file. The write happens on a background thread.
+     * <p>
+     * Settings include high score, currency, powerups, background music, sound effects, FPS overlay,
+     * and vehicle selection/ownership.
+     */
+    public static void saveToFile() {
+        if (sandboxed) {
             return;
         }
+        SaveService.getInstance().requestSave();
+    }
 
-        try {
-            Scanner scanner = new Scanner(saveFile);
-            String line = scanner.nextLine();
-            String[] s = line.split(",");
-
-            highScore = Integer.parseInt(s[0]);
-            currency = Integer.parseInt(s[1]);
-            settingsMusicOn = Boolean.parseBoolean(s[2]);
-            settingSoundsOn = Boolean.parseBoolean(s[3]);
-            showFPSOverlay = Boolean.parseBoolean(s[4]);
-
-            if (s[5].equals("Car")) {
-                equippedVehicle = Vehicles.CAR;
-            } else if (s[5].equals("Truck")) {
-                equippedVehicle = Vehicles.TRUCK;
-            } else if (s[5].equals("ATV")) {
-                equippedVehicle = Vehicles.ATV;
-            }
-            truckOwned = Boolean.parseBoolean(s[6]);
-            atvOwned = Boolean.parseBoolean(s[7]);
+    /**
+     * Loads game settings from the save file and replays any journal records written after it.
+     */
+    public static void loadFromFile() {
+
+        File saveFile = SaveService.getSavePath().toFile();
+        SaveData save = null;
 
+        if (saveFile.exists()) {
+            try {
+                save = SaveData.decode(Files.readAllBytes(saveFile.toPath()));
+            } catch (IOException e) {
+                System.out.println("IOException occurred");
+            }
+        }
 
-        } catch (IOException e) {
-            System.out.println("IOException occurred");
+        if (save == null) {
+            save = new SaveData();
         }
 
+        InventoryLedger.getInstance().recover(save);
+        restore(save);
     }
 
     /**
@@ -369,14 +438,15 @@ public class PlayerInventory {
      * Returns the high score and player currency values to 0, and settings to their default values.
      */
     public static void clearSave() {
-        highScore = 0;
-        currency = 0;
+        highScore.set(0);
+        currency.set(0);
         settingsMusicOn = true;
         settingSoundsOn = true;
         showFPSOverlay = false;
         equippedVehicle = Vehicles.CAR;
         truckOwned = false;
         atvOwned = false;
+        record(RESET, 0, 0);
         saveToFile();
     }
 
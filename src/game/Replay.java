@@ -0,0 +1,368 @@
+package game;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Recording of one run: its seed, starting powerups, entity budget, spawn table fingerprint and
+ * the input seen by every tick.
+ * <p>
+ * The game is deterministic given these, so replaying the inputs reproduces the run exactly. The
+ * spawn table itself is not stored, only its fingerprint, so a replay is refused rather than
+ * silently diverging when played with a different table.
+ * Inputs are stored as runs of identical per-tick bitmasks. On disk each run is the XOR with the
+ * previous mask and the run length as varints, so a five minute run fits in a few KB.
+ */
+public class Replay {
+
+    public static final Path LAST_REPLAY_PATH = Paths.get("./last.replay");
+
+    private static final int MAGIC = 0x4D525033; // "MRP3"
+    private static final int OLD_MAGIC = 0x4D525031; // "MRP1", before the entity budget was recorded
+    private static final int OLD_MAGIC_2 = 0x4D525032; // "MRP2", before the spawn table was recorded
+
+    private long seed;
+    private int fogLightsCount;
+    private int invincibilityCount;
+    private int slowMotionCount;
+    private int vehicle;
+    private int entityBudget;
+    private long tableFingerprint;
+    private int finalScore = -1;
+
+    private int[] masks = new int[64];
+    private int[] lengths = new int[64];
+    private int runCount = 0;
+    private int tickCount = 0;
+
+    /**
+     * Constructs an empty Replay for a new run.
+     *
+     * @param seed               seed the run was started with
+     * @param fogLightsCount     fog lights owned at the start
+     * @param invincibilityCount invincibility powerups owned at the start
+     * @param slowMotionCount    slow motion powerups owned at the start
+     * @param vehicle            ordinal of the equipped vehicle
+     * @param entityBudget       live entity limit the run was played with
+     * @param tableFingerprint   SpawnTable.getFingerprint of the table the run was played with
+     */
+    public Replay(long seed, int fogLightsCount, int invincibilityCount, int slowMotionCount, int vehicle,
+                  int entityBudget, long tableFingerprint) {
+        this.seed = seed;
+        this.fogLightsCount = fogLightsCount;
+        this.invincibilityCount = invincibilityCount;
+        this.slowMotionCount = slowMotionCount;
+        this.vehicle = vehicle;
+        this.entityBudget = entityBudget;
+        this.tableFingerprint = tableFingerprint;
+    }
+
+    /**
+     * Appends the input of the next tick.
+     *
+     * @param mask input bitmask
+     */
+    public void append(int mask) {
+        if (runCount > 0 && masks[runCount - 1] == mask) {
+            lengths[runCount - 1]++;
+        } else {
+            if (runCount == masks.length) {
+                masks = Arrays.copyOf(masks, runCount * 2);
+                lengths = Arrays.copyOf(lengths, runCount * 2);
+            }
+            masks[runCount] = mask;
+            lengths[runCount] = 1;
+            runCount++;
+        }
+        tickCount++;
+    }
+
+    /**
+     * Drops the input recorded after a tick, as when the game is rewound to it.
+     *
+     * @param ticks number of ticks to keep
+     */
+    public void truncate(int ticks) {
+        if (ticks >= tickCount) {
+            return;
+        }
+        int run = 0;
+        int remaining = ticks;
+        while (remaining >= lengths[run]) {
+            remaining -= lengths[run];
+            run++;
+        }
+        runCount = run;
+        if (remaining > 0) {
+            lengths[runCount++] = remaining;
+        }
+        tickCount = ticks;
+        finalScore = -1;
+    }
+
+    /**
+     * Gets the seed
+     *
+     * @return seed the run was started with
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets value for fogLightsCount
+     *
+     * @return fog lights owned at the start
+     */
+    public int getFogLightsCount() {
+        return fogLightsCount;
+    }
+
+    /**
+     * Gets value for invincibilityCount
+     *
+     * @return invincibility powerups owned at the start
+     */
+    public int getInvincibilityCount() {
+        return invincibilityCount;
+    }
+
+    /**
+     * Gets value for slowMotionCount
+     *
+     * @return slow motion powerups owned at the start
+     */
+    public int getSlowMotionCount() {
+        return slowMotionCount;
+    }
+
+    /**
+     * Gets the equipped vehicle
+     *
+     * @return vehicle ordinal
+     */
+    public int getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Gets the entity budget
+     *
+     * @return live entity limit the run was played with
+     */
+    public int getEntityBudget() {
+        return entityBudget;
+    }
+
+    /**
+     * Gets the spawn table fingerprint
+     *
+     * @return SpawnTable.getFingerprint of the table the run was played with
+     */
+    public long getTableFingerprint() {
+        return tableFingerprint;
+    }
+
+    /**
+     * Gets the recorded final score
+     *
+     * @return final score, or -1 if the run did not finish
+     */
+    public int getFinalScore() {
+        return finalScore;
+    }
+
+    /**
+     * Sets the final score once the run ends.
+     *
+     * @param finalScore score at game over
+     */
+    public void setFinalScore(int finalScore) {
+        this.finalScore = finalScore;
+    }
+
+    /**
+     * Gets the number of recorded ticks
+     *
+     * @return tick count
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Creates a cursor that returns the recorded input one tick at a time.
+     *
+     * @return new cursor at the first tick
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Reads recorded input in tick order.
+     */
+    public class Cursor {
+        private int run = 0;
+        private int usedInRun = 0;
+
+        /**
+         * Checks for remaining input.
+         *
+         * @return whether another tick was recorded
+         */
+        public boolean hasNext() {
+            return run < runCount;
+        }
+
+        /**
+         * Moves the cursor so the next input returned is that of the given tick.
+         *
+         * @param tick number of ticks already run
+         */
+        public void seek(int tick) {
+            run = 0;
+            usedInRun = 0;
+            while (run < runCount && tick >= lengths[run]) {
+                tick -= lengths[run];
+                run++;
+            }
+            if (run < runCount) {
+                usedInRun = tick;
+            }
+        }
+
+        /**
+         * Gets the input of the next tick. Once the recording runs out no keys are held.
+         *
+         * @return input bitmask
+         */
+        public int next() {
+            if (run >= runCount) {
+                return 0;
+            }
+            int mask = masks[run];
+            if (++usedInRun == lengths[run]) {
+                run++;
+                usedInRun = 0;
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * Encodes the replay.
+     *
+     * @return encoded replay
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + runCount * 3);
+        writeFixedInt(out, MAGIC);
+        writeVarLong(out, seed);
+        writeVarLong(out, fogLightsCount);
+        writeVarLong(out, invincibilityCount);
+        writeVarLong(out, slowMotionCount);
+        writeVarLong(out, vehicle);
+        writeVarLong(out, entityBudget);
+        writeVarLong(out, tableFingerprint);
+        writeVarLong(out, finalScore + 1);
+        writeVarLong(out, runCount);
+
+        int previous = 0;
+        for (int i = 0; i < runCount; i++) {
+            writeVarLong(out, masks[i] ^ previous);
+            writeVarLong(out, lengths[i]);
+            previous = masks[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a replay made by encode.
+     *
+     * @param data encoded replay
+     * @return replay
+     * @throws IOException if the data is not a replay
+     */
+    public static Replay decode(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            int magic = in.getInt();
+            if (magic == OLD_MAGIC || magic == OLD_MAGIC_2) {
+                throw new IOException("Replay was recorded by an older version of the game");
+            }
+            if (magic != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            Replay replay = new Replay(readVarLong(in), (int) readVarLong(in), (int) readVarLong(in),
+                    (int) readVarLong(in), (int) readVarLong(in), (int) readVarLong(in), readVarLong(in));
+            replay.finalScore = (int) readVarLong(in) - 1;
+
+            int runs = (int) readVarLong(in);
+            int mask = 0;
+            for (int i = 0; i < runs; i++) {
+                mask ^= (int) readVarLong(in);
+                int length = (int) readVarLong(in);
+                for (int j = 0; j < length; j++) {
+                    replay.append(mask);
+                }
+            }
+            return replay;
+        } catch (RuntimeException e) {
+            throw new IOException("Replay file is corrupt", e);
+        }
+    }
+
+    /**
+     * Reads a replay file.
+     *
+     * @param path replay file
+     * @return replay
+     * @throws IOException if the file could not be read
+     */
+    public static Replay load(Path path) throws IOException {
+        return decode(Files.readAllBytes(path));
+    }
+
+    /**
+     * Writes a fixed size big endian int.
+     */
+    private static void writeFixedInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint. Negative values take ten bytes, which only the seed and table
+     * fingerprint use.
+     */
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     */
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
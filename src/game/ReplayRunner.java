@@ -0,0 +1,70 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Re-simulates a recorded game without a window, as fast as possible.
+ * <p>
+ * Usage: java -cp ... game.ReplayRunner [replay file]. Defaults to the last game played.
+ * Prints the score reached and exits with status 1 if it differs from the recorded score.
+ */
+public class ReplayRunner {
+
+    /**
+     * Runs a replay until game over or until its input runs out.
+     *
+     * @param replay recorded game
+     * @return controller in its final state
+     * @throws IllegalArgumentException if the replay was recorded with a different spawn table
+     */
+    public static GameplayController run(Replay replay) {
+        GameplayController controller = new GameplayController(null);
+        controller.reset(replay);
+
+        // Same order as MooseGame.game(): collisions, then update
+        for (int tick = 0; tick < replay.getTickCount(); tick++) {
+            controller.checkCollision();
+            if (controller.isGameOver()) {
+                break;
+            }
+            controller.update();
+        }
+        return controller;
+    }
+
+    /**
+     * Main method that replays a file and compares the result with the recording.
+     *
+     * @param args optional replay file
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Path path = args.length > 0 ? Paths.get(args[0]) : Replay.LAST_REPLAY_PATH;
+
+        Replay replay;
+        try {
+            replay = Replay.load(path);
+        } catch (IOException e) {
+            System.err.println("Could not load replay " + path + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        long start = System.nanoTime();
+        GameplayController controller;
+        try {
+            controller = run(replay);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not replay " + path + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Replayed " + replay.getTickCount() + " ticks in " + elapsed / 1000000 + " ms");
+        System.out.println("Score: " + controller.getScore() + " (recorded " + replay.getFinalScore() + ")");
+        System.exit(controller.getScore() == replay.getFinalScore() ? 0 : 1);
+    }
+}
@@ -1,17 +1,22 @@
 package game;
 
-import java.applet.Applet;
-import java.applet.AudioClip;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
 /**
  * Handles resources to be implemented within the game environment.
@@ -19,8 +24,10 @@ import javax.imageio.ImageIO;
 public class ResourceLoader implements ImageObserver {
 
 
-    private Map<String, BufferedImage> images = new HashMap<String, BufferedImage>();
-    private Map<String, AudioClip> sounds = new HashMap<String, AudioClip>();
+    // Concurrent so AssetWatcher can swap in reloaded assets while the game reads them
+    private Map<String, BufferedImage> images = new ConcurrentHashMap<String, BufferedImage>();
+    private Map<String, short[]> sounds = new ConcurrentHashMap<String, short[]>();
+    private Map<String, SpriteMask> masks = new ConcurrentHashMap<String, SpriteMask>();
 
     private static ResourceLoader instance = new ResourceLoader();
 
@@ -43,33 +50,94 @@ public class ResourceLoader implements ImageObserver {
      * Stop sounds and clean up resources.
      */
     public void cleanup() {
-        for (AudioClip sound : sounds.values()) {
-            sound.stop();
-        }
-
+        AudioEngine.getInstance().shutdown();
     }
 
     /**
-     * Checks whether sound is available and loads it.
+     * Checks whether sound is available and loads it as PCM samples in the AudioEngine format.
      *
      * @param name location of sound
-     * @return status of sound
+     * @return decoded samples, or null if the sound could not be loaded
      */
-    public AudioClip getSound(String name) {
-        AudioClip sound = sounds.get(name);
+    public short[] getSound(String name) {
+        short[] sound = sounds.get(name);
         if (null != sound)
             return sound;
 
-        URL url = null;
-        try {
-            url = getClass().getClassLoader().getResource("res/" + name);
-            sound = Applet.newAudioClip(url);
+        sound = loadSound(name);
+        if (sound != null) {
             sounds.put(name, sound);
+        }
+        return sound;
+    }
+
+    /**
+     * Decodes a sound resource without touching the cache.
+     *
+     * @param name location of sound
+     * @return decoded samples, or null if the sound could not be loaded
+     */
+    private short[] loadSound(String name) {
+        FlightEvents.AssetLoadEvent event = new FlightEvents.AssetLoadEvent();
+        event.begin();
+        try {
+            AudioInputStream pcm = openSoundStream(name);
+            if (pcm == null) {
+                return null;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = pcm.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            pcm.close();
+
+            byte[] data = bytes.toByteArray();
+            short[] sound = new short[data.length / 2];
+            for (int i = 0; i < sound.length; i++) {
+                sound[i] = (short) ((data[2 * i] & 0xff) | (data[2 * i + 1] << 8));
+            }
+            commitLoad(event, name, "sound", true);
+            return sound;
         } catch (Exception e) {
             System.err.println("Could not locate sound " + name + ": " + e.getMessage());
+            commitLoad(event, name, "sound", false);
+            return null;
         }
+    }
 
-        return sound;
+    /**
+     * Opens a sound resource as a stream decoding to the AudioEngine format as it is read.
+     * Nothing is cached, so this is suited to long tracks such as music.
+     *
+     * @param name location of sound
+     * @return decoding stream, or null if the sound could not be opened
+     */
+    public AudioInputStream openSoundStream(String name) {
+        try {
+            URL url = getClass().getClassLoader().getResource("res/" + name);
+            AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(url.openStream()));
+            if (source.getFormat().matches(AudioEngine.FORMAT)) {
+                return source;
+            }
+            return AudioSystem.getAudioInputStream(AudioEngine.FORMAT, source);
+        } catch (Exception e) {
+            System.err.println("Could not locate sound " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads sounds ahead of time so the first playback does not decode on the game thread.
+     *
+     * @param names locations of sounds
+     */
+    public void preloadSounds(String... names) {
+        for (String name : names) {
+            getSound(name);
+        }
     }
 
     /**
@@ -82,6 +150,11 @@ public class ResourceLoader implements ImageObserver {
      */
     public static BufferedImage createCompatible(int width, int height,
                                                  int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            // No screen to be compatible with, e.g. headless simulations
+            return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
         GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
         BufferedImage compatible = gc.createCompatibleImage(width, height,
                 transparency);
@@ -99,21 +172,115 @@ public class ResourceLoader implements ImageObserver {
         if (null != image)
             return image;
 
-        URL url = null;
+        image = loadSprite(name);
+        if (image != null) {
+            images.put(name, image);
+        }
+        return image;
+    }
+
+    /**
+     * Gets the collision mask of a sprite, built from its alpha channel the first time.
+     *
+     * @param name name of image
+     * @return mask, or null if the image could not be loaded
+     */
+    public SpriteMask getMask(String name) {
+        SpriteMask mask = masks.get(name);
+        if (null != mask)
+            return mask;
+
+        BufferedImage image = getSprite(name);
+        if (image == null) {
+            return null;
+        }
+        FlightEvents.AssetLoadEvent event = new FlightEvents.AssetLoadEvent();
+        event.begin();
+        mask = new SpriteMask(image);
+        commitLoad(event, name, "mask", true);
+        masks.put(name, mask);
+        return mask;
+    }
+
+    /**
+     * Decodes an image into a compatible image without touching the cache.
+     *
+     * @param name name of image
+     * @return compatible image, or null if the image could not be loaded
+     */
+    private BufferedImage loadSprite(String name) {
+        FlightEvents.AssetLoadEvent event = new FlightEvents.AssetLoadEvent();
+        event.begin();
         try {
-            url =
-                    getClass().getClassLoader().getResource("res/" + name);
-            image = ImageIO.read(url);
+            URL url = getClass().getClassLoader().getResource("res/" + name);
+            BufferedImage image = ImageIO.read(url);
             //store a compatible image instead of the original format
             BufferedImage compatible = createCompatible(image.getWidth(), image.getHeight(), Transparency.BITMASK);
             compatible.getGraphics().drawImage(image, 0, 0, this);
-
-            images.put(name, compatible);
+            commitLoad(event, name, "sprite", true);
+            return compatible;
         } catch (Exception e) {
             System.err.println("Cound not locate image " + name + ": " + e.getMessage());
+            commitLoad(event, name, "sprite", false);
+            return null;
         }
+    }
 
-        return image;
+    /**
+     * Ends an asset load event and commits it if it is recorded.
+     */
+    private static void commitLoad(FlightEvents.AssetLoadEvent event, String name, String kind, boolean loaded) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.name = name;
+            event.kind = kind;
+            event.loaded = loaded;
+            event.commit();
+        }
+    }
+
+    /**
+     * Decodes a changed asset again and swaps it into the cache in one step.
+     * Assets that were never loaded are skipped, and a failed decode keeps the old copy.
+     *
+     * @param name name of the changed asset
+     * @return whether a cached asset was replaced
+     */
+    public boolean reload(String name) {
+        if (images.containsKey(name)) {
+            BufferedImage image = loadSprite(name);
+            if (image != null) {
+                images.put(name, image);
+                if (masks.containsKey(name)) {
+                    masks.put(name, new SpriteMask(image));
+                }
+                return true;
+            }
+        } else if (sounds.containsKey(name)) {
+            short[] sound = loadSound(name);
+            if (sound != null) {
+                sounds.put(name, sound);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the resource directory on disk, if resources are loaded from a directory rather than a jar.
+     *
+     * @return resource directory, or null if resources are not plain files
+     */
+    public Path getResourceDirectory() {
+        try {
+            URL url = getClass().getClassLoader().getResource("res/");
+            if (url != null && "file".equals(url.getProtocol())) {
+                return Paths.get(url.toURI());
+            }
+        } catch (URISyntaxException e) {
+            System.err.println("Could not locate resource directory: " + e.getMessage());
+        }
+        return null;
     }
 
     /**
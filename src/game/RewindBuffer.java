@@ -0,0 +1,350 @@
+package game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps a snapshot of every recent tick within a fixed memory budget, so a game can be rewound.
+ * <p>
+ * Snapshots live in one circular byte array. Every KEYFRAME_INTERVAL ticks a full snapshot is
+ * stored as a keyframe. The ticks in between are stored as the XOR with their keyframe, with runs
+ * of zero bytes left out, which is usually a tenth of the size. Restoring any stored tick is one
+ * keyframe copy plus one delta, however far back it is. When the budget is used up the oldest
+ * keyframe and its deltas are dropped together.
+ * <p>
+ * The budget is set in KB with -Dmoosegame.rewind=KB. It is off by default.
+ */
+public class RewindBuffer {
+
+    public static final String BUDGET_PROPERTY = "moosegame.rewind";
+
+    private static final int KEYFRAME_INTERVAL = 60;
+    // Bytes of budget per index entry; a quarter of the budget goes to the index
+    private static final int BYTES_PER_ENTRY = 64;
+
+    private final byte[] data;
+    private final int maxEntries;
+
+    // Per tick, indexed by tick % maxEntries
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] snapshotLengths;
+    private final int[] keyTicks;
+
+    private int oldestTick = 0;
+    private int newestTick = -1;
+    private int head = 0;
+
+    // Latest keyframe, kept uncompressed so deltas can be made against it
+    private byte[] keyframe = new byte[0];
+    private int keyframeLength = 0;
+    private int keyframeTick = -1;
+    private byte[] scratch = new byte[0];
+
+    /**
+     * Constructs a RewindBuffer.
+     *
+     * @param budgetBytes memory to use for snapshots and their index
+     */
+    public RewindBuffer(int budgetBytes) {
+        maxEntries = Math.max(KEYFRAME_INTERVAL * 2, budgetBytes / BYTES_PER_ENTRY);
+        data = new byte[Math.max(budgetBytes - maxEntries * 16, 1024)];
+        offsets = new int[maxEntries];
+        lengths = new int[maxEntries];
+        snapshotLengths = new int[maxEntries];
+        keyTicks = new int[maxEntries];
+    }
+
+    /**
+     * Creates a RewindBuffer with the budget from the moosegame.rewind property.
+     *
+     * @return rewind buffer, or null if rewind is off
+     */
+    public static RewindBuffer fromProperty() {
+        int budgetKB = Integer.getInteger(BUDGET_PROPERTY, 0);
+        return budgetKB > 0 ? new RewindBuffer(budgetKB * 1024) : null;
+    }
+
+    /**
+     * Stores the snapshot of the tick after the newest one, or of any tick if the buffer is empty.
+     *
+     * @param tick     tick the snapshot was taken after
+     * @param snapshot snapshot between position 0 and its limit
+     */
+    public void push(int tick, ByteBuffer snapshot) {
+        if (isEmpty() || tick != newestTick + 1) {
+            clear();
+            oldestTick = tick;
+        }
+
+        int length = snapshot.limit();
+        if (length > data.length) {
+            clear();
+            return;
+        }
+
+        boolean isKeyframe = keyframeTick < oldestTick || tick - keyframeTick >= KEYFRAME_INTERVAL;
+        int encodedLength = isKeyframe ? length : encodeDelta(snapshot, length);
+        if (encodedLength >= length) {
+            isKeyframe = true;
+        }
+
+        if (newestTick - oldestTick + 1 == maxEntries) {
+            evictOldestGroup();
+        }
+        int offset = reserve(isKeyframe ? length : encodedLength);
+        if (!isKeyframe && keyframeTick < oldestTick) {
+            // Making room dropped the keyframe this delta was made against
+            isKeyframe = true;
+            offset = reserve(length);
+        }
+
+        int slot = tick % maxEntries;
+        if (isKeyframe) {
+            snapshot.get(0, data, offset, length);
+            keepKeyframe(snapshot, length, tick);
+            lengths[slot] = length;
+        } else {
+            System.arraycopy(scratch, 0, data, offset, encodedLength);
+            lengths[slot] = encodedLength;
+        }
+        offsets[slot] = offset;
+        snapshotLengths[slot] = length;
+        keyTicks[slot] = keyframeTick;
+
+        if (isEmpty()) {
+            oldestTick = tick;
+        }
+        newestTick = tick;
+        head = offset + lengths[slot];
+    }
+
+    /**
+     * Restores the snapshot of a stored tick.
+     *
+     * @param tick tick to restore
+     * @param into buffer to write the snapshot to, flipped ready to read
+     * @return whether the tick was stored
+     */
+    public boolean restore(int tick, ByteBuffer into) {
+        if (!contains(tick)) {
+            return false;
+        }
+        int slot = tick % maxEntries;
+        int keySlot = keyTicks[slot] % maxEntries;
+        int length = snapshotLengths[slot];
+
+        into.clear();
+        into.put(0, data, offsets[keySlot], Math.min(snapshotLengths[keySlot], length));
+        for (int i = snapshotLengths[keySlot]; i < length; i++) {
+            into.put(i, (byte) 0);
+        }
+        if (keyTicks[slot] != tick) {
+            decodeDelta(offsets[slot], lengths[slot], into);
+        }
+        into.limit(length);
+        return true;
+    }
+
+    /**
+     * Drops every tick after the given one, so the game can continue from there.
+     *
+     * @param tick newest tick to keep
+     */
+    public void truncateAfter(int tick) {
+        if (!contains(tick)) {
+            clear();
+            return;
+        }
+        int slot = tick % maxEntries;
+        newestTick = tick;
+        head = offsets[slot] + lengths[slot];
+
+        int keySlot = keyTicks[slot] % maxEntries;
+        if (keyTicks[slot] != keyframeTick) {
+            keyframeTick = keyTicks[slot];
+            keyframeLength = snapshotLengths[keySlot];
+            if (keyframe.length < keyframeLength) {
+                keyframe = new byte[keyframeLength * 2];
+            }
+            System.arraycopy(data, offsets[keySlot], keyframe, 0, keyframeLength);
+        }
+    }
+
+    /**
+     * Checks whether a tick can be restored.
+     *
+     * @param tick tick to check
+     * @return whether it is stored
+     */
+    public boolean contains(int tick) {
+        return !isEmpty() && tick >= oldestTick && tick <= newestTick;
+    }
+
+    /**
+     * Gets the oldest tick that can be restored.
+     *
+     * @return oldest tick
+     */
+    public int getOldestTick() {
+        return oldestTick;
+    }
+
+    /**
+     * Gets the newest stored tick.
+     *
+     * @return newest tick, or -1 when empty
+     */
+    public int getNewestTick() {
+        return isEmpty() ? -1 : newestTick;
+    }
+
+    /**
+     * Drops every snapshot.
+     */
+    public void clear() {
+        oldestTick = 0;
+        newestTick = -1;
+        head = 0;
+        keyframeTick = -1;
+    }
+
+    /**
+     * Checks for stored snapshots.
+     */
+    private boolean isEmpty() {
+        return newestTick < oldestTick;
+    }
+
+    /**
+     * Finds space for the next entry, evicting the oldest ticks until it fits.
+     *
+     * @return offset to write the entry at
+     */
+    private int reserve(int length) {
+        while (!isEmpty()) {
+            int tail = offsets[oldestTick % maxEntries];
+            if (head > tail) {
+                if (head + length <= data.length) {
+                    return head;
+                }
+                if (length < tail) {
+                    return 0;
+                }
+            } else if (head + length <= tail) {
+                return head;
+            }
+            evictOldestGroup();
+        }
+        return 0;
+    }
+
+    /**
+     * Drops the oldest keyframe and the deltas made against it.
+     */
+    private void evictOldestGroup() {
+        int key = keyTicks[oldestTick % maxEntries];
+        do {
+            oldestTick++;
+        } while (!isEmpty() && keyTicks[oldestTick % maxEntries] == key);
+    }
+
+    /**
+     * Copies a new keyframe so later deltas can be made against it.
+     */
+    private void keepKeyframe(ByteBuffer snapshot, int length, int tick) {
+        if (keyframe.length < length) {
+            keyframe = new byte[length * 2];
+        }
+        snapshot.get(0, keyframe, 0, length);
+        keyframeLength = length;
+        keyframeTick = tick;
+    }
+
+    /**
+     * Encodes a snapshot as its XOR with the keyframe into scratch. Each block is a varint count
+     * of zero bytes followed by a varint count of literal bytes and the literals themselves.
+     *
+     * @return encoded length
+     */
+    private int encodeDelta(ByteBuffer snapshot, int length) {
+        if (scratch.length < length * 2 + 16) {
+            scratch = new byte[length * 2 + 16];
+        }
+
+        int out = 0;
+        int i = 0;
+        while (i < length) {
+            int zeroStart = i;
+            while (i < length && xor(snapshot, i) == 0) {
+                i++;
+            }
+            int literalStart = i;
+            // A single zero byte between literals costs less inside the literal run
+            while (i < length && (xor(snapshot, i) != 0 || (i + 1 < length && xor(snapshot, i + 1) != 0))) {
+                i++;
+            }
+            out = writeVarInt(scratch, out, literalStart - zeroStart);
+            out = writeVarInt(scratch, out, i - literalStart);
+            for (int j = literalStart; j < i; j++) {
+                scratch[out++] = xor(snapshot, j);
+            }
+            if (out >= length) {
+                return length;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Gets one byte of a snapshot XOR the keyframe.
+     */
+    private byte xor(ByteBuffer snapshot, int i) {
+        return (byte) (snapshot.get(i) ^ (i < keyframeLength ? keyframe[i] : 0));
+    }
+
+    /**
+     * Applies a delta made by encodeDelta to the keyframe already in the buffer.
+     */
+    private void decodeDelta(int offset, int length, ByteBuffer into) {
+        int in = offset;
+        int end = offset + length;
+        int position = 0;
+        while (in < end) {
+            int zeros = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[in++];
+                zeros |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            int literals = 0;
+            shift = 0;
+            do {
+                b = data[in++];
+                literals |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            position += zeros;
+            for (int i = 0; i < literals; i++, position++) {
+                into.put(position, (byte) (into.get(position) ^ data[in++]));
+            }
+        }
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @return offset after the varint
+     */
+    private static int writeVarInt(byte[] out, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset;
+    }
+}
@@ -0,0 +1,217 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Plain copy of everything written to the save file, with the codec for each save format version.
+ */
+class SaveData {
+
+    private static final int MAGIC = 0x4D4F4F53; // "MOOS"
+    static final int VERSION = 3;
+    private static final int SIZE_V2 = 4 + 2 + 4 + 4 + 1 + 1 + 4;
+    private static final int SIZE_V3 = 4 + 2 + 8 + 4 * 5 + 1 + 1 + 4;
+
+    private static final int FLAG_MUSIC = 1;
+    private static final int FLAG_SOUNDS = 1 << 1;
+    private static final int FLAG_FPS = 1 << 2;
+    private static final int FLAG_TRUCK = 1 << 3;
+    private static final int FLAG_ATV = 1 << 4;
+
+    long journalSequence = 0;
+    int highScore = 0;
+    int currency = 0;
+    int fogLightsCount = 0;
+    int invincibilityCount = 0;
+    int slowMotionCount = 0;
+    boolean musicOn = true;
+    boolean soundsOn = true;
+    boolean showFPS = false;
+    boolean truckOwned = false;
+    boolean atvOwned = false;
+    PlayerInventory.Vehicles equippedVehicle = PlayerInventory.Vehicles.CAR;
+
+    /**
+     * Encodes this data in the current binary save format.
+     * <p>
+     * Layout: magic, version, journal sequence, high score, currency, three powerup counts,
+     * settings and ownership flags, equipped vehicle, then a CRC32 of everything before it.
+     *
+     * @return encoded save
+     */
+    byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_V3);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putLong(journalSequence);
+        buffer.putInt(highScore);
+        buffer.putInt(currency);
+        buffer.putInt(fogLightsCount);
+        buffer.putInt(invincibilityCount);
+        buffer.putInt(slowMotionCount);
+        buffer.put((byte) getFlags());
+        buffer.put((byte) equippedVehicle.ordinal());
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a save file in any known version.
+     * Versions before 3 have no powerup counts and no journal, so those start at zero.
+     *
+     * @param data contents of the save file
+     * @return decoded data, or null if the file is corrupt or from an unknown version
+     */
+    static SaveData decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        if (data.length < 6 || buffer.getInt(0) != MAGIC) {
+            return decodeVersion1(new String(data, StandardCharsets.UTF_8));
+        }
+
+        int version = buffer.getShort(4);
+        switch (version) {
+            case 2:
+                return decodeVersion2(buffer);
+            case 3:
+                return decodeVersion3(buffer);
+            default:
+                System.out.println("Unknown save version " + version + ", using defaults");
+                return null;
+        }
+    }
+
+    /**
+     * Reads the original comma separated save format.
+     *
+     * @param line contents of the save file
+     * @return decoded data, or null if corrupt
+     */
+    private static SaveData decodeVersion1(String line) {
+        SaveData save = new SaveData();
+        try {
+            String[] s = line.trim().split(",");
+
+            save.highScore = Integer.parseInt(s[0]);
+            save.currency = Integer.parseInt(s[1]);
+            save.musicOn = Boolean.parseBoolean(s[2]);
+            save.soundsOn = Boolean.parseBoolean(s[3]);
+            save.showFPS = Boolean.parseBoolean(s[4]);
+
+            if (s[5].equals("Car")) {
+                save.equippedVehicle = PlayerInventory.Vehicles.CAR;
+            } else if (s[5].equals("Truck")) {
+                save.equippedVehicle = PlayerInventory.Vehicles.TRUCK;
+            } else if (s[5].equals("ATV")) {
+                save.equippedVehicle = PlayerInventory.Vehicles.ATV;
+            }
+            save.truckOwned = Boolean.parseBoolean(s[6]);
+            save.atvOwned = Boolean.parseBoolean(s[7]);
+        } catch (RuntimeException e) {
+            System.out.println("Save file is corrupt, using defaults");
+            return null;
+        }
+        return save;
+    }
+
+    /**
+     * Reads the first binary save format.
+     *
+     * @param buffer contents of the save file
+     * @return decoded data, or null if corrupt
+     */
+    private static SaveData decodeVersion2(ByteBuffer buffer) {
+        if (!checksumMatches(buffer, SIZE_V2)) {
+            return null;
+        }
+
+        SaveData save = new SaveData();
+        buffer.position(6);
+        save.highScore = buffer.getInt();
+        save.currency = buffer.getInt();
+        save.setFlags(buffer.get());
+        save.setVehicle(buffer.get());
+        return save;
+    }
+
+    /**
+     * Reads the binary save format with powerup counts and journal sequence.
+     *
+     * @param buffer contents of the save file
+     * @return decoded data, or null if corrupt
+     */
+    private static SaveData decodeVersion3(ByteBuffer buffer) {
+        if (!checksumMatches(buffer, SIZE_V3)) {
+            return null;
+        }
+
+        SaveData save = new SaveData();
+        buffer.position(6);
+        save.journalSequence = buffer.getLong();
+        save.highScore = buffer.getInt();
+        save.currency = buffer.getInt();
+        save.fogLightsCount = buffer.getInt();
+        save.invincibilityCount = buffer.getInt();
+        save.slowMotionCount = buffer.getInt();
+        save.setFlags(buffer.get());
+        save.setVehicle(buffer.get());
+        return save;
+    }
+
+    /**
+     * Checks the length and trailing CRC32 of a binary save.
+     *
+     * @param buffer contents of the save file
+     * @param size   expected size for the version
+     * @return whether the save is intact
+     */
+    private static boolean checksumMatches(ByteBuffer buffer, int size) {
+        if (buffer.limit() >= size) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, size - 4);
+            if (buffer.getInt(size - 4) == (int) crc.getValue()) {
+                return true;
+            }
+        }
+        System.out.println("Save file is corrupt, using defaults");
+        return false;
+    }
+
+    /**
+     * Packs the boolean settings and ownership into one byte.
+     */
+    private int getFlags() {
+        int flags = 0;
+        if (musicOn) flags |= FLAG_MUSIC;
+        if (soundsOn) flags |= FLAG_SOUNDS;
+        if (showFPS) flags |= FLAG_FPS;
+        if (truckOwned) flags |= FLAG_TRUCK;
+        if (atvOwned) flags |= FLAG_ATV;
+        return flags;
+    }
+
+    /**
+     * Unpacks the boolean settings and ownership.
+     */
+    private void setFlags(int flags) {
+        musicOn = (flags & FLAG_MUSIC) != 0;
+        soundsOn = (flags & FLAG_SOUNDS) != 0;
+        showFPS = (flags & FLAG_FPS) != 0;
+        truckOwned = (flags & FLAG_TRUCK) != 0;
+        atvOwned = (flags & FLAG_ATV) != 0;
+    }
+
+    /**
+     * Sets the equipped vehicle from its ordinal, ignoring unknown values.
+     */
+    void setVehicle(int ordinal) {
+        if (ordinal >= 0 && ordinal < PlayerInventory.Vehicles.values().length) {
+            equippedVehicle = PlayerInventory.Vehicles.values()[ordinal];
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package game;
+
+/**
+ * Saves the inventory and the replay when a game ends. Subscribed asynchronously, so encoding the
+ * replay happens off the simulation thread.
+ */
+public class SaveEvents implements EventBus.Subscriber {
+
+    /**
+     * Saves after a game over.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment replay of the game that ended, or null
+     */
+    @Override
+    public void onEvent(EventBus.Type type, int a, int b, Object attachment) {
+        if (type == EventBus.Type.PLAYER_DIED) {
+            PlayerInventory.saveToFile();
+            if (attachment instanceof Replay) {
+                SaveService.getInstance().writeFileAsync(Replay.LAST_REPLAY_PATH, ((Replay) attachment).encode());
+            }
+        }
+    }
+}
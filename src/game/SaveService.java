@@ -0,0 +1,171 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs all save file I/O on one background thread.
+ * <p>
+ * Every COMMIT_INTERVAL the thread commits the InventoryLedger's pending records to the journal in
+ * one batch. Save requests only mark the inventory dirty, so any number of requests made while a
+ * save is pending collapse into one compaction of the ledger into the save file. Each save file
+ * write goes to a temporary file that is synced to disk and then renamed over the save file, so a
+ * crash never leaves a half-written save.
+ */
+public class SaveService {
+
+    private static final Path SAVE_PATH = Paths.get("./save.dat");
+    private static final int COMMIT_INTERVAL = 200;
+
+    private static SaveService instance = new SaveService();
+
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "save-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a SaveService and starts the periodic journal commit.
+     */
+    private SaveService() {
+        writer.scheduleWithFixedDelay(this::commitLedger, COMMIT_INTERVAL, COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get value for instance
+     *
+     * @return the shared save service
+     */
+    public static SaveService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the location of the save file.
+     *
+     * @return save file path
+     */
+    public static Path getSavePath() {
+        return SAVE_PATH;
+    }
+
+    /**
+     * Requests that the inventory be written to the save file. Returns immediately.
+     */
+    public void requestSave() {
+        if (dirty.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::writeIfDirty);
+            } catch (RejectedExecutionException e) {
+                // Already shutting down, write on the caller's thread instead
+                writeIfDirty();
+            }
+        }
+    }
+
+    /**
+     * Writes a file atomically on the save thread. Returns immediately.
+     *
+     * @param target file to replace
+     * @param data   file contents
+     */
+    public void writeFileAsync(Path target, byte[] data) {
+        try {
+            writer.execute(() -> {
+                try {
+                    writeAtomically(target, data);
+                } catch (IOException e) {
+                    System.err.println("Could not write " + target + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.err.println("Could not write " + target + ": save thread has stopped");
+        }
+    }
+
+    /**
+     * Blocks until every recorded change has been written. Used when exiting.
+     */
+    public void flush() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dirty.set(true);
+        writeIfDirty();
+    }
+
+    /**
+     * Commits pending ledger records to the journal.
+     */
+    private void commitLedger() {
+        try {
+            InventoryLedger.getInstance().commit();
+        } catch (IOException e) {
+            System.err.println("Could not write save journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compacts the ledger into the save file if a save is still pending.
+     */
+    private void writeIfDirty() {
+        if (dirty.getAndSet(false)) {
+            try {
+                InventoryLedger.getInstance().compact();
+            } catch (IOException e) {
+                System.err.println("Could not write save file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes data to a temporary file, syncs it, then renames it over the target.
+     *
+     * @param target file to replace
+     * @param data   file contents
+     * @throws IOException if the file could not be written
+     */
+    static void writeAtomically(Path target, byte[] data) throws IOException {
+        FlightEvents.SaveEvent event = new FlightEvents.SaveEvent();
+        event.begin();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = target.toString();
+            event.bytes = data.length;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package game;
+
+/**
+ * Counts what happens in each game and prints a summary line when it ends.
+ * <p>
+ * Enabled with -Dmoosegame.analytics=true. Subscribed asynchronously, so printing never holds up
+ * the game loop.
+ */
+public class SessionAnalytics implements EventBus.Subscriber {
+
+    public static final String ENABLE_PROPERTY = "moosegame.analytics";
+
+    private int games = 0;
+    private int hits = 0;
+    private int powerupsCollected = 0;
+    private int powerupsUsed = 0;
+
+    /**
+     * Subscribes a SessionAnalytics to a bus if analytics are enabled.
+     *
+     * @param events bus of the game to count
+     */
+    public static void subscribeIfEnabled(EventBus events) {
+        if (Boolean.getBoolean(ENABLE_PROPERTY)) {
+            events.subscribeAsync(new SessionAnalytics());
+        }
+    }
+
+    /**
+     * Counts one event, printing the summary at game over.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment unused
+     */
+    @Override
+    public void onEvent(EventBus.Type type, int a, int b, Object attachment) {
+        switch (type) {
+            case PLAYER_HIT:
+                hits++;
+                break;
+            case POWERUP_COLLECTED:
+                powerupsCollected++;
+                break;
+            case POWERUP_ACTIVATED:
+                powerupsUsed++;
+                break;
+            case PLAYER_DIED:
+                games++;
+                System.out.println("Game " + games + ": score " + a + ", coins " + b + ", hits " + hits
+                        + ", powerups collected " + powerupsCollected + ", used " + powerupsUsed);
+                hits = 0;
+                powerupsCollected = 0;
+                powerupsUsed = 0;
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package game;
+
+import actors.SpawnTable;
+
+/**
+ * The part of the inventory one game session plays with: its powerup counts and vehicle.
+ * <p>
+ * Each GameplayController owns one, so any number of sessions can run in one process without
+ * sharing the static PlayerInventory. It starts from the PlayerInventory for a game played in the
+ * window, or from a replay's recorded values, and follows the session's own pickups and powerup
+ * use as a synchronous subscriber of its event bus. The PlayerInventory stays the player's saved
+ * profile, and the window's InventoryEvents only changes it at game over.
+ */
+public class SessionInventory implements EventBus.Subscriber {
+
+    private int fogLightsCount;
+    private int invincibilityCount;
+    private int slowMotionCount;
+    private PlayerInventory.Vehicles vehicle = PlayerInventory.Vehicles.CAR;
+
+    /**
+     * Sets the powerup counts and vehicle.
+     *
+     * @param fogLights     fog lights count
+     * @param invincibility invincibility count
+     * @param slowMotion    slow motion count
+     * @param vehicle       equipped vehicle
+     */
+    public void set(int fogLights, int invincibility, int slowMotion, PlayerInventory.Vehicles vehicle) {
+        setPowerupCounts(fogLights, invincibility, slowMotion);
+        this.vehicle = vehicle;
+    }
+
+    /**
+     * Copies the powerup counts and vehicle of the PlayerInventory.
+     */
+    public void loadFromPlayerInventory() {
+        set(PlayerInventory.getFogLightsCount(), PlayerInventory.getInvincibilityCount(),
+                PlayerInventory.getSlowMotionCount(), PlayerInventory.getEquippedVehicle());
+    }
+
+    /**
+     * Copies the starting powerup counts and vehicle of a replay.
+     *
+     * @param replay recorded game
+     */
+    public void loadFromReplay(Replay replay) {
+        set(replay.getFogLightsCount(), replay.getInvincibilityCount(), replay.getSlowMotionCount(),
+                PlayerInventory.Vehicles.values()[replay.getVehicle()]);
+    }
+
+    /**
+     * Sets every powerup count, as when a game is rewound to an earlier snapshot.
+     *
+     * @param fogLights     fog lights count
+     * @param invincibility invincibility count
+     * @param slowMotion    slow motion count
+     */
+    public void setPowerupCounts(int fogLights, int invincibility, int slowMotion) {
+        fogLightsCount = fogLights;
+        invincibilityCount = invincibility;
+        slowMotionCount = slowMotion;
+    }
+
+    /**
+     * Gets the fog lights count.
+     *
+     * @return fog lights count
+     */
+    public int getFogLightsCount() {
+        return fogLightsCount;
+    }
+
+    /**
+     * Gets the invincibility count.
+     *
+     * @return invincibility count
+     */
+    public int getInvincibilityCount() {
+        return invincibilityCount;
+    }
+
+    /**
+     * Gets the slow motion count.
+     *
+     * @return slow motion count
+     */
+    public int getSlowMotionCount() {
+        return slowMotionCount;
+    }
+
+    /**
+     * Gets the equipped vehicle.
+     *
+     * @return vehicle
+     */
+    public PlayerInventory.Vehicles getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Counts powerups collected and used in this session, and clears them at game over as the
+     * PlayerInventory does.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment unused
+     */
+    @Override
+    public void onEvent(EventBus.Type type, int a, int b, Object attachment) {
+        int change;
+        if (type == EventBus.Type.POWERUP_COLLECTED) {
+            change = 1;
+        } else if (type == EventBus.Type.POWERUP_ACTIVATED) {
+            change = -1;
+        } else if (type == EventBus.Type.PLAYER_DIED) {
+            setPowerupCounts(0, 0, 0);
+            return;
+        } else {
+            return;
+        }
+
+        if (a == SpawnTable.EFFECT_FOG_LIGHTS) {
+            fogLightsCount = Math.max(0, fogLightsCount + change);
+        } else if (a == SpawnTable.EFFECT_INVINCIBILITY) {
+            invincibilityCount = Math.max(0, invincibilityCount + change);
+        } else if (a == SpawnTable.EFFECT_SLOW_MOTION) {
+            slowMotionCount = Math.max(0, slowMotionCount + change);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Plays games back to back for hours and fails if threads, memory, file descriptors or audio
+ * lines keep growing.
+ * <p>
+ * Usage: java game.SoakHarness [--minutes M] [--interval S] [--out FILE] [--window]
+ * <p>
+ * The Autopilot plays every game with the inventory sandboxed, so the save is left alone. Headless,
+ * games run as fast as they can with the same event subscribers as the window except sound, and
+ * the coins won are spent on powerups between games as in the store. With --window the real game
+ * runs at its normal speed and the autopilot also passes through the game over screen, the store
+ * and the menu between games. A SoakMonitor writes a sample every S seconds to FILE. At the end
+ * any rising metric is printed and the exit status is 1.
+ */
+public class SoakHarness {
+
+    private static final int DEFAULT_MINUTES = 60;
+    private static final int DEFAULT_INTERVAL_SECONDS = 30;
+    private static final String DEFAULT_OUT = "soak.csv";
+    // Updates after which a headless game is ended, about ten minutes of game time
+    private static final int MAX_GAME_TICKS = 10 * 60 * MooseGame.DESIRED_FPS;
+
+    /**
+     * Constructs a SoakHarness.
+     */
+    private SoakHarness() {
+    }
+
+    /**
+     * Plays headless games until a deadline.
+     *
+     * @param monitor  monitor counting the games
+     * @param deadline System.nanoTime() to stop at
+     */
+    private static void playHeadless(SoakMonitor monitor, long deadline) {
+        GameplayController controller = new GameplayController(null);
+        controller.setAutopilot(true);
+        controller.getEvents().subscribe(new InventoryEvents());
+        controller.getEvents().subscribeAsync(new SaveEvents());
+        controller.getEvents().subscribeAsync(monitor);
+
+        while (System.nanoTime() < deadline) {
+            controller.reset();
+            for (int tick = 0; tick < MAX_GAME_TICKS && !controller.isGameOver(); tick++) {
+                controller.checkCollision();
+                if (!controller.isGameOver()) {
+                    controller.update();
+                }
+            }
+            if (!controller.isGameOver()) {
+                monitor.gameFinished();
+            }
+            StoreController.buyPowerups();
+        }
+    }
+
+    /**
+     * Runs the soak and exits with status 1 if anything leaked.
+     *
+     * @param args options
+     */
+    public static void main(String[] args) {
+        int minutes = DEFAULT_MINUTES;
+        int interval = DEFAULT_INTERVAL_SECONDS;
+        String out = DEFAULT_OUT;
+        boolean window = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--minutes")) {
+                    minutes = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--interval")) {
+                    interval = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--out")) {
+                    out = args[++i];
+                } else if (args[i].equals("--window")) {
+                    window = true;
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Bad argument: " + e.getMessage());
+            System.err.println("Usage: java game.SoakHarness [--minutes M] [--interval S] [--out FILE] [--window]");
+            System.exit(2);
+            return;
+        }
+
+        SoakMonitor monitor = new SoakMonitor(Path.of(out), interval);
+        long deadline = System.nanoTime() + minutes * 60_000_000_000L;
+        try {
+            if (window) {
+                System.setProperty(MooseGame.AUTOPILOT_PROPERTY, "true");
+                MooseGame game = new MooseGame();
+                game.getGameplayController().getEvents().subscribeAsync(monitor);
+                monitor.start();
+                Thread stopper = new Thread(() -> finish(monitor, deadline), "soak-stopper");
+                stopper.start();
+                game.game();
+            } else {
+                System.setProperty("java.awt.headless", "true");
+                PlayerInventory.beginSandbox(0, 0, 0);
+                monitor.start();
+                playHeadless(monitor, deadline);
+                finish(monitor, deadline);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write " + out + ": " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Waits for the deadline, stops the monitor, prints the verdict and exits.
+     *
+     * @param monitor  monitor to stop
+     * @param deadline System.nanoTime() to stop at
+     */
+    private static void finish(SoakMonitor monitor, long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(Math.max(1, remaining / 1_000_000));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        monitor.stop();
+
+        List<String> leaks = monitor.findLeaks();
+        System.out.println(monitor.getGames() + " games played");
+        if (leaks.isEmpty()) {
+            System.out.println("No leaks found");
+            System.exit(0);
+        }
+        for (String leak : leaks) {
+            System.err.println("LEAK: " + leak);
+        }
+        System.exit(1);
+    }
+}
@@ -0,0 +1,242 @@
+package game;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Mixer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Samples the resources a long session could leak and checks that none of them keeps growing.
+ * <p>
+ * Every interval a background thread records the live thread count, the heap used after a full
+ * garbage collection, metaspace, open file descriptors and open audio lines, and appends them to a
+ * CSV file with the time and the number of games finished so far. findLeaks fits a least squares
+ * line to each metric, leaving out the first samples while classes load and caches fill, and
+ * reports every metric whose line rises by more than its limit over the run.
+ */
+public class SoakMonitor implements EventBus.Subscriber {
+
+    private static final String[] NAMES = {"threads", "heap MB", "metaspace MB", "file descriptors", "audio lines"};
+    // Largest rise of each metric over a run that is not reported as a leak
+    private static final double[] MAX_GROWTH = {3, 16, 4, 5, 1};
+    // Share of the samples at the start left out of the trend
+    private static final double WARM_UP_SHARE = 0.2;
+    private static final int MIN_TREND_SAMPLES = 4;
+
+    private final Path file;
+    private final long intervalMillis;
+    private final AtomicInteger games = new AtomicInteger();
+    private final long start = System.nanoTime();
+
+    // Written by the sampling thread, read after stop
+    private final List<Double> seconds = new ArrayList<>();
+    private final List<double[]> samples = new ArrayList<>();
+    private BufferedWriter out;
+    private Thread thread;
+
+    /**
+     * Constructs a SoakMonitor.
+     *
+     * @param file            CSV file to write the samples to
+     * @param intervalSeconds time between samples
+     */
+    public SoakMonitor(Path file, int intervalSeconds) {
+        this.file = file;
+        this.intervalMillis = intervalSeconds * 1000L;
+    }
+
+    /**
+     * Opens the file and starts sampling.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void start() throws IOException {
+        out = Files.newBufferedWriter(file);
+        out.write("seconds,games,threads,heap_mb,metaspace_mb,file_descriptors,audio_lines");
+        out.newLine();
+        sample();
+        thread = new Thread(this::sampleLoop, "soak-monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops sampling after one last sample and closes the file.
+     */
+    public void stop() {
+        thread.interrupt();
+        try {
+            thread.join();
+            sample();
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts finished games.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment unused
+     */
+    @Override
+    public void onEvent(EventBus.Type type, int a, int b, Object attachment) {
+        if (type == EventBus.Type.PLAYER_DIED) {
+            games.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a game finished without an event bus subscription.
+     */
+    public void gameFinished() {
+        games.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of games finished.
+     *
+     * @return game count
+     */
+    public int getGames() {
+        return games.get();
+    }
+
+    /**
+     * Sampling thread loop.
+     */
+    private void sampleLoop() {
+        while (true) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                sample();
+            } catch (IOException e) {
+                System.err.println("Could not write " + file + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records one sample and appends it to the file.
+     */
+    private synchronized void sample() throws IOException {
+        System.gc();
+        double[] metrics = {
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1048576.0,
+                getMetaspaceMegabytes(),
+                getOpenFileDescriptors(),
+                getOpenAudioLines()
+        };
+        double time = (System.nanoTime() - start) / 1e9;
+        seconds.add(time);
+        samples.add(metrics);
+
+        out.write(String.format("%.0f,%d,%.0f,%.1f,%.1f,%.0f,%.0f", time, games.get(),
+                metrics[0], metrics[1], metrics[2], metrics[3], metrics[4]));
+        out.newLine();
+        out.flush();
+    }
+
+    /**
+     * Gets the metaspace in use.
+     *
+     * @return megabytes, or 0 if the JVM has no metaspace pool
+     */
+    private static double getMetaspaceMegabytes() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals("Metaspace")) {
+                return pool.getUsage().getUsed() / 1048576.0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of open file descriptors.
+     *
+     * @return descriptor count, or 0 where the JVM cannot tell
+     */
+    private static double getOpenFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of audio lines open on every mixer.
+     *
+     * @return line count, or 0 without audio
+     */
+    private static double getOpenAudioLines() {
+        int lines = 0;
+        try {
+            for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+                Mixer mixer = AudioSystem.getMixer(info);
+                lines += mixer.getSourceLines().length + mixer.getTargetLines().length;
+            }
+        } catch (RuntimeException e) {
+            return 0;
+        }
+        return lines;
+    }
+
+    /**
+     * Checks every metric for a rising trend after the warm-up samples.
+     *
+     * @return one message per leaking metric, empty if none leak or the run was too short to tell
+     */
+    public synchronized List<String> findLeaks() {
+        List<String> leaks = new ArrayList<>();
+        int from = (int) (samples.size() * WARM_UP_SHARE);
+        int n = samples.size() - from;
+        if (n < MIN_TREND_SAMPLES) {
+            return leaks;
+        }
+        double first = seconds.get(from);
+        double last = seconds.get(samples.size() - 1);
+
+        for (int m = 0; m < NAMES.length; m++) {
+            double meanT = 0;
+            double meanV = 0;
+            for (int i = from; i < samples.size(); i++) {
+                meanT += seconds.get(i) / n;
+                meanV += samples.get(i)[m] / n;
+            }
+            double covariance = 0;
+            double variance = 0;
+            for (int i = from; i < samples.size(); i++) {
+                double dt = seconds.get(i) - meanT;
+                covariance += dt * (samples.get(i)[m] - meanV);
+                variance += dt * dt;
+            }
+            double growth = variance == 0 ? 0 : covariance / variance * (last - first);
+            if (growth > MAX_GROWTH[m]) {
+                leaks.add(String.format("%s rose by %.1f over %.0f minutes (from %.1f to %.1f, limit %.0f)",
+                        NAMES[m], growth, (last - first) / 60, samples.get(from)[m],
+                        samples.get(samples.size() - 1)[m], MAX_GROWTH[m]));
+            }
+        }
+        return leaks;
+    }
+}
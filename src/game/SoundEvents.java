@@ -0,0 +1,49 @@
+package game;
+
+/**
+ * Plays the sound of each gameplay event. Subscribed asynchronously, so the simulation never
+ * waits for the mixer.
+ */
+public class SoundEvents implements EventBus.Subscriber {
+
+    private MooseGame canvas;
+
+    /**
+     * Constructs a SoundEvents.
+     *
+     * @param canvas game window that plays sounds
+     */
+    public SoundEvents(MooseGame canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * Plays the sound for one event.
+     *
+     * @param type       kind of event
+     * @param a          first value
+     * @param b          second value
+     * @param attachment unused
+     */
+    @Override
+    public void onEvent(EventBus.Type type, int a, int b, Object attachment) {
+        switch (type) {
+            case COIN_COLLECTED:
+                canvas.playSound("coin.wav");
+                break;
+            case PLAYER_HIT:
+                if (a >= 0) {
+                    canvas.playSound("explosion.wav");
+                }
+                break;
+            case PLAYER_DIED:
+                canvas.playSound("gameover.wav");
+                break;
+            case POWERUP_ACTIVATED:
+                canvas.playSound("powerup.wav");
+                break;
+            default:
+                break;
+        }
+    }
+}
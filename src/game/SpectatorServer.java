@@ -0,0 +1,340 @@
+package game;
+
+import actors.SpawnTable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams live games to spectators on a local socket, for SpectatorViewer to draw on another
+ * screen or record.
+ * <p>
+ * Enabled with -Dmoosegame.spectator=PORT to listen on that port of the loopback address, or
+ * -Dmoosegame.spectator=PATH to listen on a Unix domain socket. The game loop only writes each
+ * frame's view into a preallocated ring slot; a background thread encodes it as a delta from the
+ * previous frame and writes it to every spectator, in the format SpectatorStream describes. If
+ * the thread falls behind, frames are dropped rather than the game waiting. Spectator sockets are
+ * non-blocking, so one that stops reading never holds up the others: while it still has part of a
+ * message unwritten it misses frames, then gets a keyframe once it catches up, and it is
+ * disconnected after MAX_STALLED_FRAMES frames. A keyframe goes to each new spectator and to
+ * everyone every KEYFRAME_INTERVAL frames.
+ */
+public class SpectatorServer {
+
+    public static final String ADDRESS_PROPERTY = "moosegame.spectator";
+
+    private static final int SLOTS = 8;
+    private static final int MASK = SLOTS - 1;
+    private static final int KEYFRAME_INTERVAL = 2 * MooseGame.DESIRED_FPS;
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+    private static final int MAX_STALLED_FRAMES = 10 * MooseGame.DESIRED_FPS;
+    // File type bits of a unix:mode attribute, and the type of a socket
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFSOCK = 0140000;
+
+    /**
+     * A connected spectator.
+     */
+    private static class Client {
+        private final SocketChannel channel;
+        private final long connectedNanos = System.nanoTime();
+        private long bytes = 0;
+        private int skipped = 0;
+
+        // What is left of the last message, and whether a frame was skipped since
+        private final ByteBuffer pending = ByteBuffer.allocate(2 * SpectatorStream.MAX_VIEW_BYTES).flip();
+        private int stalledFrames = 0;
+        private boolean resync = false;
+
+        /**
+         * Constructs a Client.
+         *
+         * @param channel connection
+         */
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final ServerSocketChannel server;
+    private final byte[] table;
+
+    // Views written by the game loop and read by the send thread
+    private final ByteBuffer[] slots = new ByteBuffer[SLOTS];
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    private volatile int dropped = 0;
+
+    private final ConcurrentLinkedQueue<Client> joining = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clientCount = new AtomicInteger();
+    private final Thread sendThread;
+
+    // Only touched by the send thread
+    private final List<Client> clients = new ArrayList<>();
+    private final byte[] view = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private final byte[] last = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private final byte[] predicted = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private int lastLength = 0;
+    private int framesSinceKeyframe = 0;
+    private final ByteBuffer message = ByteBuffer.allocate(2 * SpectatorStream.MAX_VIEW_BYTES);
+    private final ByteBuffer keyframeMessage = ByteBuffer.allocate(2 * SpectatorStream.MAX_VIEW_BYTES);
+
+    /**
+     * Starts a SpectatorServer if ADDRESS_PROPERTY is set.
+     *
+     * @param table archetypes and sprites the games use
+     * @return running server, or null if disabled or the socket could not be opened
+     */
+    public static SpectatorServer startIfEnabled(SpawnTable table) {
+        String address = System.getProperty(ADDRESS_PROPERTY);
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+        try {
+            ServerSocketChannel server;
+            if (address.chars().allMatch(Character::isDigit)) {
+                server = ServerSocketChannel.open();
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+            } else {
+                Path path = Path.of(address);
+                removeStaleSocket(path);
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                server.bind(UnixDomainSocketAddress.of(path));
+                path.toFile().deleteOnExit();
+            }
+            System.out.println("Spectators can connect to " + server.getLocalAddress());
+            return new SpectatorServer(server, table);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not start the spectator server on " + address + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a socket file left by an earlier run so the path can be bound again.
+     *
+     * @param path socket path
+     * @throws IOException if the path is something other than a socket, or a server is still
+     *                     listening on it
+     */
+    private static void removeStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+        if ((mode & S_IFMT) != S_IFSOCK) {
+            throw new IOException(path + " exists and is not a socket");
+        }
+        boolean listening;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            listening = probe.isConnected();
+        } catch (IOException e) {
+            listening = false;
+        }
+        if (listening) {
+            throw new IOException(path + " is in use by another server");
+        }
+        Files.delete(path);
+    }
+
+    /**
+     * Constructs a SpectatorServer and starts its threads.
+     *
+     * @param server bound socket to accept spectators on
+     * @param table  archetypes and sprites the games use
+     */
+    private SpectatorServer(ServerSocketChannel server, SpawnTable table) {
+        this.server = server;
+        this.table = SpectatorStream.encodeTable(table);
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = ByteBuffer.allocate(SpectatorStream.MAX_VIEW_BYTES);
+        }
+
+        sendThread = new Thread(this::sendLoop, "spectator-send");
+        sendThread.setDaemon(true);
+        sendThread.start();
+
+        Thread acceptThread = new Thread(this::acceptLoop, "spectator-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Hands the frame just shown to the send thread. Only called from the game loop. Does nothing
+     * without spectators, and does not allocate or wait.
+     *
+     * @param controller game being played
+     */
+    public void publish(GameplayController controller) {
+        if (clientCount.get() == 0) {
+            return;
+        }
+        long sequence = head.get();
+        if (sequence - tail.get() >= SLOTS) {
+            dropped++;
+            return;
+        }
+        try {
+            controller.writeView(slots[(int) sequence & MASK]);
+        } catch (BufferOverflowException e) {
+            dropped++;
+            return;
+        }
+        head.lazySet(sequence + 1);
+        LockSupport.unpark(sendThread);
+    }
+
+    /**
+     * Gets how many frames were not sent because the send thread was behind.
+     *
+     * @return dropped frame count
+     */
+    public int getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Accept thread loop, queueing each new spectator for the send thread.
+     */
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                joining.add(new Client(channel));
+                clientCount.incrementAndGet();
+                LockSupport.unpark(sendThread);
+            } catch (IOException e) {
+                System.err.println("Spectator server stopped accepting: " + e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send thread loop: encodes each published frame and writes it to every spectator, parked
+     * while there is nothing new.
+     */
+    private void sendLoop() {
+        while (true) {
+            long sequence = tail.get();
+            if (sequence == head.get()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            ByteBuffer slot = slots[(int) sequence & MASK];
+            int length = slot.remaining();
+            slot.get(view, 0, length);
+            tail.lazySet(sequence + 1);
+
+            boolean keyframe = lastLength == 0 || ++framesSinceKeyframe >= KEYFRAME_INTERVAL;
+            keyframeMessage.clear();
+            putKeyframe(keyframeMessage, length);
+            keyframeMessage.flip();
+            if (!clients.isEmpty()) {
+                message.clear();
+                if (keyframe) {
+                    message.put(keyframeMessage.duplicate());
+                } else {
+                    SpectatorStream.predict(last, lastLength, predicted);
+                    message.put(SpectatorStream.DELTA).putInt(0);
+                    SpectatorStream.encodeDelta(view, length, predicted, lastLength, message);
+                    message.putInt(1, message.position() - SpectatorStream.HEADER_BYTES);
+                }
+                message.flip();
+                for (int i = clients.size() - 1; i >= 0; i--) {
+                    Client client = clients.get(i);
+                    if (!send(client, client.resync ? keyframeMessage : message)) {
+                        clients.remove(i);
+                    }
+                }
+            }
+            if (keyframe) {
+                framesSinceKeyframe = 0;
+            }
+
+            for (Client client = joining.poll(); client != null; client = joining.poll()) {
+                client.pending.clear();
+                client.pending.put(SpectatorStream.TABLE).putInt(table.length).put(table);
+                client.pending.flip();
+                if (send(client, keyframeMessage)) {
+                    clients.add(client);
+                }
+            }
+
+            System.arraycopy(view, 0, last, 0, length);
+            lastLength = length;
+        }
+    }
+
+    /**
+     * Appends the current view to a message as a KEYFRAME.
+     */
+    private void putKeyframe(ByteBuffer out, int length) {
+        out.put(SpectatorStream.KEYFRAME).putInt(length).put(view, 0, length);
+    }
+
+    /**
+     * Queues a message for a spectator and writes as much as the socket takes without waiting. A
+     * spectator still writing an earlier message skips this one and is marked to get a keyframe
+     * next, and one stalled for MAX_STALLED_FRAMES is disconnected, as is one whose write fails.
+     *
+     * @param client spectator
+     * @param bytes  message, left unchanged
+     * @return whether the spectator is still connected
+     */
+    private boolean send(Client client, ByteBuffer bytes) {
+        try {
+            if (client.pending.hasRemaining()) {
+                client.channel.write(client.pending);
+            }
+            if (client.pending.hasRemaining()) {
+                client.skipped++;
+                client.resync = true;
+                if (++client.stalledFrames >= MAX_STALLED_FRAMES) {
+                    throw new IOException("stopped reading");
+                }
+                return true;
+            }
+            client.stalledFrames = 0;
+            client.resync = false;
+            client.pending.clear();
+            client.pending.put(bytes.duplicate());
+            client.pending.flip();
+            client.bytes += bytes.remaining();
+            client.channel.write(client.pending);
+            return true;
+        } catch (IOException e) {
+            double seconds = (System.nanoTime() - client.connectedNanos) / 1e9;
+            System.out.printf("Spectator left after %.0f s, %.1f KB/s, %d frames skipped (%s)%n", seconds,
+                    client.bytes / 1024.0 / Math.max(1, seconds), client.skipped, e.getMessage());
+            try {
+                client.channel.close();
+            } catch (IOException ignored) {
+                // Already disconnected
+            }
+            clientCount.decrementAndGet();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package game;
+
+import actors.SpawnTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The wire format shared by SpectatorServer and SpectatorViewer.
+ * <p>
+ * The stream is a series of messages, each a type byte, a length int and a payload. A TABLE
+ * message names the sprites and gives each archetype's paint layer, and comes first on every
+ * connection. A KEYFRAME carries a whole view as written by GameplayController.writeView. A DELTA
+ * carries a view as its difference from a prediction made from the previous view: entities moved
+ * by their velocity, the road scrolled and the tick advanced. Both ends make the same prediction,
+ * so anything moving as predicted costs nothing. The difference is XORed bytes, sent as runs of
+ * zeros and literal bytes.
+ * <p>
+ * View layout: int tick, short score as the HUD shows it (held at 32767, over nine hours of
+ * play), byte health, short coins, byte fog lights, invincibility and slow motion counts, byte
+ * flags, byte overlay alpha, short road positions, short player x and y, byte vehicle, short entity
+ * count n, then n archetype bytes, n sprite bytes, n x shorts, n y shorts, n x velocity bytes and n
+ * y velocity bytes.
+ */
+public class SpectatorStream {
+
+    public static final byte TABLE = 1;
+    public static final byte KEYFRAME = 2;
+    public static final byte DELTA = 3;
+
+    public static final int FLAG_FOG_LIGHTS = 1;
+    public static final int FLAG_INVINCIBILITY = 1 << 1;
+    public static final int FLAG_SLOW_MOTION = 1 << 2;
+    public static final int FLAG_GAME_OVER = 1 << 3;
+    public static final int FLAG_BLINK_SHOWN = 1 << 4;
+
+    // Byte offsets in a view
+    public static final int TICK = 0;
+    public static final int SCORE = 4;
+    public static final int HEALTH = 6;
+    public static final int COINS = 7;
+    public static final int FOG_LIGHTS_COUNT = 9;
+    public static final int INVINCIBILITY_COUNT = 10;
+    public static final int SLOW_MOTION_COUNT = 11;
+    public static final int FLAGS = 12;
+    public static final int OVERLAY_ALPHA = 13;
+    public static final int ROAD1 = 14;
+    public static final int ROAD2 = 16;
+    public static final int PLAYER_X = 18;
+    public static final int PLAYER_Y = 20;
+    public static final int VEHICLE = 22;
+    public static final int ENTITY_COUNT = 23;
+    public static final int ENTITIES = 25;
+
+    public static final int MAX_VIEW_BYTES = 16 * 1024;
+    public static final int HEADER_BYTES = 5;
+    // Road scroll per frame, as in GameplayController.paint
+    private static final int ROAD_SPEED = 10;
+
+    /**
+     * Constructs a SpectatorStream.
+     */
+    private SpectatorStream() {
+    }
+
+    /**
+     * Predicts the next view from the last one.
+     *
+     * @param view      last view
+     * @param length    length of the last view
+     * @param predicted array to write the prediction to, at least as long
+     */
+    public static void predict(byte[] view, int length, byte[] predicted) {
+        System.arraycopy(view, 0, predicted, 0, length);
+        ByteBuffer out = ByteBuffer.wrap(predicted);
+        out.putInt(TICK, out.getInt(TICK) + 1);
+        out.putShort(ROAD1, scroll(out.getShort(ROAD1)));
+        out.putShort(ROAD2, scroll(out.getShort(ROAD2)));
+
+        int n = out.getShort(ENTITY_COUNT);
+        int x = ENTITIES + 2 * n;
+        int y = ENTITIES + 4 * n;
+        int vx = ENTITIES + 6 * n;
+        int vy = ENTITIES + 7 * n;
+        for (int e = 0; e < n; e++) {
+            out.putShort(x + 2 * e, (short) (out.getShort(x + 2 * e) + predicted[vx + e]));
+            out.putShort(y + 2 * e, (short) (out.getShort(y + 2 * e) + predicted[vy + e]));
+        }
+    }
+
+    /**
+     * Scrolls a road position by one frame.
+     */
+    private static short scroll(int road) {
+        road += ROAD_SPEED;
+        return (short) (road >= MooseGame.HEIGHT ? -MooseGame.HEIGHT : road);
+    }
+
+    /**
+     * Writes a view as its difference from a prediction.
+     *
+     * @param view            view to send
+     * @param length          length of the view
+     * @param predicted       prediction of the view
+     * @param predictedLength length of the prediction
+     * @param out             buffer to append the encoded difference to
+     */
+    public static void encodeDelta(byte[] view, int length, byte[] predicted, int predictedLength, ByteBuffer out) {
+        putVarint(out, length);
+        int i = 0;
+        while (i < length) {
+            int zerosStart = i;
+            while (i < length && difference(view, predicted, predictedLength, i) == 0) {
+                i++;
+            }
+            int literalsStart = i;
+            // A literal run ends at the first pair of unchanged bytes
+            while (i < length && (difference(view, predicted, predictedLength, i) != 0
+                    || (i + 1 < length && difference(view, predicted, predictedLength, i + 1) != 0))) {
+                i++;
+            }
+            putVarint(out, literalsStart - zerosStart);
+            putVarint(out, i - literalsStart);
+            for (int j = literalsStart; j < i; j++) {
+                out.put(difference(view, predicted, predictedLength, j));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a view from its difference and the prediction the sender used.
+     *
+     * @param in              encoded difference
+     * @param predicted       prediction of the view
+     * @param predictedLength length of the prediction
+     * @param view            array to write the view to
+     * @return length of the view
+     */
+    public static int decodeDelta(ByteBuffer in, byte[] predicted, int predictedLength, byte[] view) {
+        int length = getVarint(in);
+        int i = 0;
+        while (i < length) {
+            int zeros = getVarint(in);
+            int literals = getVarint(in);
+            for (int end = i + zeros; i < end; i++) {
+                view[i] = i < predictedLength ? predicted[i] : 0;
+            }
+            for (int end = i + literals; i < end; i++) {
+                view[i] = (byte) (in.get() ^ (i < predictedLength ? predicted[i] : 0));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Gets one byte of the difference between a view and its prediction.
+     */
+    private static byte difference(byte[] view, byte[] predicted, int predictedLength, int i) {
+        return (byte) (view[i] ^ (i < predictedLength ? predicted[i] : 0));
+    }
+
+    /**
+     * Writes an unsigned int in seven bit groups.
+     */
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an int written by putVarint.
+     */
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Encodes the sprite names and archetype layers of a table as a TABLE payload.
+     *
+     * @param table archetypes and sprites
+     * @return payload
+     */
+    public static byte[] encodeTable(SpawnTable table) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(table.getSpriteCount());
+            for (int s = 0; s < table.getSpriteCount(); s++) {
+                out.writeUTF(table.getSprite(s));
+            }
+            out.writeShort(table.getArchetypeCount());
+            for (int a = 0; a < table.getArchetypeCount(); a++) {
+                out.writeByte(table.getLayer(a));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the sprite names from a TABLE payload.
+     *
+     * @param in payload
+     * @return sprite names by sprite id
+     * @throws IOException if the payload is cut short
+     */
+    public static String[] readSprites(DataInputStream in) throws IOException {
+        String[] sprites = new String[in.readUnsignedShort()];
+        for (int s = 0; s < sprites.length; s++) {
+            sprites[s] = in.readUTF();
+        }
+        return sprites;
+    }
+
+    /**
+     * Reads the archetype layers that follow the sprite names in a TABLE payload.
+     *
+     * @param in payload, after readSprites
+     * @return paint layer by archetype
+     * @throws IOException if the payload is cut short
+     */
+    public static int[] readLayers(DataInputStream in) throws IOException {
+        int[] layers = new int[in.readUnsignedShort()];
+        for (int a = 0; a < layers.length; a++) {
+            layers[a] = in.readByte();
+        }
+        return layers;
+    }
+}
@@ -0,0 +1,226 @@
+package game;
+
+import actors.Player;
+import actors.SpawnTable;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.WindowConstants;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Draws a game streamed by SpectatorServer with the game's own sprites.
+ * <p>
+ * Usage: java game.SpectatorViewer PORT|PATH
+ * <p>
+ * Connects to the loopback port or Unix domain socket the game was started with, and repaints
+ * every frame it receives. The title bar shows the bandwidth used.
+ */
+public class SpectatorViewer extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    // Only touched by the reading thread
+    private byte[] view = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private byte[] next = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private final byte[] predicted = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private int viewLength = 0;
+
+    // Shared with the event thread, guarded by this
+    private final byte[] shown = new byte[SpectatorStream.MAX_VIEW_BYTES];
+    private int shownLength = 0;
+    private String[] sprites = new String[0];
+    private int[] layers = new int[0];
+
+    /**
+     * Constructs a SpectatorViewer.
+     */
+    private SpectatorViewer() {
+        setPreferredSize(new Dimension(MooseGame.WIDTH, MooseGame.HEIGHT));
+        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Reads messages until the game closes the connection.
+     *
+     * @param in    connection
+     * @param frame window, for the bandwidth in its title
+     * @throws IOException if the connection fails
+     */
+    private void read(DataInputStream in, JFrame frame) throws IOException {
+        byte[] payload = new byte[2 * SpectatorStream.MAX_VIEW_BYTES];
+        long bytes = 0;
+        long start = System.nanoTime();
+        long lastTitle = start;
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            int length = in.readInt();
+            in.readFully(payload, 0, length);
+            bytes += SpectatorStream.HEADER_BYTES + length;
+
+            if (type == SpectatorStream.TABLE) {
+                DataInputStream table = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                String[] names = SpectatorStream.readSprites(table);
+                int[] archetypeLayers = SpectatorStream.readLayers(table);
+                synchronized (this) {
+                    sprites = names;
+                    layers = archetypeLayers;
+                }
+                continue;
+            } else if (type == SpectatorStream.KEYFRAME) {
+                System.arraycopy(payload, 0, view, 0, length);
+                viewLength = length;
+            } else if (type == SpectatorStream.DELTA) {
+                SpectatorStream.predict(view, viewLength, predicted);
+                viewLength = SpectatorStream.decodeDelta(ByteBuffer.wrap(payload, 0, length), predicted, viewLength, next);
+                byte[] swap = view;
+                view = next;
+                next = swap;
+            } else {
+                throw new IOException("Unknown message type " + type);
+            }
+
+            synchronized (this) {
+                System.arraycopy(view, 0, shown, 0, viewLength);
+                shownLength = viewLength;
+            }
+            repaint();
+
+            long now = System.nanoTime();
+            if (now - lastTitle > 1_000_000_000L) {
+                frame.setTitle(String.format("Moose Game spectator - %.1f KB/s", bytes / 1024.0 / ((now - start) / 1e9)));
+                lastTitle = now;
+            }
+        }
+    }
+
+    /**
+     * Draws the last frame received, in the same order and places as GameplayController.paint.
+     *
+     * @param g graphics to draw on
+     */
+    @Override
+    protected synchronized void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (shownLength == 0) {
+            return;
+        }
+        ResourceLoader resources = ResourceLoader.getInstance();
+        ByteBuffer in = ByteBuffer.wrap(shown, 0, shownLength);
+        int flags = in.get(SpectatorStream.FLAGS);
+        boolean blinkShown = (flags & SpectatorStream.FLAG_BLINK_SHOWN) != 0;
+
+        g.drawImage(resources.getSprite("road.png"), 0, in.getShort(SpectatorStream.ROAD1), this);
+        g.drawImage(resources.getSprite("road2.png"), 0, in.getShort(SpectatorStream.ROAD2), this);
+
+        g.setColor(Color.WHITE);
+        Font scoreFont = new Font("Impact", Font.PLAIN, 50);
+        FontMetrics metrics = g.getFontMetrics(scoreFont);
+        g.setFont(scoreFont);
+        String scoreText = "" + in.getShort(SpectatorStream.SCORE);
+        g.drawString(scoreText, MooseGame.WIDTH - metrics.stringWidth(scoreText) - 25, 50);
+
+        Font healthFont = new Font("Impact", Font.PLAIN, 45);
+        metrics = g.getFontMetrics(healthFont);
+        g.setFont(healthFont);
+        String health = "" + in.get(SpectatorStream.HEALTH);
+        g.drawImage(resources.getSprite("heart.png"), 10, 5, this);
+        g.drawString(health, 10 + (100 - metrics.stringWidth(health)) / 2, 75);
+
+        g.drawImage(resources.getSprite("coin.png"), 10, 120, this);
+        g.drawString("" + in.getShort(SpectatorStream.COINS), 75, 165);
+
+        if ((flags & SpectatorStream.FLAG_FOG_LIGHTS) == 0 || blinkShown) {
+            g.drawImage(resources.getSprite("foglights.png"), 680, MooseGame.HEIGHT - 210, this);
+        }
+        if ((flags & SpectatorStream.FLAG_INVINCIBILITY) == 0 || blinkShown) {
+            g.drawImage(resources.getSprite("invincible.png"), 680, MooseGame.HEIGHT - 150, this);
+        }
+        if ((flags & SpectatorStream.FLAG_SLOW_MOTION) == 0 || blinkShown) {
+            g.drawImage(resources.getSprite("slowmotion.png"), 680, MooseGame.HEIGHT - 90, this);
+        }
+        String fCount = "" + in.get(SpectatorStream.FOG_LIGHTS_COUNT);
+        String iCount = "" + in.get(SpectatorStream.INVINCIBILITY_COUNT);
+        String sCount = "" + in.get(SpectatorStream.SLOW_MOTION_COUNT);
+        g.drawString(fCount, MooseGame.WIDTH - 100 - metrics.stringWidth(fCount), MooseGame.HEIGHT - 170);
+        g.drawString(iCount, MooseGame.WIDTH - 100 - metrics.stringWidth(iCount), MooseGame.HEIGHT - 110);
+        g.drawString(sCount, MooseGame.WIDTH - 100 - metrics.stringWidth(sCount), MooseGame.HEIGHT - 50);
+
+        if ((flags & SpectatorStream.FLAG_INVINCIBILITY) == 0 || blinkShown) {
+            PlayerInventory.Vehicles vehicle = PlayerInventory.Vehicles.values()[in.get(SpectatorStream.VEHICLE)];
+            g.drawImage(resources.getSprite(Player.getSpriteName(vehicle)),
+                    in.getShort(SpectatorStream.PLAYER_X), in.getShort(SpectatorStream.PLAYER_Y), this);
+        }
+
+        int n = in.getShort(SpectatorStream.ENTITY_COUNT);
+        int sprite = SpectatorStream.ENTITIES + n;
+        int x = SpectatorStream.ENTITIES + 2 * n;
+        int y = SpectatorStream.ENTITIES + 4 * n;
+        for (int l = 0; l < SpawnTable.LAYER_COUNT; l++) {
+            for (int e = 0; e < n; e++) {
+                int archetype = in.get(SpectatorStream.ENTITIES + e);
+                int s = in.get(sprite + e);
+                if (archetype < layers.length && layers[archetype] == l && s < sprites.length) {
+                    g.drawImage(resources.getSprite(sprites[s]), in.getShort(x + 2 * e), in.getShort(y + 2 * e), this);
+                }
+            }
+        }
+
+        g.setColor(new Color(255, 255, 255, in.get(SpectatorStream.OVERLAY_ALPHA) & 0xFF));
+        g.fillRect(0, 0, 1000, 1000);
+    }
+
+    /**
+     * Connects to a game and shows its frames until it closes.
+     *
+     * @param args port or socket path
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java game.SpectatorViewer PORT|PATH");
+            System.exit(2);
+            return;
+        }
+
+        SpectatorViewer viewer = new SpectatorViewer();
+        JFrame frame = new JFrame("Moose Game spectator");
+        frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        frame.add(viewer);
+        frame.pack();
+        frame.setResizable(false);
+        frame.setVisible(true);
+
+        SocketAddress address = args[0].chars().allMatch(Character::isDigit)
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))
+                : UnixDomainSocketAddress.of(Path.of(args[0]));
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            viewer.read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))), frame);
+            System.out.println("The game closed the stream");
+        } catch (IOException e) {
+            System.err.println("Spectating " + args[0] + " failed: " + e);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,113 @@
+package game;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The opaque pixels of a sprite, packed one bit per pixel for pixel-accurate collisions.
+ * <p>
+ * Each row is stored in whole longs, pixel x of a row being bit x % 64 of word x / 64. Two masks
+ * are compared 64 pixels at a time by shifting the words of each row into line and ANDing them,
+ * so an overlap test costs about one AND per row for sprites up to 64 pixels wide.
+ */
+public class SpriteMask {
+
+    // Alpha at or above which a pixel is solid
+    private static final int ALPHA_THRESHOLD = 128;
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    /**
+     * Constructs a SpriteMask from the alpha channel of an image.
+     *
+     * @param image sprite
+     */
+    public SpriteMask(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * height];
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                if (row[x] >>> 24 >= ALPHA_THRESHOLD) {
+                    bits[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the width.
+     *
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height.
+     *
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks whether any solid pixel of this mask covers a solid pixel of another.
+     *
+     * @param x      left edge of this mask
+     * @param y      top edge of this mask
+     * @param other  other mask
+     * @param otherX left edge of the other mask
+     * @param otherY top edge of the other mask
+     * @return whether they overlap
+     */
+    public boolean overlaps(int x, int y, SpriteMask other, int otherX, int otherY) {
+        int left = Math.max(x, otherX);
+        int right = Math.min(x + width, otherX + other.width);
+        int top = Math.max(y, otherY);
+        int bottom = Math.min(y + height, otherY + other.height);
+        if (left >= right || top >= bottom) {
+            return false;
+        }
+
+        for (int row = top; row < bottom; row++) {
+            int base = (row - y) * wordsPerRow;
+            int otherBase = (row - otherY) * other.wordsPerRow;
+            for (int column = left; column < right; column += 64) {
+                long word = extract(bits, base, wordsPerRow, column - x)
+                        & extract(other.bits, otherBase, other.wordsPerRow, column - otherX);
+                int remaining = right - column;
+                if (remaining < 64) {
+                    word &= (1L << remaining) - 1;
+                }
+                if (word != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets 64 pixels of a row starting at any pixel, as one word.
+     *
+     * @return pixel start + i in bit i
+     */
+    private static long extract(long[] bits, int base, int wordsPerRow, int start) {
+        int word = start >>> 6;
+        int shift = start & 63;
+        long value = bits[base + word] >>> shift;
+        if (shift != 0 && word + 1 < wordsPerRow) {
+            value |= bits[base + word + 1] << (64 - shift);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,75 @@
+package game;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Records how long each startup step takes, measured from JVM start.
+ * <p>
+ * Enabled with -Dmoosegame.startupReport=true. The report is printed once the first frame is shown.
+ * With -Dmoosegame.exitAfterFirstFrame=true the game exits right after the report, which is how
+ * the class data sharing training run in build.sh stops on its own.
+ */
+public class StartupTimer {
+
+    public static final String REPORT_PROPERTY = "moosegame.startupReport";
+    public static final String EXIT_PROPERTY = "moosegame.exitAfterFirstFrame";
+
+    private static final int MAX_MARKS = 16;
+
+    private static final String[] names = new String[MAX_MARKS];
+    private static final long[] times = new long[MAX_MARKS];
+    private static int markCount = 0;
+    private static boolean firstFrameShown = false;
+
+    /**
+     * Constructs a StartupTimer.
+     */
+    private StartupTimer() {
+    }
+
+    /**
+     * Records the current time for a startup step. Cheap enough to leave in release builds.
+     *
+     * @param name startup step that just finished
+     */
+    public static void mark(String name) {
+        if (markCount < MAX_MARKS) {
+            names[markCount] = name;
+            times[markCount] = System.currentTimeMillis();
+            markCount++;
+        }
+    }
+
+    /**
+     * Marks the first shown frame and prints the report. Later calls do nothing.
+     */
+    public static void firstFrameShown() {
+        if (firstFrameShown) {
+            return;
+        }
+        firstFrameShown = true;
+        mark("first strategy.show()");
+
+        if (Boolean.getBoolean(REPORT_PROPERTY) || Boolean.getBoolean(EXIT_PROPERTY)) {
+            printReport();
+        }
+        if (Boolean.getBoolean(EXIT_PROPERTY)) {
+            MooseGame.exit();
+        }
+    }
+
+    /**
+     * Prints every mark as milliseconds since JVM start.
+     */
+    private static void printReport() {
+        // Millisecond precision, unlike the process start time which Linux gives in whole seconds
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+        System.out.println("Startup times (ms since JVM start):");
+        System.out.printf("  %6d  %s%n", 0, "JVM start");
+        for (int i = 0; i < markCount; i++) {
+            System.out.printf("  %6d  %s%n", times[i] - jvmStart, names[i]);
+        }
+        System.out.println("Time to first frame: " + (times[markCount - 1] - jvmStart) + " ms");
+    }
+}
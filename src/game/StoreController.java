@@ -21,8 +21,8 @@ public class StoreController implements KeyboardControllable {
     public static final int INVINCIBILITY_COST = 60;
     public static final int SLOW_MOTION_COST = 70;
 
-    private static final int TRUCK_COST = 250;
-    private static final int ATV_COST = 300;
+    public static final int TRUCK_COST = 250;
+    public static final int ATV_COST = 300;
 
     private static final int SMALL_COIN_PACK_VALUE = 100;
     private static final double SMALL_COIN_PACK_COST = 0.99;
@@ -42,6 +42,29 @@ public class StoreController implements KeyboardControllable {
         this.mooseGame = mooseGame;
     }
 
+    /**
+     * Returns to the top of the main store menu.
+     */
+    public void reset() {
+        menuState = 0;
+        menuSelection = 0;
+    }
+
+    /**
+     * Buys one of each powerup the player can afford, as the powerups menu would.
+     */
+    public static void buyPowerups() {
+        if (PlayerInventory.spendCurrency(FOG_LIGHTS_COST)) {
+            PlayerInventory.incrementFogLights();
+        }
+        if (PlayerInventory.spendCurrency(INVINCIBILITY_COST)) {
+            PlayerInventory.incrementInvincibility();
+        }
+        if (PlayerInventory.spendCurrency(SLOW_MOTION_COST)) {
+            PlayerInventory.incrementSlowMotion();
+        }
+    }
+
     /**
      * Renders graphics for Store screen.
      *
@@ -0,0 +1,209 @@
+package game;
+
+import actors.Player;
+
+import java.awt.Graphics;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures how update, collision and paint time scale with the number of entities.
+ * <p>
+ * Usage: java game.StressBench [--entities N,N,...] [--seconds S] [--seed X]
+ * <p>
+ * For each entity count a headless game is filled with that many entities of every archetype in
+ * the spawn table, scattered over the screen, and topped back up as they leave. The player weaves
+ * across the road with invincibility on, so collisions are checked in full and the game never
+ * ends. The game runs for S seconds of game time as fast as it can, painting into an offscreen
+ * image, and the report gives the time per frame of each phase, the frame rate this would allow
+ * and the garbage collections during the run. The same seed gives the same entities and the same
+ * steering, so runs can be compared between builds.
+ */
+public class StressBench {
+
+    private static final int[] DEFAULT_ENTITIES = {100, 1000, 10000};
+    private static final int DEFAULT_SECONDS = 20;
+    private static final long DEFAULT_SEED = 0x4D4F4F5345L;
+    private static final int WARM_UP_TICKS = 5 * MooseGame.DESIRED_FPS;
+
+    // Range of x the player weaves across, inside the edges where checkCollision damages the player
+    private static final int ROAD_LEFT = 100;
+    private static final int ROAD_RIGHT = MooseGame.WIDTH - 175;
+    private static final int WEAVE_TICKS = 4 * MooseGame.DESIRED_FPS;
+    private static final int STEER_DEADBAND = 6;
+
+    private final int entities;
+    private final int ticks;
+    private final long seed;
+
+    // Nanoseconds per timed frame
+    private final long[] updateNanos;
+    private final long[] collisionNanos;
+    private final long[] renderNanos;
+    private final long[] frameNanos;
+
+    /**
+     * Constructs a StressBench for one entity count.
+     *
+     * @param entities entities to keep in play
+     * @param ticks    ticks to time
+     * @param seed     seed for the game and the entities
+     */
+    private StressBench(int entities, int ticks, long seed) {
+        this.entities = entities;
+        this.ticks = ticks;
+        this.seed = seed;
+        updateNanos = new long[ticks];
+        collisionNanos = new long[ticks];
+        renderNanos = new long[ticks];
+        frameNanos = new long[ticks];
+    }
+
+    /**
+     * Plays the warm-up and the timed ticks and prints one line of the report.
+     */
+    private void run() {
+        GameplayController controller = new GameplayController(null);
+        BufferedImage offscreen = ResourceLoader.createCompatible(MooseGame.WIDTH, MooseGame.HEIGHT, Transparency.OPAQUE);
+        Graphics g = offscreen.getGraphics();
+        Random random = new Random(seed);
+
+        controller.reset(seed);
+        controller.activateInvincibility(Integer.MAX_VALUE);
+        for (int i = 0; i < entities; i++) {
+            controller.getSpawner().spawnRandom(random, true);
+        }
+
+        for (int tick = 0; tick < WARM_UP_TICKS; tick++) {
+            step(controller, random, g, tick, -1);
+        }
+
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount -= gc.getCollectionCount();
+            gcMillis -= gc.getCollectionTime();
+        }
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            step(controller, random, g, WARM_UP_TICKS + tick, tick);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += gc.getCollectionCount();
+            gcMillis += gc.getCollectionTime();
+        }
+        g.dispose();
+
+        System.out.printf("%8d %7.3f %7.3f %7.3f %7.3f %7.3f %7.3f %7.3f %7.3f %8.0f %5d %6d%n", entities,
+                mean(updateNanos), percentile(updateNanos, 0.99),
+                mean(collisionNanos), percentile(collisionNanos, 0.99),
+                mean(renderNanos), percentile(renderNanos, 0.99),
+                mean(frameNanos), percentile(frameNanos, 0.99),
+                ticks * 1e9 / elapsed, gcCount, gcMillis);
+    }
+
+    /**
+     * Runs one tick in the same order as MooseGame.game(): collisions, update, paint.
+     *
+     * @param controller game to run
+     * @param random     random source for new entities
+     * @param g          offscreen graphics to paint to
+     * @param tick       tick number, for the steering
+     * @param frame      index to record the timings at, or -1 to not record them
+     */
+    private void step(GameplayController controller, Random random, Graphics g, int tick, int frame) {
+        Player player = controller.getPlayer();
+        int phase = tick % WEAVE_TICKS;
+        int target = ROAD_LEFT + (ROAD_RIGHT - ROAD_LEFT) * Math.min(phase, WEAVE_TICKS - phase) * 2 / WEAVE_TICKS;
+        int x = player.getX();
+        player.holdInput(x < target - STEER_DEADBAND ? Player.INPUT_RIGHT
+                : x > target + STEER_DEADBAND ? Player.INPUT_LEFT : 0);
+
+        long start = System.nanoTime();
+        controller.checkCollision();
+        long collided = System.nanoTime();
+        controller.update();
+        for (int i = controller.getEntityCount(); i < entities; i++) {
+            controller.getSpawner().spawnRandom(random, false);
+        }
+        long updated = System.nanoTime();
+        controller.paint(g);
+        long painted = System.nanoTime();
+
+        if (frame >= 0) {
+            collisionNanos[frame] = collided - start;
+            updateNanos[frame] = updated - collided;
+            renderNanos[frame] = painted - updated;
+            frameNanos[frame] = painted - start;
+        }
+    }
+
+    /**
+     * Gets the mean of some timings.
+     *
+     * @return milliseconds
+     */
+    private static double mean(long[] nanos) {
+        long sum = 0;
+        for (long n : nanos) {
+            sum += n;
+        }
+        return sum / 1e6 / nanos.length;
+    }
+
+    /**
+     * Gets a percentile of some timings.
+     *
+     * @return milliseconds
+     */
+    private static double percentile(long[] nanos, double fraction) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))] / 1e6;
+    }
+
+    /**
+     * Runs the bench for every entity count and prints the report.
+     *
+     * @param args options
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int[] entityCounts = DEFAULT_ENTITIES;
+        int seconds = DEFAULT_SECONDS;
+        long seed = DEFAULT_SEED;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--entities")) {
+                    entityCounts = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                } else if (args[i].equals("--seconds")) {
+                    seconds = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Bad argument: " + e.getMessage());
+            System.err.println("Usage: java game.StressBench [--entities N,N,...] [--seconds S] [--seed X]");
+            System.exit(2);
+            return;
+        }
+
+        System.out.printf("%d seconds of game time per entity count, seed %d, times in ms per frame%n", seconds, seed);
+        System.out.printf("%8s %15s %15s %15s %15s %8s %5s %6s%n", "", "update", "collision", "render", "frame",
+                "", "", "");
+        System.out.printf("%8s %7s %7s %7s %7s %7s %7s %7s %7s %8s %5s %6s%n", "entities", "mean", "p99",
+                "mean", "p99", "mean", "p99", "mean", "p99", "fps", "gcs", "gc ms");
+        for (int entities : entityCounts) {
+            new StressBench(entities, seconds * MooseGame.DESIRED_FPS, seed).run();
+        }
+    }
+}
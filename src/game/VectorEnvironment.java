@@ -0,0 +1,215 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps many GameEnvironments in lock-step across cores, for reinforcement learning in batches.
+ * <p>
+ * Environment i writes its observation at i * getObservationBytes() of the caller's buffer, which
+ * is best a direct buffer in native order so a learner can read it without copying. The
+ * environments are split into one contiguous slice per thread; the calling thread steps the first
+ * slice and parked workers step the others, so a step returns when every environment has moved
+ * once. An environment whose episode ends is reset straight away with its next seed, and the
+ * observation written is the first of the new episode. Seeds come from the seed given to reset,
+ * the environment's index and its episode count, so a batch replays exactly. Steps do not allocate.
+ */
+public class VectorEnvironment implements AutoCloseable {
+
+    // Spins before a waiting thread parks
+    private static final int SPIN_TRIES = 1000;
+
+    private final GameEnvironment[] environments;
+    private final int observationBytes;
+    private final int[] sliceStart;
+    private final Thread[] workers;
+    private final Thread caller;
+
+    private long baseSeed = 0;
+    private final int[] episodes;
+
+    // Arguments of the current step, published to the workers by the write of generation
+    private int[] actions;
+    private float[] rewards;
+    private boolean[] dones;
+    private ByteBuffer out;
+    private volatile int generation = 0;
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile RuntimeException failure;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a VectorEnvironment and starts its worker threads.
+     *
+     * @param count       number of environments
+     * @param observation kind of observation
+     * @param size        entity rows for FEATURES, or cells along each side for RASTER
+     * @param threads     threads to step with, including the caller
+     */
+    public VectorEnvironment(int count, GameEnvironment.Observation observation, int size, int threads) {
+        environments = new GameEnvironment[count];
+        for (int i = 0; i < count; i++) {
+            environments[i] = new GameEnvironment(observation, size);
+        }
+        observationBytes = environments[0].getObservationBytes();
+        episodes = new int[count];
+        caller = Thread.currentThread();
+
+        int slices = Math.max(1, Math.min(threads, count));
+        sliceStart = new int[slices + 1];
+        for (int s = 0; s <= slices; s++) {
+            sliceStart[s] = (int) ((long) count * s / slices);
+        }
+        workers = new Thread[slices - 1];
+        for (int w = 0; w < workers.length; w++) {
+            int slice = w + 1;
+            workers[w] = new Thread(() -> workLoop(slice), "environment-" + slice);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+    }
+
+    /**
+     * Gets the number of environments.
+     *
+     * @return environment count
+     */
+    public int size() {
+        return environments.length;
+    }
+
+    /**
+     * Gets the size of one environment's observation.
+     *
+     * @return bytes per environment
+     */
+    public int getObservationBytes() {
+        return observationBytes;
+    }
+
+    /**
+     * Gets one environment, to change its settings before reset.
+     *
+     * @param i index
+     * @return environment
+     */
+    public GameEnvironment get(int i) {
+        return environments[i];
+    }
+
+    /**
+     * Starts a new episode in every environment.
+     *
+     * @param seed seed the episode seeds of every environment are derived from
+     * @param out  buffer for size() observations
+     */
+    public void reset(long seed, ByteBuffer out) {
+        baseSeed = seed;
+        for (int i = 0; i < environments.length; i++) {
+            episodes[i] = 0;
+            environments[i].reset(episodeSeed(i), out, i * observationBytes);
+        }
+    }
+
+    /**
+     * Steps every environment once, resetting those whose episode ended. Only called from the
+     * thread that constructed this.
+     *
+     * @param actions one action per environment
+     * @param rewards receives one reward per environment
+     * @param dones   receives whether each environment's episode ended
+     * @param out     buffer for size() observations
+     */
+    public void step(int[] actions, float[] rewards, boolean[] dones, ByteBuffer out) {
+        this.actions = actions;
+        this.rewards = rewards;
+        this.dones = dones;
+        this.out = out;
+        remaining.set(workers.length);
+        generation++;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+
+        stepSlice(0);
+        for (int spins = 0; remaining.get() != 0; spins++) {
+            if (spins < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        RuntimeException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Worker thread loop: waits for each new step and steps its slice.
+     */
+    private void workLoop(int slice) {
+        int seen = 0;
+        while (true) {
+            for (int spins = 0; generation == seen; spins++) {
+                if (closed) {
+                    return;
+                }
+                if (spins < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            seen = generation;
+            try {
+                stepSlice(slice);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            if (remaining.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+
+    /**
+     * Steps the environments of one slice.
+     */
+    private void stepSlice(int slice) {
+        for (int i = sliceStart[slice]; i < sliceStart[slice + 1]; i++) {
+            GameEnvironment environment = environments[i];
+            int offset = i * observationBytes;
+            rewards[i] = environment.step(actions[i], out, offset);
+            dones[i] = environment.isDone();
+            if (dones[i]) {
+                episodes[i]++;
+                environment.reset(episodeSeed(i), out, offset);
+            }
+        }
+    }
+
+    /**
+     * Derives the seed of an environment's current episode, mixing the bits so nearby inputs give
+     * unrelated seeds.
+     */
+    private long episodeSeed(int i) {
+        long z = baseSeed + ((long) i << 32 | episodes[i]) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,86 @@
+package game;
+
+import actors.Actor;
+
+import java.awt.Graphics;
+import java.awt.Transparency;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+
+/**
+ * Plays a hidden game while the player is on the main menu so the JIT compiles the gameplay code
+ * before the first real game.
+ * <p>
+ * The warm-up has its own GameplayController and paints into an offscreen image. Collisions are
+ * checked against a box no entity can reach, so the checks run in full but nothing is collected,
+ * no sound plays and the inventory is never touched. It stops as soon as a real game starts.
+ */
+public class WarmUp implements Runnable {
+
+    private static final int WARM_UP_TICKS = 5000;
+    private static final int STEER_INTERVAL = 45;
+
+    private MooseGame canvas;
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a WarmUp.
+     *
+     * @param canvas game window
+     */
+    public WarmUp(MooseGame canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * Starts the warm-up on a low priority background thread.
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this, "jit-warm-up");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the warm-up. Safe to call more than once.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Runs update, collision and paint for WARM_UP_TICKS ticks with scripted steering.
+     */
+    @Override
+    public void run() {
+        GameplayController controller = new GameplayController(canvas);
+        BufferedImage offscreen = ResourceLoader.createCompatible(MooseGame.WIDTH, MooseGame.HEIGHT, Transparency.OPAQUE);
+        Graphics g = offscreen.getGraphics();
+
+        Actor ghost = new Actor(canvas);
+        ghost.setX(-10 * MooseGame.WIDTH);
+        ghost.setY(-10 * MooseGame.HEIGHT);
+
+        KeyEvent left = new KeyEvent(canvas, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_LEFT, KeyEvent.CHAR_UNDEFINED);
+        KeyEvent right = new KeyEvent(canvas, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_RIGHT, KeyEvent.CHAR_UNDEFINED);
+
+        for (int tick = 0; tick < WARM_UP_TICKS && running; tick++) {
+            if (tick % STEER_INTERVAL == 0) {
+                boolean steerLeft = (tick / STEER_INTERVAL) % 2 == 0;
+                controller.getPlayer().triggerKeyRelease(steerLeft ? right : left);
+                controller.getPlayer().triggerKeyPress(steerLeft ? left : right);
+            }
+
+            controller.rehearseCollision(ghost);
+            controller.update();
+            controller.paint(g);
+
+            Thread.yield();
+        }
+
+        g.dispose();
+        running = false;
+    }
+}